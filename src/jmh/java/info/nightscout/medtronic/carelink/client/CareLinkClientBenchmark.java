@@ -0,0 +1,88 @@
+package info.nightscout.medtronic.carelink.client;
+
+import info.nightscout.medtronic.carelink.Fixtures;
+import info.nightscout.medtronic.carelink.json.CareLinkGson;
+import info.nightscout.medtronic.carelink.message.CountrySettings;
+import info.nightscout.medtronic.carelink.message.RecentData;
+import okio.Buffer;
+import okio.ByteString;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// Client internals without network: device time correction, session copies and consent form scraping
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CareLinkClientBenchmark {
+
+    private static final long HOUR_MILLIS = 3600000L;
+
+    @Param({Fixtures.RECENT_DATA_NGP, Fixtures.RECENT_DATA_GUARDIAN})
+    private String fixture;
+
+    private CareLinkClient client;
+    private RecentData recentData;
+    private int shiftHours;
+    private CountrySettings countrySettings;
+    private String consentPage;
+    private ByteString consentPageBytes;
+
+    @Setup
+    public void setup() {
+        client = new CareLinkClient("user", "password", "hu");
+        recentData = CareLinkGson.getGson().fromJson(Fixtures.read(fixture), RecentData.class);
+        shiftHours = 2;
+        recentData.lastMedicalDeviceDataUpdateServerTime = recentData.sMedicalDeviceTime.getTime() + shiftHours * HOUR_MILLIS;
+        countrySettings = CareLinkGson.getGson().fromJson(Fixtures.read(Fixtures.COUNTRY_SETTINGS), CountrySettings.class);
+        client.sessionCountrySettings = countrySettings;
+        consentPage = Fixtures.read(Fixtures.LOGIN_CONSENT);
+        consentPageBytes = ByteString.encodeUtf8(consentPage);
+    }
+
+    @Benchmark
+    public RecentData correctTimeInRecentData() {
+        client.correctTimeInRecentData(recentData);
+        // Corrected data has no offset anymore, point the server time the other way for the next call
+        shiftHours = -shiftHours;
+        recentData.lastMedicalDeviceDataUpdateServerTime = recentData.sMedicalDeviceTime.getTime() + shiftHours * HOUR_MILLIS;
+        return recentData;
+    }
+
+    @Benchmark
+    public CountrySettings getCloneCountrySettings() {
+        return client.getClone(countrySettings, CountrySettings.class);
+    }
+
+    @Benchmark
+    public CountrySettings getSessionCountrySettings() {
+        return client.getSessionCountrySettings();
+    }
+
+    @Benchmark
+    public RecentData getCloneRecentData() {
+        return client.getClone(recentData, RecentData.class);
+    }
+
+    @Benchmark
+    public void extractResponseData(Blackhole blackhole) {
+        // Same extractions as the consent step of the login
+        blackhole.consume(client.extractResponseData(consentPage, "(form action=\")(.*)(\" method=\"POST\")", 2));
+        blackhole.consume(client.extractResponseData(consentPage,
+                "(<input type=\"hidden\" name=\"sessionData\" value=\")(.*)(\">)", 2));
+        blackhole.consume(client.extractResponseData(consentPage,
+                "(<input type=\"hidden\" name=\"sessionID\" value=\")(.*)(\">)", 2));
+    }
+
+    @Benchmark
+    public HtmlForm parseConsentForm() throws IOException {
+        // Body bytes as received, decoding is part of the parse (extractResponseData starts from the decoded String)
+        return HtmlForm.parse(new Buffer().write(consentPageBytes));
+    }
+
+}
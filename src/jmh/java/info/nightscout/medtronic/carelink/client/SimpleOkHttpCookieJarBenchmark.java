@@ -0,0 +1,70 @@
+package info.nightscout.medtronic.carelink.client;
+
+import okhttp3.Cookie;
+import okhttp3.HttpUrl;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Cookie lookups of every authorized request, jar filled like after a CareLink login
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SimpleOkHttpCookieJarBenchmark {
+
+    private static final String CARELINK_HOST = "carelink.minimed.eu";
+    private static final String LOGIN_HOST = "mdtlogin.medtronic.com";
+
+    private SimpleOkHttpCookieJar cookieJar;
+    private HttpUrl dataUrl;
+
+    @Setup
+    public void setup() {
+
+        List<Cookie> cookies = new ArrayList<>();
+        long expiresAt = System.currentTimeMillis() + TimeUnit.DAYS.toMillis(1);
+
+        cookies.add(newCookie(CARELINK_HOST, "auth_tmp_token", "eyJhbGciOiJSUzI1NiJ9.anonymized.token", expiresAt));
+        cookies.add(newCookie(CARELINK_HOST, "c_token_valid_to", "Tue Apr 20 11:28:00 UTC 2021", expiresAt));
+        cookies.add(newCookie(CARELINK_HOST, "application_country", "hu", expiresAt));
+        cookies.add(newCookie(CARELINK_HOST, "application_language", "en", expiresAt));
+        cookies.add(newCookie(CARELINK_HOST, "JSESSIONID", "0A1B2C3D4E5F6A7B8C9D0E1F2A3B4C5D", expiresAt));
+        cookies.add(newCookie(LOGIN_HOST, "SESSION", "0a1b2c3d-4e5f-6a7b-8c9d-0e1f2a3b4c5d", expiresAt));
+        cookies.add(newCookie(LOGIN_HOST, "JSESSIONID", "5D4C3B2A1F0E9D8C7B6A5F4E3D2C1B0A", expiresAt));
+
+        cookieJar = new SimpleOkHttpCookieJar();
+        cookieJar.addCookies(cookies);
+        dataUrl = HttpUrl.get("https://" + CARELINK_HOST + "/patient/connect/data");
+
+    }
+
+    @Benchmark
+    public Cookie getCookie() {
+        return cookieJar.getCookie("auth_tmp_token");
+    }
+
+    @Benchmark
+    public List<Cookie> getCookies() {
+        return cookieJar.getCookies("auth_tmp_token");
+    }
+
+    @Benchmark
+    public boolean contains() {
+        return cookieJar.contains("c_token_valid_to");
+    }
+
+    @Benchmark
+    public List<Cookie> loadForRequest() {
+        return cookieJar.loadForRequest(dataUrl);
+    }
+
+    private static Cookie newCookie(String domain, String name, String value, long expiresAt) {
+        return new Cookie.Builder().domain(domain).path("/").name(name).value(value).expiresAt(expiresAt).build();
+    }
+
+}
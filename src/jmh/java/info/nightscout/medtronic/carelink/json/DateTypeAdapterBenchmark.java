@@ -0,0 +1,73 @@
+package info.nightscout.medtronic.carelink.json;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.TypeAdapter;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Date;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+// Gson's default date adapter (shared DateFormats, several patterns tried) vs the ISO-8601 adapter
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DateTypeAdapterBenchmark {
+
+    // Date format of the CareLink messages
+    private static final String CARELINK_DATE = "2021-04-20T12:28:00.000-00:00";
+
+    private JsonPrimitive json;
+    private Date date;
+    private TypeAdapter<Date> defaultAdapter;
+    private TypeAdapter<Date> defaultOutputAdapter;
+    private TypeAdapter<Date> isoAdapter;
+    private TypeAdapter<Date> isoOutputAdapter;
+
+    @Setup
+    public void setup() {
+        Gson defaultGson = new GsonBuilder().create();
+        json = new JsonPrimitive(CARELINK_DATE);
+        date = defaultGson.getAdapter(Date.class).fromJsonTree(json);
+        defaultAdapter = defaultGson.getAdapter(Date.class);
+        defaultOutputAdapter = new GsonBuilder().setDateFormat(CareLinkGson.OUTPUT_DATE_FORMAT).create().getAdapter(Date.class);
+        isoAdapter = CareLinkGson.getGson().getAdapter(Date.class);
+        isoOutputAdapter = CareLinkGson.getPrettyGson().getAdapter(Date.class);
+    }
+
+    @Benchmark
+    public Date parseDefault() {
+        return defaultAdapter.fromJsonTree(json);
+    }
+
+    @Benchmark
+    public Date parseIso() {
+        return isoAdapter.fromJsonTree(json);
+    }
+
+    @Benchmark
+    public long parseIsoString() {
+        return IsoDateTypeAdapter.parse(CARELINK_DATE);
+    }
+
+    @Benchmark
+    public String formatDefaultOutput() {
+        return defaultOutputAdapter.toJson(date);
+    }
+
+    @Benchmark
+    public String formatIsoOutput() {
+        return isoOutputAdapter.toJson(date);
+    }
+
+    @Benchmark
+    public String formatIsoString() {
+        return IsoDateTypeAdapter.format(date.getTime(), TimeZone.getDefault(), false);
+    }
+
+}
@@ -0,0 +1,77 @@
+package info.nightscout.medtronic.carelink.json;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import info.nightscout.medtronic.carelink.Fixtures;
+import info.nightscout.medtronic.carelink.message.RecentData;
+import okio.Buffer;
+import okio.ByteString;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+// Reflective binding with a Gson per call (old client path) vs the shared streaming adapters (list or compact sensor glucose)
+// bufferedDigestedGson: changed response, buffered and digested before binding
+// bufferedDigestOnly: repeated response, recognized by its digest without binding
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RecentDataParseBenchmark {
+
+    @Param({Fixtures.RECENT_DATA_NGP, Fixtures.RECENT_DATA_GUARDIAN})
+    private String fixture;
+
+    private String json;
+    private ByteString body;
+    private Gson reflectiveGson;
+
+    @Setup
+    public void setup() {
+        json = Fixtures.read(fixture);
+        body = ByteString.encodeUtf8(json);
+        reflectiveGson = new GsonBuilder().create();
+    }
+
+    @Benchmark
+    public RecentData reflectiveNewGsonPerCall() {
+        return new GsonBuilder().create().fromJson(json, RecentData.class);
+    }
+
+    @Benchmark
+    public RecentData reflectiveSharedGson() {
+        return reflectiveGson.fromJson(json, RecentData.class);
+    }
+
+    @Benchmark
+    public RecentData streamingSharedGson() {
+        return CareLinkGson.getGson().fromJson(json, RecentData.class);
+    }
+
+    @Benchmark
+    public RecentData streamingDeviceTimeCorrection() {
+        return CareLinkGson.getGson(false, true).fromJson(json, RecentData.class);
+    }
+
+    @Benchmark
+    public RecentData streamingCompactGson() {
+        return CareLinkGson.getCompactGson().fromJson(json, RecentData.class);
+    }
+
+    @Benchmark
+    public RecentData bufferedDigestedGson() {
+        Buffer buffer = new Buffer().write(body);
+        buffer.md5();
+        return CareLinkGson.getGson().fromJson(new InputStreamReader(buffer.inputStream(), StandardCharsets.UTF_8), RecentData.class);
+    }
+
+    @Benchmark
+    public ByteString bufferedDigestOnly() {
+        return new Buffer().write(body).md5();
+    }
+
+}
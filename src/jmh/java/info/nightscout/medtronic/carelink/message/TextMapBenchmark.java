@@ -0,0 +1,41 @@
+package info.nightscout.medtronic.carelink.message;
+
+import info.nightscout.medtronic.carelink.Fixtures;
+import info.nightscout.medtronic.carelink.json.CareLinkGson;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+// Message texts of the last alarm and of all cleared notifications of a RecentData response
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TextMapBenchmark {
+
+    @Param({Fixtures.RECENT_DATA_NGP, Fixtures.RECENT_DATA_GUARDIAN})
+    private String fixture;
+
+    private RecentData recentData;
+
+    @Setup
+    public void setup() {
+        recentData = CareLinkGson.getGson().fromJson(Fixtures.read(fixture), RecentData.class);
+    }
+
+    @Benchmark
+    public String getAlarmMessage() {
+        return TextMap.getAlarmMessage(recentData.medicalDeviceFamily, recentData.lastAlarm);
+    }
+
+    @Benchmark
+    public void getNotificationMessage(Blackhole blackhole) {
+        for (ClearedNotification notification : recentData.notificationHistory.clearedNotifications) {
+            blackhole.consume(TextMap.getNotificationMessage(recentData.medicalDeviceFamily, notification));
+        }
+    }
+
+}
@@ -0,0 +1,41 @@
+package info.nightscout.medtronic.carelink.metrics;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Recording cost on the call path, with pollers of a fleet sharing one histogram
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LogLinearHistogramBenchmark {
+
+    private LogLinearHistogram histogram;
+
+    @Setup
+    public void setup() {
+        histogram = new LogLinearHistogram();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void recordSingleThread() {
+        histogram.record(ThreadLocalRandom.current().nextLong(1000, 2000000));
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void recordContended() {
+        histogram.record(ThreadLocalRandom.current().nextLong(1000, 2000000));
+    }
+
+    @Benchmark
+    public long valueAtQuantile() {
+        return histogram.getValueAtQuantile(0.99);
+    }
+
+}
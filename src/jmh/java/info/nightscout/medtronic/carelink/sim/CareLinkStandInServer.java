@@ -0,0 +1,416 @@
+package info.nightscout.medtronic.carelink.sim;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import info.nightscout.medtronic.carelink.Fixtures;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+// Local stand-in for the CareLink and login servers (both on one port): login and consent forms, auth cookies,
+// session info endpoints, last 24 hours and BLE periodic data, served from the recorded fixtures, recent uploads, report
+// calendar and report data of a simulated history (every day of the history has data, except every ninth day)
+// Clients use it with CareLinkClient.setServerUrls(getBaseUrl(), getBaseUrl())
+public class CareLinkStandInServer implements Closeable {
+
+    public static final String BLE_ENDPOINT_PATH = "/connect/carepartner/v6/display/message";
+    public static final String CONSENT_PATH = "/mmcl/sso/authorize/consent";
+    public static final String LOGIN_PATH = "/mmcl/auth/oauth/v2/authorize/login";
+
+    protected static final String AUTH_TOKEN_COOKIE_NAME = "auth_tmp_token";
+    protected static final String TOKEN_VALIDTO_COOKIE_NAME = "c_token_valid_to";
+
+    // Logged in account of an issued token
+    protected static class Token {
+        protected final String username;
+        protected final long validTo;
+        protected Token(String username, long validTo) {
+            this.username = username;
+            this.validTo = validTo;
+        }
+    }
+
+    protected final HttpServer server;
+    protected final ExecutorService executor;
+    protected final String baseUrl;
+    protected final byte[] recentDataNgp;
+    protected final byte[] recentDataGuardian;
+    protected final byte[] countrySettings;
+    protected final String consentPage;
+    // Login session id => username, removed at consent
+    protected final Map<String, String> loginSessions = new ConcurrentHashMap<>();
+    protected final Map<String, Token> tokens = new ConcurrentHashMap<>();
+    protected final LongAdder requests = new LongAdder();
+    protected final LongAdder logins = new LongAdder();
+
+    // Configuration, can be changed while running
+    protected volatile String password = "password";
+    protected volatile long latencyMillis = 0;
+    protected volatile long latencyJitterMillis = 0;
+    // Probability of HTTP 500 / spurious HTTP 401 for data requests
+    protected volatile double errorRate = 0;
+    protected volatile double unauthorizedRate = 0;
+    protected volatile long tokenLifetimeMillis = 60 * 60000L;
+    // Share of accounts with BLE devices (periodic data endpoint instead of last 24 hours)
+    protected volatile double bleRatio = 0.5;
+    // Days before today with report data
+    protected volatile int historyDays = 365;
+
+    public CareLinkStandInServer(int port, int threads) throws IOException {
+
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "carelink-stand-in");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 1024);
+        this.server.setExecutor(executor);
+        this.server.createContext("/", this::handle);
+        this.baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+
+        this.recentDataNgp = Fixtures.read(Fixtures.RECENT_DATA_NGP).getBytes(StandardCharsets.UTF_8);
+        this.recentDataGuardian = Fixtures.read(Fixtures.RECENT_DATA_GUARDIAN).getBytes(StandardCharsets.UTF_8);
+        this.countrySettings = Fixtures.read(Fixtures.COUNTRY_SETTINGS)
+                .replaceAll("\"blePereodicDataEndpoint\"\\s*:\\s*\"[^\"]*\"", "\"blePereodicDataEndpoint\":\"" + baseUrl + BLE_ENDPOINT_PATH + "\"")
+                .getBytes(StandardCharsets.UTF_8);
+        this.consentPage = Fixtures.read(Fixtures.LOGIN_CONSENT)
+                .replaceAll("form action=\"[^\"]*\"", "form action=\"" + baseUrl + CONSENT_PATH + "\"");
+
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+
+    public long getRequestCount() {
+        return requests.sum();
+    }
+
+    public long getLoginCount() {
+        return logins.sum();
+    }
+
+    public void setPassword(String password) {
+        this.password = password;
+    }
+
+    public void setLatency(long latencyMillis, long jitterMillis) {
+        this.latencyMillis = latencyMillis;
+        this.latencyJitterMillis = jitterMillis;
+    }
+
+    public void setErrorRate(double errorRate) {
+        this.errorRate = errorRate;
+    }
+
+    public void setUnauthorizedRate(double unauthorizedRate) {
+        this.unauthorizedRate = unauthorizedRate;
+    }
+
+    public void setTokenLifetimeMillis(long tokenLifetimeMillis) {
+        this.tokenLifetimeMillis = tokenLifetimeMillis;
+    }
+
+    public void setBleRatio(double bleRatio) {
+        this.bleRatio = bleRatio;
+    }
+
+    public void setHistoryDays(int historyDays) {
+        this.historyDays = historyDays;
+    }
+
+    // Day of the simulated history with data
+    public boolean hasHistory(LocalDate day) {
+        return !day.isAfter(LocalDate.now()) && !day.isBefore(LocalDate.now().minusDays(historyDays)) && day.toEpochDay() % 9 != 4;
+    }
+
+    protected void handle(HttpExchange exchange) throws IOException {
+
+        String path = exchange.getRequestURI().getPath();
+        String method = exchange.getRequestMethod();
+
+        requests.increment();
+
+        try {
+            this.delay();
+            if (path.equals("/patient/sso/login"))
+                this.handleLoginSession(exchange);
+            else if (path.equals(LOGIN_PATH) && method.equals("POST"))
+                this.handleLogin(exchange);
+            else if (path.equals(LOGIN_PATH))
+                this.send(exchange, 200, "text/html", this.loginPage().getBytes(StandardCharsets.UTF_8));
+            else if (path.equals(CONSENT_PATH))
+                this.handleConsent(exchange);
+            else if (path.startsWith("/patient/") || path.equals(BLE_ENDPOINT_PATH))
+                this.handleApi(exchange, path);
+            else
+                this.send(exchange, 404, null, null);
+        } catch (InterruptedException ex) {
+            this.send(exchange, 503, null, null);
+        } finally {
+            exchange.close();
+        }
+
+    }
+
+    // Login start: redirect to the login form with a new login session
+    protected void handleLoginSession(HttpExchange exchange) throws IOException {
+        String sessionId = UUID.randomUUID().toString().replace("-", "");
+        loginSessions.put(sessionId, "");
+        exchange.getResponseHeaders().set("Location", baseUrl + LOGIN_PATH + "?sessionID=" + sessionId + "&sessionData=" + sessionId);
+        this.send(exchange, 302, null, null);
+    }
+
+    // Login form post: consent form if the credentials are accepted, login form again otherwise
+    protected void handleLogin(HttpExchange exchange) throws IOException {
+
+        Map<String, String> form = readForm(exchange);
+        String sessionId = form.get("sessionID");
+        String username = form.get("username");
+
+        if (sessionId == null || username == null || !loginSessions.containsKey(sessionId) || !password.equals(form.get("password"))) {
+            this.send(exchange, 200, "text/html", this.loginPage().getBytes(StandardCharsets.UTF_8));
+            return;
+        }
+
+        loginSessions.put(sessionId, username);
+        this.send(exchange, 200, "text/html", consentPage
+                .replaceAll("name=\"sessionID\" value=\"[^\"]*\"", "name=\"sessionID\" value=\"" + sessionId + "\"")
+                .replaceAll("name=\"sessionData\" value=\"[^\"]*\"", "name=\"sessionData\" value=\"" + sessionId + "\"")
+                .getBytes(StandardCharsets.UTF_8));
+
+    }
+
+    // Consent: auth token cookies of the new session
+    protected void handleConsent(HttpExchange exchange) throws IOException {
+
+        Map<String, String> form = readForm(exchange);
+        String username = form.get("sessionID") == null ? null : loginSessions.remove(form.get("sessionID"));
+        String token = null;
+        long validTo;
+        SimpleDateFormat jsDateFormat = null;
+
+        if (username == null || username.isEmpty()) {
+            this.send(exchange, 400, null, null);
+            return;
+        }
+
+        token = UUID.randomUUID().toString();
+        validTo = System.currentTimeMillis() + tokenLifetimeMillis;
+        tokens.put(token, new Token(username, validTo));
+        logins.increment();
+
+        // JavaScript Date string as sent by CareLink
+        jsDateFormat = new SimpleDateFormat("EEE MMM dd yyyy HH:mm:ss 'GMT'Z", Locale.US);
+        jsDateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        exchange.getResponseHeaders().add("Set-Cookie", AUTH_TOKEN_COOKIE_NAME + "=" + token + "; Path=/");
+        exchange.getResponseHeaders().add("Set-Cookie", TOKEN_VALIDTO_COOKIE_NAME + "=" + jsDateFormat.format(new Date(validTo)) + "; Path=/");
+        this.send(exchange, 200, "text/html", "<html><body>Logged in</body></html>".getBytes(StandardCharsets.UTF_8));
+
+    }
+
+    protected void handleApi(HttpExchange exchange, String path) throws IOException {
+
+        String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+        Token token = authorization == null || !authorization.startsWith("Bearer ") ? null : tokens.get(authorization.substring(7));
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        boolean dataRequest = path.equals("/patient/connect/data") || path.equals(BLE_ENDPOINT_PATH) || path.equals("/patient/reports/data");
+        Map<String, String> query = readQuery(exchange);
+
+        // Drain request body (BLE request)
+        readBody(exchange);
+
+        if (token == null || token.validTo < System.currentTimeMillis() || (dataRequest && random.nextDouble() < unauthorizedRate)) {
+            this.send(exchange, 401, null, null);
+            return;
+        }
+        if (dataRequest && random.nextDouble() < errorRate) {
+            this.send(exchange, 500, null, null);
+            return;
+        }
+
+        switch (path) {
+            case "/patient/users/me":
+                this.sendJson(exchange, "{\"loginDateUTC\":\"2021-04-20T10:00:00.000Z\",\"id\":\"" + this.getAccountId(token.username)
+                        + "\",\"country\":\"HU\",\"language\":\"EN\",\"lastName\":\"LastName\",\"firstName\":\"FirstName\",\"accountId\":"
+                        + this.getAccountId(token.username) + ",\"role\":\"PATIENT_OUS\",\"needToReconsent\":false,\"mfaRequired\":false,\"mfaEnabled\":false}");
+                break;
+            case "/patient/users/me/profile":
+                this.sendJson(exchange, "{\"username\":\"" + token.username.replace("\"", "") + "\",\"firstName\":\"FirstName\",\"lastName\":\"LastName\",\"country\":\"HU\"}");
+                break;
+            case "/patient/countries/settings":
+                this.send(exchange, 200, "application/json", countrySettings);
+                break;
+            case "/patient/monitor/data":
+                this.sendJson(exchange, "{\"deviceFamily\":\"" + (this.isBle(token.username) ? "NGP_BLE" : "NGP") + "\"}");
+                break;
+            case "/patient/connect/data":
+            case BLE_ENDPOINT_PATH:
+                this.send(exchange, 200, "application/json", (token.username.hashCode() & 1) == 0 ? recentDataNgp : recentDataGuardian);
+                break;
+            case "/patient/dataUpload/recentUploads":
+                this.sendJson(exchange, this.recentUploads(Integer.parseInt(query.getOrDefault("numUploads", "10"))));
+                break;
+            case "/patient/reports/snapshotTimelinesForCalendar":
+                this.sendJson(exchange, this.calendar(LocalDate.parse(query.get("startDate")), LocalDate.parse(query.get("endDate"))));
+                break;
+            case "/patient/reports/data":
+                this.send(exchange, 200, "application/json", (token.username.hashCode() & 1) == 0 ? recentDataNgp : recentDataGuardian);
+                break;
+            default:
+                this.send(exchange, 404, null, null);
+        }
+
+    }
+
+    // One upload per day with history, newest first
+    protected String recentUploads(int count) {
+
+        StringBuilder json = new StringBuilder("{\"recentUploads\":[");
+        LocalDate day = LocalDate.now();
+        int uploads = 0;
+
+        for (; uploads < count && !day.isBefore(LocalDate.now().minusDays(historyDays)); day = day.minusDays(1)) {
+            if (!this.hasHistory(day))
+                continue;
+            json.append(uploads == 0 ? "" : ",").append("{\"date\":").append(day.toEpochDay() * 86400000L + 43200000L)
+                    .append(",\"mobileUploaded\":true,\"device\":\"MiniMed 780G\",\"serialNumber\":\"NG9999999H\"}");
+            uploads++;
+        }
+
+        return json.append("]}").toString();
+
+    }
+
+    // Sensor segments: runs of days with history between the dates
+    protected String calendar(LocalDate startDate, LocalDate endDate) {
+
+        StringBuilder json = new StringBuilder("{\"dataProvider\":[{\"category\":\"SENSOR\",\"segments\":[");
+        LocalDate segmentStart = null;
+        boolean first = true;
+
+        for (LocalDate day = startDate; !day.isAfter(endDate.plusDays(1)); day = day.plusDays(1)) {
+            if (this.hasHistory(day) && !day.isAfter(endDate)) {
+                if (segmentStart == null)
+                    segmentStart = day;
+            } else if (segmentStart != null) {
+                json.append(first ? "" : ",").append("{\"start\":\"").append(segmentStart).append("T00:00:00\",\"end\":\"")
+                        .append(day.minusDays(1)).append("T23:59:59\"}");
+                first = false;
+                segmentStart = null;
+            }
+        }
+
+        return json.append("]}]}").toString();
+
+    }
+
+    protected boolean isBle(String username) {
+        return (username.hashCode() & 0x7fffffff) % 1000 < bleRatio * 1000;
+    }
+
+    protected int getAccountId(String username) {
+        return 10000000 + (username.hashCode() & 0xffffff);
+    }
+
+    protected String loginPage() {
+        return "<html><body><form action=\"" + LOGIN_PATH + "\" method=\"POST\"><input name=\"username\"><input name=\"password\" type=\"password\"></form></body></html>";
+    }
+
+    protected void delay() throws InterruptedException {
+        long delay = latencyMillis + (latencyJitterMillis > 0 ? ThreadLocalRandom.current().nextLong(latencyJitterMillis + 1) : 0);
+        if (delay > 0)
+            Thread.sleep(delay);
+    }
+
+    protected void sendJson(HttpExchange exchange, String json) throws IOException {
+        this.send(exchange, 200, "application/json", json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    protected void send(HttpExchange exchange, int code, String contentType, byte[] body) throws IOException {
+
+        if (contentType != null)
+            exchange.getResponseHeaders().set("Content-Type", contentType + "; charset=utf-8");
+        exchange.sendResponseHeaders(code, body == null ? -1 : body.length);
+        if (body != null) {
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+
+    }
+
+    protected static byte[] readBody(HttpExchange exchange) throws IOException {
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+
+        try (InputStream in = exchange.getRequestBody()) {
+            while ((read = in.read(buffer)) != -1)
+                body.write(buffer, 0, read);
+        }
+
+        return body.toByteArray();
+
+    }
+
+    protected static Map<String, String> readQuery(HttpExchange exchange) throws IOException {
+
+        Map<String, String> query = new HashMap<>();
+        String rawQuery = exchange.getRequestURI().getRawQuery();
+        int separator;
+
+        if (rawQuery == null)
+            return query;
+        for (String parameter : rawQuery.split("&")) {
+            separator = parameter.indexOf('=');
+            if (separator > 0)
+                query.put(URLDecoder.decode(parameter.substring(0, separator), "UTF-8"), URLDecoder.decode(parameter.substring(separator + 1), "UTF-8"));
+        }
+
+        return query;
+
+    }
+
+    protected static Map<String, String> readForm(HttpExchange exchange) throws IOException {
+
+        Map<String, String> form = new HashMap<>();
+        String body = new String(readBody(exchange), StandardCharsets.UTF_8);
+        int separator;
+
+        for (String field : body.split("&")) {
+            separator = field.indexOf('=');
+            if (separator > 0)
+                form.put(URLDecoder.decode(field.substring(0, separator), "UTF-8"), URLDecoder.decode(field.substring(separator + 1), "UTF-8"));
+        }
+
+        return form;
+
+    }
+
+}
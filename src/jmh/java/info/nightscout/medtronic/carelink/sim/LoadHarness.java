@@ -0,0 +1,269 @@
+package info.nightscout.medtronic.carelink.sim;
+
+import info.nightscout.medtronic.carelink.client.CareLinkBackfill;
+import info.nightscout.medtronic.carelink.client.CareLinkClient;
+import info.nightscout.medtronic.carelink.client.CareLinkClientBuilder;
+import info.nightscout.medtronic.carelink.client.RetryPolicy;
+import info.nightscout.medtronic.carelink.message.RecentData;
+import info.nightscout.medtronic.carelink.metrics.CareLinkMetrics;
+import info.nightscout.medtronic.carelink.metrics.LogLinearHistogram;
+import info.nightscout.medtronic.carelink.nightscout.NightscoutDocument;
+import info.nightscout.medtronic.carelink.nightscout.NightscoutTarget;
+import info.nightscout.medtronic.carelink.nightscout.NightscoutUploader;
+import okhttp3.OkHttpClient;
+import org.apache.commons.cli.*;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Runs many simulated accounts through CareLinkClient against the local stand-in server:
+// login of every account, then polls of every account, reports throughput, latency and heap
+// Optionally the polled data is uploaded to local stand-in Nightscout sites (accounts are spread over the sites)
+// and the history of every account is backfilled after the polls
+// gradle loadTest -PloadTestArgs="-n 5000 -r 10 -l 50"
+public class LoadHarness {
+
+    private static final String COUNTRY = "hu";
+    private static final String API_SECRET = "stand-in-secret";
+
+    protected final int accounts;
+    protected final int polls;
+    protected final int concurrency;
+    protected final CareLinkStandInServer server;
+    protected final List<CareLinkClient> clients = new ArrayList<>();
+    protected final CareLinkMetrics metrics = new CareLinkMetrics();
+    protected final LogLinearHistogram loginLatency = new LogLinearHistogram();
+    protected final LogLinearHistogram pollLatency = new LogLinearHistogram();
+    protected final LongAdder loginFailures = new LongAdder();
+    protected final LongAdder pollFailures = new LongAdder();
+    protected NightscoutStandInServer nightscoutServer;
+    protected NightscoutUploader uploader;
+    protected int sites;
+    protected int backfillDays;
+    protected final LongAdder backfilledDays = new LongAdder();
+    protected final LongAdder backfilledChunks = new LongAdder();
+    protected final LongAdder backfillFailures = new LongAdder();
+
+    public LoadHarness(CareLinkStandInServer server, int accounts, int polls, int concurrency) {
+        this.server = server;
+        this.accounts = accounts;
+        this.polls = polls;
+        this.concurrency = concurrency;
+    }
+
+    public static void main(String[] args) throws Exception {
+
+        Options options = new Options();
+        CommandLine cmd = null;
+
+        options.addOption("n", "accounts", true, "Simulated accounts (default 1000).");
+        options.addOption("r", "polls", true, "Recent data polls per account (default 5).");
+        options.addOption("c", "concurrency", true, "Max concurrent requests of the clients (default 64).");
+        options.addOption("t", "threads", true, "Stand-in server threads (default 64).");
+        options.addOption("l", "latency", true, "Server latency in milliseconds (default 20).");
+        options.addOption("j", "jitter", true, "Server latency jitter in milliseconds (default 10).");
+        options.addOption("e", "errors", true, "Rate of HTTP 500 data responses (default 0).");
+        options.addOption("u", "unauthorized", true, "Rate of HTTP 401 data responses (default 0).");
+        options.addOption("b", "ble", true, "Rate of BLE accounts (default 0.5).");
+        options.addOption("g", "sites", true, "Stand-in Nightscout sites to upload to (default 0: no upload).");
+        options.addOption("q", "queue", true, "Nightscout upload queue capacity (default 10000).");
+        options.addOption("s", "nslatency", true, "Stand-in Nightscout latency in milliseconds (default 20).");
+        options.addOption("d", "days", true, "History days backfilled per account after the polls (default 0: no backfill).");
+
+        try {
+            cmd = new DefaultParser().parse(options, args);
+        } catch (ParseException ex) {
+            System.out.println(ex.getMessage());
+            new HelpFormatter().printHelp("LoadHarness", options);
+            return;
+        }
+
+        try (CareLinkStandInServer server = new CareLinkStandInServer(0, Integer.parseInt(cmd.getOptionValue("t", "64")))) {
+            server.setLatency(Long.parseLong(cmd.getOptionValue("l", "20")), Long.parseLong(cmd.getOptionValue("j", "10")));
+            server.setErrorRate(Double.parseDouble(cmd.getOptionValue("e", "0")));
+            server.setUnauthorizedRate(Double.parseDouble(cmd.getOptionValue("u", "0")));
+            server.setBleRatio(Double.parseDouble(cmd.getOptionValue("b", "0.5")));
+            server.start();
+            LoadHarness harness = new LoadHarness(server,
+                    Integer.parseInt(cmd.getOptionValue("n", "1000")),
+                    Integer.parseInt(cmd.getOptionValue("r", "5")),
+                    Integer.parseInt(cmd.getOptionValue("c", "64")));
+            if (Integer.parseInt(cmd.getOptionValue("g", "0")) > 0) {
+                harness.enableNightscout(Integer.parseInt(cmd.getOptionValue("g")), Integer.parseInt(cmd.getOptionValue("q", "10000")),
+                        Long.parseLong(cmd.getOptionValue("s", "20")));
+            }
+            harness.backfillDays = Integer.parseInt(cmd.getOptionValue("d", "0"));
+            harness.run();
+        }
+
+    }
+
+    public void enableNightscout(int sites, int queueCapacity, long latencyMillis) throws java.io.IOException {
+        this.sites = sites;
+        this.nightscoutServer = new NightscoutStandInServer(0, 16, API_SECRET);
+        this.nightscoutServer.setLatencyMillis(latencyMillis);
+        this.nightscoutServer.start();
+        this.uploader = new NightscoutUploader(new OkHttpClient(), queueCapacity, NightscoutUploader.DEFAULT_MAX_BATCH_SIZE,
+                NightscoutUploader.DEFAULT_WORKERS);
+    }
+
+    public void run() {
+
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        CareLinkClientBuilder clientBuilder = null;
+        RetryPolicy retryPolicy = new RetryPolicy();
+        long heapBefore;
+        long heapAfter;
+        long start;
+        long loginNanos;
+        long pollNanos;
+        long backfillNanos = 0;
+
+        // Display message POST only reads data, it is retried like the GET calls
+        retryPolicy.setSafeToRetry(request -> request.url().encodedPath().equals(CareLinkStandInServer.BLE_ENDPOINT_PATH));
+
+        // All accounts share one transport
+        clientBuilder = CareLinkClient.builder()
+                .maxRequests(concurrency)
+                .maxRequestsPerHost(concurrency)
+                .connectionPool(concurrency, 5, TimeUnit.MINUTES)
+                .serverUrls(server.getBaseUrl(), server.getBaseUrl())
+                .skipUnchangedRecentData(true)
+                .retryPolicy(retryPolicy)
+                .metrics(metrics);
+
+        System.gc();
+        heapBefore = memory.getHeapMemoryUsage().getUsed();
+
+        for (int i = 0; i < accounts; i++)
+            clients.add(clientBuilder.build("user" + i, "password", COUNTRY));
+
+        start = System.nanoTime();
+        this.runAll(this::login);
+        loginNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        this.runAll(client -> this.poll(client, polls));
+        pollNanos = System.nanoTime() - start;
+
+        if (backfillDays > 0) {
+            start = System.nanoTime();
+            this.runAll(this::backfill);
+            backfillNanos = System.nanoTime() - start;
+        }
+
+        System.gc();
+        heapAfter = memory.getHeapMemoryUsage().getUsed();
+
+        System.out.println("Accounts: " + accounts + ", polls per account: " + polls + ", concurrency: " + concurrency);
+        System.out.println(String.format("Logins: %d in %.1f s (%.1f / s), failed: %d, latency p50 %.1f ms, p99 %.1f ms",
+                loginLatency.getCount(), loginNanos / 1e9, loginLatency.getCount() / (loginNanos / 1e9), loginFailures.sum(),
+                loginLatency.getValueAtQuantile(0.5) / 1000.0, loginLatency.getValueAtQuantile(0.99) / 1000.0));
+        System.out.println(String.format("Polls: %d in %.1f s (%.1f / s), failed: %d, latency p50 %.1f ms, p99 %.1f ms, max %.1f ms",
+                pollLatency.getCount(), pollNanos / 1e9, pollLatency.getCount() / (pollNanos / 1e9), pollFailures.sum(),
+                pollLatency.getValueAtQuantile(0.5) / 1000.0, pollLatency.getValueAtQuantile(0.99) / 1000.0, pollLatency.getMax() / 1000.0));
+        if (backfillDays > 0) {
+            System.out.println(String.format("Backfill: %d days per account, %d days with data in %d chunks in %.1f s (%.1f days / s), failed chunks: %d",
+                    backfillDays, backfilledDays.sum(), backfilledChunks.sum(), backfillNanos / 1e9, backfilledDays.sum() / (backfillNanos / 1e9),
+                    backfillFailures.sum()));
+        }
+        System.out.println(String.format("HTTP requests: %d (server), 401 responses: %d, logins forced by 401: %d, retries: %d, short-circuited: %d",
+                server.getRequestCount(), metrics.getUnauthorizedCount(), metrics.getUnauthorizedRefreshCount(),
+                metrics.getRetryCount(), metrics.getShortCircuitCount()));
+        System.out.println(String.format("Heap used: %.1f MB, %.1f KB per account",
+                heapAfter / 1048576.0, (heapAfter - heapBefore) / 1024.0 / accounts));
+
+        if (uploader != null) {
+            try {
+                uploader.flush(5, TimeUnit.MINUTES);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            System.out.println(String.format("Nightscout: %d sites, %d documents uploaded in %d requests, failed: %d, rejected (queue full): %d",
+                    sites, uploader.getUploadedCount(), uploader.getRequestCount(), uploader.getFailedCount(), uploader.getRejectedCount()));
+            System.out.println(String.format("Nightscout stored: %d entries, %d treatments, %d device statuses, duplicates: %d",
+                    nightscoutServer.getStoredCount(NightscoutDocument.ENTRIES), nightscoutServer.getStoredCount(NightscoutDocument.TREATMENTS),
+                    nightscoutServer.getStoredCount(NightscoutDocument.DEVICE_STATUS), nightscoutServer.getDuplicateCount()));
+            uploader.close();
+            nightscoutServer.close();
+        }
+
+        clientBuilder.buildHttpClient().dispatcher().executorService().shutdown();
+        clientBuilder.buildHttpClient().connectionPool().evictAll();
+
+    }
+
+    protected interface AccountTask {
+        CompletableFuture<?> run(CareLinkClient client);
+    }
+
+    protected void runAll(AccountTask task) {
+
+        List<CompletableFuture<?>> futures = new ArrayList<>();
+
+        for (CareLinkClient client : clients)
+            futures.add(task.run(client));
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+
+    }
+
+    protected CompletableFuture<?> login(CareLinkClient client) {
+
+        long start = System.nanoTime();
+
+        return client.loginAsync().whenComplete((success, ex) -> {
+            loginLatency.record((System.nanoTime() - start) / 1000);
+            if (ex != null || success == null || !success)
+                loginFailures.increment();
+        });
+
+    }
+
+    protected CompletableFuture<?> backfill(CareLinkClient client) {
+
+        CareLinkBackfill backfill = new CareLinkBackfill(client);
+
+        return backfill.runAsync(LocalDate.now().minusDays(backfillDays - 1), LocalDate.now(), (start, end, data) -> backfilledChunks.increment())
+                .thenAccept(summary -> {
+                    backfilledDays.add(summary.daysWithData);
+                    backfillFailures.add(summary.failedChunks.size());
+                });
+
+    }
+
+    // Blocks the polling thread while the upload queue is full
+    protected void upload(CareLinkClient client, RecentData recentData) {
+        NightscoutTarget target = new NightscoutTarget(nightscoutServer.getSiteUrl(Math.abs(client.hashCode() % sites)), API_SECRET);
+        try {
+            uploader.submit(target, recentData, 1, TimeUnit.MINUTES);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Polls of an account are sequential, accounts poll concurrently (limited by the dispatcher)
+    protected CompletableFuture<?> poll(CareLinkClient client, int remaining) {
+
+        long start = System.nanoTime();
+
+        if (remaining == 0)
+            return CompletableFuture.completedFuture(null);
+
+        return client.getRecentDataResultAsync().handle((result, ex) -> {
+            pollLatency.record((System.nanoTime() - start) / 1000);
+            if (ex != null || !result.isSuccess() || (result.getData() == null && !result.isNotModified()))
+                pollFailures.increment();
+            else if (uploader != null && !result.isNotModified())
+                this.upload(client, result.getData());
+            return result;
+        }).thenCompose(result -> this.poll(client, remaining - 1));
+
+    }
+
+}
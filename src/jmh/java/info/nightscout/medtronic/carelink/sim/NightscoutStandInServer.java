@@ -0,0 +1,142 @@
+package info.nightscout.medtronic.carelink.sim;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import info.nightscout.medtronic.carelink.json.CareLinkGson;
+import okio.ByteString;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+// Local stand-in for Nightscout sites: POST /<site>/api/v1/{entries|treatments|devicestatus} with JSON arrays
+// Counts stored and duplicate documents (entries: type + date, others: eventType + created_at)
+public class NightscoutStandInServer implements Closeable {
+
+    protected final HttpServer server;
+    protected final ExecutorService executor;
+    protected final String baseUrl;
+    protected final String apiSecretHash;
+    protected final Set<String> stored = ConcurrentHashMap.newKeySet();
+    protected final Map<String, LongAdder> storedPerCollection = new ConcurrentHashMap<>();
+    protected final LongAdder duplicates = new LongAdder();
+    protected final LongAdder requests = new LongAdder();
+
+    protected volatile long latencyMillis = 0;
+    protected volatile double errorRate = 0;
+
+    public NightscoutStandInServer(int port, int threads, String apiSecret) throws IOException {
+
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "nightscout-stand-in");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 1024);
+        this.server.setExecutor(executor);
+        this.server.createContext("/", this::handle);
+        this.baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+        this.apiSecretHash = ByteString.encodeUtf8(apiSecret).sha1().hex();
+
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    // URL of a site, sites are separated by the first path segment
+    public String getSiteUrl(int site) {
+        return baseUrl + "/site" + site;
+    }
+
+    public void setLatencyMillis(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
+
+    // Probability of HTTP 503
+    public void setErrorRate(double errorRate) {
+        this.errorRate = errorRate;
+    }
+
+    public long getStoredCount(String collection) {
+        LongAdder count = storedPerCollection.get(collection);
+        return count == null ? 0 : count.sum();
+    }
+
+    public long getDuplicateCount() {
+        return duplicates.sum();
+    }
+
+    public long getRequestCount() {
+        return requests.sum();
+    }
+
+    protected void handle(HttpExchange exchange) throws IOException {
+
+        String[] path = exchange.getRequestURI().getPath().split("/");
+        String collection = null;
+        JsonArray body = null;
+
+        requests.increment();
+
+        try {
+            if (latencyMillis > 0)
+                Thread.sleep(latencyMillis);
+            // /<site>/api/v1/<collection>
+            if (path.length != 5 || !exchange.getRequestMethod().equals("POST")) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            if (!apiSecretHash.equals(exchange.getRequestHeaders().getFirst("api-secret"))) {
+                exchange.sendResponseHeaders(401, -1);
+                return;
+            }
+            if (ThreadLocalRandom.current().nextDouble() < errorRate) {
+                exchange.sendResponseHeaders(503, -1);
+                return;
+            }
+
+            collection = path[4];
+            body = CareLinkGson.getGson().fromJson(new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8), JsonArray.class);
+            for (JsonElement element : body) {
+                if (stored.add(path[1] + "|" + collection + "|" + getKey(element.getAsJsonObject())))
+                    storedPerCollection.computeIfAbsent(collection, key -> new LongAdder()).increment();
+                else
+                    duplicates.increment();
+            }
+            exchange.sendResponseHeaders(200, -1);
+        } catch (InterruptedException ex) {
+            exchange.sendResponseHeaders(503, -1);
+        } catch (RuntimeException ex) {
+            exchange.sendResponseHeaders(400, -1);
+        } finally {
+            exchange.close();
+        }
+
+    }
+
+    protected static String getKey(JsonObject document) {
+        if (document.has("date"))
+            return document.get("type").getAsString() + "|" + document.get("date").getAsLong();
+        return (document.has("eventType") ? document.get("eventType").getAsString() : "") + "|" + document.get("created_at").getAsString();
+    }
+
+}
@@ -0,0 +1,380 @@
+package info.nightscout.medtronic.carelink.archive;
+
+import com.google.gson.Gson;
+import info.nightscout.medtronic.carelink.json.CareLinkGson;
+import info.nightscout.medtronic.carelink.message.*;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+// Archive of one account: numbered segment files + checkpoint of the last synced position and dedup keys
+class AccountArchive {
+
+    protected static final String SEGMENT_SUFFIX = ".seg";
+    protected static final String CHECKPOINT_FILE = "checkpoint.json";
+    protected static final String CHECKPOINT_TEMP_FILE = "checkpoint.json.tmp";
+    // Items older than this (compared to the newest archived item) are treated as already archived
+    protected static final long DEDUP_WINDOW_MILLIS = TimeUnit.HOURS.toMillis(48);
+
+    // Persisted state, recovery scans only the records after it
+    protected static class Checkpoint {
+        protected int segmentIndex;
+        protected long offset;
+        protected long newestTime;
+        protected Map<String, Long> keys;
+    }
+
+    protected final Path directory;
+    protected final long segmentSize;
+    protected final Gson gson = CareLinkGson.getGson();
+    protected final CRC32 crc = new CRC32();
+
+    protected int segmentIndex;
+    protected long position;
+    protected FileChannel channel;
+    protected long newestTime = Long.MIN_VALUE;
+    protected Map<String, Long> keys = new HashMap<>();
+    protected boolean dirty;
+    protected ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+
+    protected AccountArchive(Path directory, long segmentSize) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+    }
+
+    static AccountArchive open(Path directory, long segmentSize) throws IOException {
+
+        AccountArchive archive = new AccountArchive(directory, segmentSize);
+
+        Files.createDirectories(directory);
+        archive.recover();
+
+        return archive;
+
+    }
+
+    // Restore checkpoint, then scan the tail written after it (truncating an incomplete last record)
+    protected void recover() throws IOException {
+
+        Checkpoint checkpoint = this.readCheckpoint();
+        List<Integer> segments = this.listSegments();
+        int startIndex;
+        long startOffset;
+
+        if (segments.isEmpty()) {
+            this.createSegment(1);
+            return;
+        }
+
+        if (checkpoint != null && segments.contains(checkpoint.segmentIndex)) {
+            startIndex = checkpoint.segmentIndex;
+            startOffset = checkpoint.offset;
+            newestTime = checkpoint.newestTime;
+            if (checkpoint.keys != null)
+                keys = checkpoint.keys;
+        } else {
+            // No usable checkpoint: full scan
+            startIndex = segments.get(0);
+            startOffset = ArchiveSegmentReader.SEGMENT_HEADER_SIZE;
+        }
+
+        for (int index : segments) {
+            if (index < startIndex)
+                continue;
+            this.scanSegment(index, index == startIndex ? startOffset : ArchiveSegmentReader.SEGMENT_HEADER_SIZE);
+        }
+
+    }
+
+    protected void scanSegment(int index, long offset) throws IOException {
+
+        Path segment = this.getSegmentPath(index);
+        ArchiveRecord record;
+        long validEnd;
+        boolean headerValid;
+
+        // Checkpoint beyond the end of file (e.g. file replaced), scan the whole segment
+        if (offset > Files.size(segment))
+            offset = ArchiveSegmentReader.SEGMENT_HEADER_SIZE;
+
+        try (ArchiveSegmentReader reader = new ArchiveSegmentReader(segment, offset)) {
+            while ((record = reader.next()) != null) {
+                this.addKey(record.getKey(), record.getTime());
+            }
+            validEnd = reader.getPosition();
+            headerValid = reader.isHeaderValid();
+        }
+
+        if (channel != null)
+            channel.close();
+        channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (!headerValid) {
+            // Segment was created, but the header never reached the disk
+            channel.truncate(0);
+            channel.write(this.newSegmentHeader(), 0);
+            validEnd = ArchiveSegmentReader.SEGMENT_HEADER_SIZE;
+        } else if (channel.size() > validEnd) {
+            channel.truncate(validEnd);
+        }
+        segmentIndex = index;
+        position = validEnd;
+
+    }
+
+    // Append items not archived yet with one write, returns them as delta
+    synchronized RecentDataDelta append(RecentData recentData) throws IOException {
+
+        RecentDataDelta delta = new RecentDataDelta();
+        Map<String, Long> newKeys = new HashMap<>();
+
+        delta.recentData = recentData;
+        buffer.clear();
+
+        if (recentData.sgSeries != null) {
+            for (int i = 0; i < recentData.sgSeries.size(); i++) {
+                long time = recentData.sgSeries.getTime(i);
+                if (time == SensorGlucoseSeries.NO_TIME)
+                    continue;
+                String key = "S" + RecentDataDelta.getSensorGlucoseKey(time,
+                        recentData.sgSeries.hasValue(i) ? recentData.sgSeries.getValue(i) : null, recentData.sgSeries.getSensorState(i));
+                if (this.isNew(key, time, newKeys)) {
+                    SensorGlucose sg = recentData.sgSeries.get(i);
+                    if (this.addRecord(ArchiveRecord.TYPE_SENSOR_GLUCOSE, time, key, sg, newKeys))
+                        delta.sgs.add(sg);
+                }
+            }
+        }
+        if (recentData.sgs != null) {
+            for (SensorGlucose sg : recentData.sgs) {
+                if (sg.datetime == null)
+                    continue;
+                long time = sg.datetime.getTime();
+                // A later value for an archived slot (e.g. after sg=0) is a new record
+                String key = "S" + RecentDataDelta.getSensorGlucoseKey(time, sg.sg, sg.sensorState);
+                if (this.isNew(key, time, newKeys) && this.addRecord(ArchiveRecord.TYPE_SENSOR_GLUCOSE, time, key, sg, newKeys)) {
+                    delta.sgs.add(sg);
+                }
+            }
+        }
+        if (recentData.markers != null) {
+            for (Marker marker : recentData.markers) {
+                if (marker.dateTime == null)
+                    continue;
+                long time = marker.dateTime.getTime();
+                // Several markers can have the same time (e.g. meal + bolus, two manual boluses)
+                String key = "M" + RecentDataDelta.getMarkerKey(marker);
+                if (this.isNew(key, time, newKeys) && this.addRecord(ArchiveRecord.TYPE_MARKER, time, key, marker, newKeys)) {
+                    delta.markers.add(marker);
+                }
+            }
+        }
+        if (recentData.notificationHistory != null) {
+            if (recentData.notificationHistory.activeNotifications != null) {
+                for (ActiveNotification notification : recentData.notificationHistory.activeNotifications) {
+                    long time = notification.dateTime == null ? 0 : notification.dateTime.getTime();
+                    String key = "A" + (notification.GUID == null ? String.valueOf(time) : notification.GUID);
+                    if (this.isNew(key, time, newKeys) && this.addRecord(ArchiveRecord.TYPE_ACTIVE_NOTIFICATION, time, key, notification, newKeys)) {
+                        delta.activeNotifications.add(notification);
+                    }
+                }
+            }
+            if (recentData.notificationHistory.clearedNotifications != null) {
+                for (ClearedNotification notification : recentData.notificationHistory.clearedNotifications) {
+                    long time = notification.dateTime == null ? 0 : notification.dateTime.getTime();
+                    String key = "C" + (notification.GUID == null ? String.valueOf(time) : notification.GUID);
+                    if (this.isNew(key, time, newKeys) && this.addRecord(ArchiveRecord.TYPE_CLEARED_NOTIFICATION, time, key, notification, newKeys)) {
+                        delta.clearedNotifications.add(notification);
+                    }
+                }
+            }
+        }
+
+        if (newKeys.isEmpty())
+            return delta;
+
+        // Keys are only taken over after a successful write, a failed write is overwritten by the next one
+        buffer.flip();
+        this.write(buffer);
+        for (Map.Entry<String, Long> key : newKeys.entrySet()) {
+            this.addKey(key.getKey(), key.getValue());
+        }
+        dirty = true;
+
+        return delta;
+
+    }
+
+    // Time less item (0) is never too old
+    protected boolean isNew(String key, long time, Map<String, Long> newKeys) {
+        if (time != 0 && newestTime != Long.MIN_VALUE && time < newestTime - DEDUP_WINDOW_MILLIS)
+            return false;
+        if (keys.containsKey(key) || newKeys.containsKey(key))
+            return false;
+        newKeys.put(key, time == 0 ? Math.max(newestTime, 0) : time);
+        return true;
+    }
+
+    protected void addKey(String key, long time) {
+        keys.put(key, time);
+        newestTime = Math.max(newestTime, time);
+    }
+
+    // Item too large for a record is skipped (not archived and not part of the delta)
+    protected boolean addRecord(byte type, long time, String key, Object message, Map<String, Long> newKeys) {
+        try {
+            buffer = ArchiveSegmentReader.encode(buffer, type, time, key, gson.toJson(message), crc);
+            return true;
+        } catch (IllegalArgumentException ex) {
+            newKeys.remove(key);
+            return false;
+        }
+    }
+
+    protected void write(ByteBuffer data) throws IOException {
+
+        long writePosition;
+
+        // Roll over to a new segment, a single large write still goes to one segment
+        if (position > ArchiveSegmentReader.SEGMENT_HEADER_SIZE && position + data.remaining() > segmentSize) {
+            channel.force(false);
+            channel.close();
+            this.createSegment(segmentIndex + 1);
+        }
+
+        writePosition = position;
+        while (data.hasRemaining()) {
+            writePosition += channel.write(data, writePosition);
+        }
+        position = writePosition;
+
+    }
+
+    // Group commit: one fsync for everything appended since the last commit, then the checkpoint
+    synchronized void commit() throws IOException {
+
+        Checkpoint checkpoint = new Checkpoint();
+        Path temp = directory.resolve(CHECKPOINT_TEMP_FILE);
+
+        if (!dirty)
+            return;
+
+        channel.force(false);
+
+        // Keys out of the dedup window are not needed anymore
+        if (newestTime != Long.MIN_VALUE)
+            keys.values().removeIf(time -> time < newestTime - DEDUP_WINDOW_MILLIS);
+
+        checkpoint.segmentIndex = segmentIndex;
+        checkpoint.offset = position;
+        checkpoint.newestTime = newestTime;
+        checkpoint.keys = keys;
+        try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            gson.toJson(checkpoint, writer);
+        }
+        try {
+            Files.move(temp, directory.resolve(CHECKPOINT_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(temp, directory.resolve(CHECKPOINT_FILE), StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        dirty = false;
+
+    }
+
+    synchronized void close() throws IOException {
+        try {
+            this.commit();
+        } finally {
+            channel.close();
+        }
+    }
+
+    // All valid records of all segments in write order
+    static void read(Path directory, Consumer<ArchiveRecord> consumer) throws IOException {
+
+        ArchiveRecord record;
+
+        if (!Files.isDirectory(directory))
+            return;
+
+        for (int index : listSegments(directory)) {
+            try (ArchiveSegmentReader reader = new ArchiveSegmentReader(getSegmentPath(directory, index), ArchiveSegmentReader.SEGMENT_HEADER_SIZE)) {
+                while ((record = reader.next()) != null) {
+                    consumer.accept(record);
+                }
+            }
+        }
+
+    }
+
+    protected void createSegment(int index) throws IOException {
+        channel = FileChannel.open(this.getSegmentPath(index), StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        channel.write(this.newSegmentHeader(), 0);
+        segmentIndex = index;
+        position = ArchiveSegmentReader.SEGMENT_HEADER_SIZE;
+    }
+
+    protected ByteBuffer newSegmentHeader() {
+        ByteBuffer header = ByteBuffer.allocate(ArchiveSegmentReader.SEGMENT_HEADER_SIZE);
+        header.putInt(ArchiveSegmentReader.SEGMENT_MAGIC).flip();
+        return header;
+    }
+
+    protected Checkpoint readCheckpoint() {
+
+        Path checkpointPath = directory.resolve(CHECKPOINT_FILE);
+
+        if (!Files.exists(checkpointPath))
+            return null;
+
+        try (Reader reader = Files.newBufferedReader(checkpointPath, StandardCharsets.UTF_8)) {
+            return gson.fromJson(reader, Checkpoint.class);
+        } catch (Exception ex) {
+            // Unreadable checkpoint only means a full scan
+            return null;
+        }
+
+    }
+
+    protected List<Integer> listSegments() throws IOException {
+        return listSegments(directory);
+    }
+
+    protected Path getSegmentPath(int index) {
+        return getSegmentPath(directory, index);
+    }
+
+    protected static List<Integer> listSegments(Path directory) throws IOException {
+
+        List<Integer> segments = new ArrayList<>();
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    segments.add(Integer.parseInt(name.substring(0, name.length() - SEGMENT_SUFFIX.length())));
+                } catch (NumberFormatException ex) {
+                    // Not a segment of the archive
+                }
+            }
+        }
+        Collections.sort(segments);
+
+        return segments;
+
+    }
+
+    protected static Path getSegmentPath(Path directory, int index) {
+        return directory.resolve(String.format("%010d", index) + SEGMENT_SUFFIX);
+    }
+
+}
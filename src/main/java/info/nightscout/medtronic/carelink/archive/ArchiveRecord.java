@@ -0,0 +1,48 @@
+package info.nightscout.medtronic.carelink.archive;
+
+import info.nightscout.medtronic.carelink.json.CareLinkGson;
+
+// One archived item: sensor glucose, marker or notification as JSON
+public class ArchiveRecord {
+
+    public static final byte TYPE_SENSOR_GLUCOSE = 1;
+    public static final byte TYPE_MARKER = 2;
+    public static final byte TYPE_ACTIVE_NOTIFICATION = 3;
+    public static final byte TYPE_CLEARED_NOTIFICATION = 4;
+
+    private final byte type;
+    private final long time;
+    private final String key;
+    private final String json;
+
+    public ArchiveRecord(byte type, long time, String key, String json) {
+        this.type = type;
+        this.time = time;
+        this.key = key;
+        this.json = json;
+    }
+
+    public byte getType() {
+        return type;
+    }
+
+    // Epoch millis of the item (0 if the item has no time)
+    public long getTime() {
+        return time;
+    }
+
+    // Deduplication key (timestamp or GUID based)
+    public String getKey() {
+        return key;
+    }
+
+    public String getJson() {
+        return json;
+    }
+
+    // e.g. getMessage(SensorGlucose.class) for TYPE_SENSOR_GLUCOSE
+    public <T> T getMessage(Class<T> messageClass) {
+        return CareLinkGson.getGson().fromJson(json, messageClass);
+    }
+
+}
@@ -0,0 +1,139 @@
+package info.nightscout.medtronic.carelink.archive;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+// Sequential reader of one segment file, stops at the end or at the first incomplete or corrupt record
+class ArchiveSegmentReader implements Closeable {
+
+    // Segment: magic + records, record: length + CRC32 of body + body (type, time, key length, key, JSON)
+    static final int SEGMENT_MAGIC = 0x434C4131;
+    static final int SEGMENT_HEADER_SIZE = 4;
+    static final int RECORD_HEADER_SIZE = 8;
+    static final int RECORD_BODY_FIXED_SIZE = 11;
+    static final int MAX_RECORD_BODY_SIZE = 1 << 20;
+
+    private final FileChannel channel;
+    private final DataInputStream in;
+    private final CRC32 crc = new CRC32();
+    private long position;
+    private boolean headerValid;
+
+    ArchiveSegmentReader(Path segment, long offset) throws IOException {
+
+        ByteBuffer header = ByteBuffer.allocate(SEGMENT_HEADER_SIZE);
+
+        this.channel = FileChannel.open(segment, StandardOpenOption.READ);
+
+        try {
+            while (header.hasRemaining() && channel.read(header, header.position()) > 0) { }
+            this.headerValid = !header.hasRemaining() && header.getInt(0) == SEGMENT_MAGIC;
+            // Start at the requested record (buffered stream is created after positioning the channel)
+            this.position = Math.max(SEGMENT_HEADER_SIZE, offset);
+            channel.position(position);
+            this.in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), 64 * 1024));
+        } catch (IOException ex) {
+            channel.close();
+            throw ex;
+        }
+
+    }
+
+    boolean isHeaderValid() {
+        return headerValid;
+    }
+
+    // End of the last valid record read so far
+    long getPosition() {
+        return position;
+    }
+
+    // Next valid record or null
+    ArchiveRecord next() throws IOException {
+
+        int length;
+        int expectedCrc;
+        byte[] body = null;
+        ByteBuffer buffer = null;
+        byte type;
+        long time;
+        byte[] key = null;
+
+        if (!headerValid)
+            return null;
+
+        try {
+            length = in.readInt();
+            expectedCrc = in.readInt();
+            if (length < RECORD_BODY_FIXED_SIZE || length > MAX_RECORD_BODY_SIZE)
+                return null;
+            body = new byte[length];
+            in.readFully(body);
+        } catch (EOFException ex) {
+            // Incomplete record at the tail (e.g. crash during write)
+            return null;
+        }
+
+        crc.reset();
+        crc.update(body, 0, body.length);
+        if ((int) crc.getValue() != expectedCrc)
+            return null;
+
+        buffer = ByteBuffer.wrap(body);
+        type = buffer.get();
+        time = buffer.getLong();
+        key = new byte[buffer.getShort() & 0xFFFF];
+        if (key.length > buffer.remaining())
+            return null;
+        buffer.get(key);
+
+        position += RECORD_HEADER_SIZE + length;
+
+        return new ArchiveRecord(type, time, new String(key, StandardCharsets.UTF_8),
+                new String(body, buffer.position(), buffer.remaining(), StandardCharsets.UTF_8));
+
+    }
+
+    // Body of a record as written by the archive, IllegalArgumentException if it is too large to be read back
+    static ByteBuffer encode(ByteBuffer target, byte type, long time, String key, String json, CRC32 crc) {
+
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        byte[] jsonBytes = json.getBytes(StandardCharsets.UTF_8);
+        int length = RECORD_BODY_FIXED_SIZE + keyBytes.length + jsonBytes.length;
+        int bodyStart;
+
+        // Would be taken for a corrupt record when read back
+        if (length > MAX_RECORD_BODY_SIZE || keyBytes.length > 0xFFFF)
+            throw new IllegalArgumentException("Record too large: " + length + " bytes");
+        if (target.remaining() < RECORD_HEADER_SIZE + length) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(target.capacity() * 2, target.position() + RECORD_HEADER_SIZE + length));
+            target.flip();
+            larger.put(target);
+            target = larger;
+        }
+
+        target.putInt(length);
+        target.putInt(0);
+        bodyStart = target.position();
+        target.put(type).putLong(time).putShort((short) keyBytes.length).put(keyBytes).put(jsonBytes);
+
+        crc.reset();
+        crc.update(target.array(), target.arrayOffset() + bodyStart, length);
+        target.putInt(bodyStart - 4, (int) crc.getValue());
+
+        return target;
+
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+}
@@ -0,0 +1,156 @@
+package info.nightscout.medtronic.carelink.archive;
+
+import info.nightscout.medtronic.carelink.message.RecentData;
+import info.nightscout.medtronic.carelink.message.RecentDataDelta;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+
+// Append-only history archive of polled data: only new SGs, markers and notifications are written per account
+// Records are CRC checked and written to numbered segment files, synced in groups (one fsync per commit interval)
+public class CareLinkArchive implements Closeable {
+
+    public static final long DEFAULT_SEGMENT_SIZE = 16L * 1024 * 1024;
+    public static final long DEFAULT_COMMIT_INTERVAL_MILLIS = 1000;
+
+    protected final Path directory;
+    protected final long segmentSize;
+    protected final long commitIntervalMillis;
+    protected final Map<String, AccountArchive> accounts = new ConcurrentHashMap<>();
+    protected final ScheduledExecutorService committer;
+    protected volatile boolean closed = false;
+
+    public CareLinkArchive(String directory) {
+        this(directory, DEFAULT_SEGMENT_SIZE, DEFAULT_COMMIT_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    // Commit interval 0: every append is synced before it returns
+    public CareLinkArchive(String directory, long segmentSize, long commitInterval, TimeUnit unit) {
+
+        this.directory = Paths.get(directory);
+        this.segmentSize = segmentSize;
+        this.commitIntervalMillis = unit.toMillis(commitInterval);
+
+        if (commitIntervalMillis > 0) {
+            this.committer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "carelink-archive-commit");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.committer.scheduleWithFixedDelay(this::commitQuietly, commitIntervalMillis, commitIntervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            this.committer = null;
+        }
+
+    }
+
+    // Archive the new items of the response, returns the items written
+    public RecentDataDelta append(String accountId, RecentData recentData) throws IOException {
+
+        AccountArchive account = null;
+        RecentDataDelta delta = null;
+
+        if (recentData == null)
+            return new RecentDataDelta();
+
+        account = this.getAccount(accountId);
+        delta = account.append(recentData);
+        if (commitIntervalMillis <= 0)
+            account.commit();
+
+        return delta;
+
+    }
+
+    // All archived records of the account in write order (stops at a damaged record of a segment)
+    public void read(String accountId, Consumer<ArchiveRecord> consumer) throws IOException {
+        AccountArchive.read(this.getAccountDirectory(accountId), consumer);
+    }
+
+    // Sync everything appended so far
+    public void flush() throws IOException {
+        for (AccountArchive account : accounts.values()) {
+            account.commit();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+
+        IOException error = null;
+
+        closed = true;
+        if (committer != null)
+            committer.shutdown();
+
+        for (AccountArchive account : accounts.values()) {
+            try {
+                account.close();
+            } catch (IOException ex) {
+                error = ex;
+            }
+        }
+        accounts.clear();
+
+        if (error != null)
+            throw error;
+
+    }
+
+    protected AccountArchive getAccount(String accountId) throws IOException {
+
+        if (closed)
+            throw new IllegalStateException("Archive is closed");
+
+        try {
+            return accounts.computeIfAbsent(accountId, id -> {
+                try {
+                    return AccountArchive.open(this.getAccountDirectory(id), segmentSize);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            });
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+
+    }
+
+    // Folder name is the hash of the account id: safe for file names and unique per account
+    protected Path getAccountDirectory(String accountId) {
+
+        byte[] digest = null;
+
+        try {
+            digest = MessageDigest.getInstance("SHA-256").digest(accountId.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException ex) {
+            // Required algorithm of every Java platform
+            throw new IllegalStateException(ex);
+        }
+
+        return directory.resolve(String.format("%064x", new BigInteger(1, digest)));
+
+    }
+
+    // Failed commits are retried with the next one (data stays marked as not synced)
+    protected void commitQuietly() {
+        for (AccountArchive account : accounts.values()) {
+            try {
+                account.commit();
+            } catch (IOException ex) {
+                // Retry at next commit
+            }
+        }
+    }
+
+}
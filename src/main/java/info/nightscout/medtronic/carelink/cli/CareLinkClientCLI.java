@@ -1,15 +1,30 @@
 package info.nightscout.medtronic.carelink.cli;
 
-import com.google.gson.GsonBuilder;
+import info.nightscout.medtronic.carelink.archive.CareLinkArchive;
+import info.nightscout.medtronic.carelink.client.AdaptivePollScheduler;
+import info.nightscout.medtronic.carelink.client.CareLinkBackfill;
 import info.nightscout.medtronic.carelink.client.CareLinkClient;
+import info.nightscout.medtronic.carelink.client.CareLinkResult;
+import info.nightscout.medtronic.carelink.client.FileBackfillCheckpointStore;
+import info.nightscout.medtronic.carelink.client.FileCareLinkSessionStore;
+import info.nightscout.medtronic.carelink.client.RetryPolicy;
+import info.nightscout.medtronic.carelink.json.CareLinkGson;
 import info.nightscout.medtronic.carelink.message.*;
+import info.nightscout.medtronic.carelink.metrics.CareLinkMetrics;
+import info.nightscout.medtronic.carelink.metrics.PrometheusHttpServer;
+import info.nightscout.medtronic.carelink.nightscout.NightscoutTarget;
+import info.nightscout.medtronic.carelink.nightscout.NightscoutUploader;
+import okhttp3.OkHttpClient;
 import org.apache.commons.cli.*;
 
 
 import java.io.FileWriter;
+import java.net.InetSocketAddress;
 import java.nio.file.Paths;
 import java.text.SimpleDateFormat;
+import java.time.LocalDate;
 import java.util.Calendar;
+import java.util.concurrent.TimeUnit;
 
 public class CareLinkClientCLI {
 
@@ -24,6 +39,14 @@ public class CareLinkClientCLI {
     private static final String OPTION_ANONYM = "a";
     private static final String OPTION_VERBOSE = "v";
     private static final String OPTION_JSON_EXCEPTION = "j";
+    private static final String OPTION_SESSION_STORE = "k";
+    private static final String OPTION_ARCHIVE = "x";
+    private static final String OPTION_DAEMON = "m";
+    private static final String OPTION_METRICS = "e";
+    private static final String OPTION_METRICS_HOST = "l";
+    private static final String OPTION_NIGHTSCOUT = "n";
+    private static final String OPTION_API_SECRET = "i";
+    private static final String OPTION_BACKFILL = "b";
 
 
     private static Options generateOptions() {
@@ -129,6 +152,78 @@ public class CareLinkClientCLI {
                         .desc("Dump response for data Json exception.")
                         .build());
 
+        //k - Session store
+        options.addOption(
+                Option.builder(OPTION_SESSION_STORE)
+                        .required(false)
+                        .longOpt("sessionstore")
+                        .hasArg(true)
+                        .desc("Folder for keeping the login session between runs.")
+                        .build());
+
+        //x - Archive
+        options.addOption(
+                Option.builder(OPTION_ARCHIVE)
+                        .required(false)
+                        .longOpt("archive")
+                        .hasArg(true)
+                        .desc("Archive folder, only new recent data items are appended (instead of data files).")
+                        .build());
+
+        //m - Daemon mode
+        options.addOption(
+                Option.builder(OPTION_DAEMON)
+                        .required(false)
+                        .longOpt("daemon")
+                        .hasArg(false)
+                        .desc("Daemon mode: download recent data until stopped, timed to the uploads of the device (repeat and wait are ignored).")
+                        .build());
+
+        //e - Metrics
+        options.addOption(
+                Option.builder(OPTION_METRICS)
+                        .required(false)
+                        .longOpt("metrics")
+                        .hasArg(true)
+                        .desc("Port of the Prometheus metrics endpoint (http://localhost:port/metrics), metrics are also available in JMX.")
+                        .build());
+
+        //l - Metrics host
+        options.addOption(
+                Option.builder(OPTION_METRICS_HOST)
+                        .required(false)
+                        .longOpt("metricshost")
+                        .hasArg(true)
+                        .desc("Address the Prometheus metrics endpoint listens on (default: localhost only, 0.0.0.0: all interfaces).")
+                        .build());
+
+        //n - Nightscout
+        options.addOption(
+                Option.builder(OPTION_NIGHTSCOUT)
+                        .required(false)
+                        .longOpt("nightscout")
+                        .hasArg(true)
+                        .desc("URL of the Nightscout site, new recent data items are uploaded to it.")
+                        .build());
+
+        //i - Nightscout API secret
+        options.addOption(
+                Option.builder(OPTION_API_SECRET)
+                        .required(false)
+                        .longOpt("apisecret")
+                        .hasArg(true)
+                        .desc("API secret of the Nightscout site.")
+                        .build());
+
+        //b - Backfill
+        options.addOption(
+                Option.builder(OPTION_BACKFILL)
+                        .required(false)
+                        .longOpt("backfill")
+                        .hasArg(true)
+                        .desc("Download the history of the given number of days (one file per date range), already downloaded ranges are skipped.")
+                        .build());
+
         return options;
 
     }
@@ -145,6 +240,13 @@ public class CareLinkClientCLI {
         boolean verbose;
         boolean anonymize;
         boolean dumpJsonException;
+        String sessionStoreFolder;
+        String archiveFolder;
+        boolean daemon;
+        Integer metricsPort;
+        String metricsHost;
+        NightscoutTarget nightscout;
+        int backfillDays;
 
 
         Options options = generateOptions();
@@ -168,6 +270,13 @@ public class CareLinkClientCLI {
                 folder = (cmd.hasOption(OPTION_OUTPUT)) ? cmd.getOptionValue(OPTION_OUTPUT) : null;
                 repeat = (cmd.hasOption(OPTION_REPEAT)) ? Integer.parseInt(cmd.getOptionValue(OPTION_REPEAT)) : 1;
                 wait = (cmd.hasOption(OPTION_WAIT)) ? Integer.parseInt(cmd.getOptionValue(OPTION_WAIT)) : 1;
+                sessionStoreFolder = (cmd.hasOption(OPTION_SESSION_STORE)) ? cmd.getOptionValue(OPTION_SESSION_STORE) : null;
+                archiveFolder = (cmd.hasOption(OPTION_ARCHIVE)) ? cmd.getOptionValue(OPTION_ARCHIVE) : null;
+                daemon = cmd.hasOption(OPTION_DAEMON);
+                metricsPort = (cmd.hasOption(OPTION_METRICS)) ? Integer.valueOf(cmd.getOptionValue(OPTION_METRICS)) : null;
+                metricsHost = (cmd.hasOption(OPTION_METRICS_HOST)) ? cmd.getOptionValue(OPTION_METRICS_HOST) : null;
+                nightscout = (cmd.hasOption(OPTION_NIGHTSCOUT)) ? new NightscoutTarget(cmd.getOptionValue(OPTION_NIGHTSCOUT), cmd.getOptionValue(OPTION_API_SECRET, "")) : null;
+                backfillDays = (cmd.hasOption(OPTION_BACKFILL)) ? Integer.parseInt(cmd.getOptionValue(OPTION_BACKFILL)) : 0;
                 //Execute client
                 callCareLinkClient(
                         verbose,
@@ -176,7 +285,14 @@ public class CareLinkClientCLI {
                         anonymize,
                         folder,
                         repeat, wait,
-                        dumpJsonException);
+                        dumpJsonException,
+                        sessionStoreFolder,
+                        archiveFolder,
+                        daemon,
+                        metricsPort,
+                        metricsHost,
+                        nightscout,
+                        backfillDays);
             } catch (MissingOptionException| UnrecognizedOptionException  exOption) {
                 System.out.println(exOption.getMessage());
                 System.out.println("Run without options to get usage info!");
@@ -188,69 +304,215 @@ public class CareLinkClientCLI {
 
     }
 
-    private static void callCareLinkClient(boolean verbose, String username, String password, String country, Boolean downloadSessionInfo, Boolean downloadData, boolean anonymize, String folder, int repeat, int wait, boolean dumpJsonException){
+    private static void callCareLinkClient(boolean verbose, String username, String password, String country, Boolean downloadSessionInfo, Boolean downloadData, boolean anonymize, String folder, int repeat, int wait, boolean dumpJsonException, String sessionStoreFolder, String archiveFolder, boolean daemon, Integer metricsPort, String metricsHost, NightscoutTarget nightscout, int backfillDays){
 
         CareLinkClient client = null;
-        RecentData recentData = null;
+        CareLinkArchive archive = null;
+        CareLinkMetrics metrics = null;
+        PrometheusHttpServer metricsServer = null;
+        NightscoutUploader uploader = null;
+        RetryPolicy retryPolicy = null;
 
         client = new CareLinkClient(username, password, country);
+        client.setCaptureResponseBody(dumpJsonException);
+        //Unchanged data is not archived or uploaded again
+        client.setSkipUnchangedRecentData(true);
+        //Backoff retries of failed calls, new login after 401
+        retryPolicy = new RetryPolicy();
+        //Display message POST (BLE devices) only reads data, it can be repeated
+        retryPolicy.setSafeToRetry(request -> request.url().encodedPath().endsWith("/display/message"));
+        client.setRetryPolicy(retryPolicy);
+        if(sessionStoreFolder != null)
+            client.setSessionStore(new FileCareLinkSessionStore(sessionStoreFolder));
         if(verbose)printLog("Client created!");
+        if(metricsPort != null) {
+            metrics = new CareLinkMetrics();
+            client.setMetrics(metrics);
+            try {
+                metrics.registerMBeans();
+                if(metricsHost == null)
+                    metricsServer = new PrometheusHttpServer(metrics, metricsPort);
+                else
+                    metricsServer = new PrometheusHttpServer(metrics, new InetSocketAddress(metricsHost, metricsPort));
+                if(verbose)printLog("Metrics available on " + metricsServer.getAddress() + "!");
+            } catch (Exception ex) {
+                printLog("Error during start of metrics. Details: " + ex.getClass().getName() + " - " + ex.getMessage());
+            }
+        }
+        if(archiveFolder != null)
+            archive = new CareLinkArchive(archiveFolder);
+        if(nightscout != null)
+            uploader = new NightscoutUploader(new OkHttpClient());
 
         if(client.login()) {
 
-            for(int i = 0; i < repeat; i++) {
-                if (verbose) printLog("Starting download, count:  " + String.valueOf(i + 1));
-                //Session info is requested
-                if (downloadSessionInfo) {
-                    writeJson(client.getSessionUser(), folder, "user", anonymize, verbose);
-                    writeJson(client.getSessionProfile(), folder, "profile", anonymize, verbose);
-                    writeJson(client.getSessionCountrySettings(), folder, "country", anonymize, verbose);
-                    writeJson(client.getSessionMonitorData(), folder, "monitor", anonymize, verbose);
-                }
-                //Recent data is requested
-                if(downloadData) {
+            if(backfillDays > 0) {
+                backfill(client, backfillDays, folder, sessionStoreFolder, anonymize, verbose);
+            }
+            if(daemon) {
+                runDaemon(client, verbose, username, country, downloadSessionInfo, downloadData, anonymize, folder, dumpJsonException, archive, uploader, nightscout);
+            } else {
+                for (int i = 0; i < repeat; i++) {
+                    if (verbose) printLog("Starting download, count:  " + String.valueOf(i + 1));
+                    //Session info is requested
+                    if (downloadSessionInfo) {
+                        downloadSessionInfo(client, folder, anonymize, verbose);
+                    }
+                    //Recent data is requested
+                    if (downloadData) {
+                        downloadRecentData(client, username, country, anonymize, folder, dumpJsonException, archive, uploader, nightscout, verbose);
+                    }
                     try {
-                        for(int j = 0; j < 2; j++) {
-                            recentData = client.getRecentData();
-                            //Auth error
-                            if(client.getLastResponseCode() == 401) {
-                                printLog("GetRecentData login error (response code 401). Trying again in 1 sec!");
-                                Thread.sleep(1000);
-                            }
-                            //Get success
-                            else if(client.getLastResponseCode() == 200) {
-                                //Data OK
-                                if(client.getLastDataSuccess()) {
-                                    writeJson(recentData, folder, "data", anonymize, verbose);
-                                //Data error
-                                } else {
-                                    printLog("Data exception: " + (client.getLastErrorMessage() == null ? "no details available" : client.getLastErrorMessage()));
-                                    if(dumpJsonException){
-                                        writeFile(client.getLastResponseBody(), folder, "dataex", verbose);
-                                    }
-                                }
-                                //STOP!!!
-                                break;
-                            } else  {
-                                printLog("Error, response code: " + String.valueOf(client.getLastResponseCode()) + " Trying again in 1 sec!");
-                                Thread.sleep(1000);
-                            }
+                        if (i < repeat - 1) {
+                            if (verbose) printLog("Waiting " + String.valueOf(wait) + " minutes before next download!");
+                            Thread.sleep(wait * 60000);
                         }
-                    } catch (Exception ex) {
-                        System.out.println(ex.getMessage());
-                    }
+                    } catch (Exception ex) { }
                 }
-                try {
-                    if(i < repeat - 1) {
-                        if (verbose) printLog("Waiting " + String.valueOf(wait) + " minutes before next download!");
-                        Thread.sleep(wait * 60000);
-                    }
-                } catch (Exception ex){ }
             }
         } else {
             printLog("Client login error! Response code: " + String.valueOf(client.getLastResponseCode()) + " Error message: " + client.getLastErrorMessage());
         }
 
+        if(archive != null) {
+            try {
+                archive.close();
+            } catch (Exception ex) {
+                printLog("Error during close of archive. Details: " + ex.getClass().getName() + " - " + ex.getMessage());
+            }
+        }
+        if(uploader != null)
+            uploader.close();
+        if(metricsServer != null)
+            metricsServer.close();
+
+
+    }
+
+    //Download until stopped: next download is scheduled just after the next expected upload of the device
+    private static void runDaemon(CareLinkClient client, boolean verbose, String username, String country, Boolean downloadSessionInfo, Boolean downloadData, boolean anonymize, String folder, boolean dumpJsonException, CareLinkArchive archive, NightscoutUploader uploader, NightscoutTarget nightscout){
+
+        AdaptivePollScheduler scheduler = new AdaptivePollScheduler();
+        CareLinkResult<RecentData> result = null;
+        RecentData recentData = null;
+        long delay;
+
+        if (verbose) printLog("Starting daemon mode!");
+        if (downloadSessionInfo) {
+            downloadSessionInfo(client, folder, anonymize, verbose);
+        }
+        if (!downloadData)
+            return;
+
+        //Archive is flushed and queued uploads are finished when the daemon is stopped
+        if (archive != null || uploader != null) {
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    if (archive != null)
+                        archive.close();
+                } catch (Exception ex) { }
+                if (uploader != null)
+                    uploader.close();
+            }));
+        }
+
+        while (true) {
+            result = downloadRecentData(client, username, country, anonymize, folder, dumpJsonException, archive, uploader, nightscout, verbose);
+            //Previous data is still current after an error
+            if (result != null && result.getData() != null)
+                recentData = result.getData();
+            if (result != null && recentData != null)
+                delay = scheduler.nextDelayMillis(recentData, result.isNotModified(), System.currentTimeMillis());
+            else
+                delay = scheduler.nextDelayAfterErrorMillis();
+            if (verbose) printLog("Waiting " + String.valueOf(delay / 1000) + " seconds before next download!");
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException ex) {
+                return;
+            }
+        }
+
+    }
+
+    //History in date range chunks, checkpoints are kept in the session store folder (or the output folder)
+    private static void backfill(CareLinkClient client, int days, String folder, String sessionStoreFolder, boolean anonymize, boolean verbose){
+
+        CareLinkBackfill backfill = null;
+        CareLinkBackfill.Summary summary = null;
+
+        if (verbose) printLog("Starting backfill of " + days + " days!");
+        backfill = new CareLinkBackfill(client);
+        backfill.setCheckpointStore(new FileBackfillCheckpointStore(sessionStoreFolder != null ? sessionStoreFolder : (folder != null ? folder : ".")));
+        summary = backfill.run(LocalDate.now().minusDays(days - 1), LocalDate.now(), new CareLinkBackfill.Listener() {
+            @Override
+            public void onChunk(LocalDate start, LocalDate end, RecentData data) {
+                writeJson(data, folder, "history-" + start + "_" + end, anonymize, verbose);
+            }
+
+            @Override
+            public void onChunkError(LocalDate start, LocalDate end, int responseCode, String errorMessage) {
+                printLog("Backfill error " + start + " - " + end + ", response code: " + responseCode
+                        + (errorMessage == null ? "" : " Error message: " + errorMessage));
+            }
+        });
+        printLog("Backfill " + (summary.isComplete() ? "complete" : "incomplete, run again to download the failed ranges") + "! Days with data: "
+                + summary.daysWithData + ", already downloaded: " + summary.daysSkipped + ", ranges downloaded: " + summary.fetchedChunks
+                + ", failed: " + summary.failedChunks.size() + ", seconds: " + summary.elapsedMillis / 1000);
+
+    }
+
+    private static void downloadSessionInfo(CareLinkClient client, String folder, boolean anonymize, boolean verbose){
+        writeJson(client.getSessionUser(), folder, "user", anonymize, verbose);
+        writeJson(client.getSessionProfile(), folder, "profile", anonymize, verbose);
+        writeJson(client.getSessionCountrySettings(), folder, "country", anonymize, verbose);
+        writeJson(client.getSessionMonitorData(), folder, "monitor", anonymize, verbose);
+    }
+
+    //Returns the result of the download, null in case of error
+    private static CareLinkResult<RecentData> downloadRecentData(CareLinkClient client, String username, String country, boolean anonymize, String folder, boolean dumpJsonException, CareLinkArchive archive, NightscoutUploader uploader, NightscoutTarget nightscout, boolean verbose){
+
+        CareLinkResult<RecentData> result = null;
+        RecentData recentData = null;
+
+        //Retries (backoff, new login after 401) are done by the client according to its retry policy
+        try {
+            result = client.getRecentDataResult();
+            recentData = result.getData();
+            //Get success (304: same data as before)
+            if(result.getResponseCode() == 200 || result.getResponseCode() == 304) {
+                //Data OK
+                if(result.isSuccess()) {
+                    if(archive != null) {
+                        //Nothing new to archive
+                        if(result.isNotModified()) {
+                            if (verbose) printLog("Data not modified!");
+                        } else {
+                            archiveData(archive, country + "_" + username, recentData, verbose);
+                        }
+                    } else if(recentData != null) {
+                        writeJson(recentData, folder, "data", anonymize, verbose);
+                    }
+                    if(uploader != null && !result.isNotModified()) {
+                        uploadData(uploader, nightscout, recentData, verbose);
+                    }
+                    return result;
+                //Data error
+                } else {
+                    printLog("Data exception: " + (result.getErrorMessage() == null ? "no details available" : result.getErrorMessage()));
+                    if(dumpJsonException){
+                        writeFile(result.getResponseBody(), folder, "dataex", verbose);
+                    }
+                }
+            } else {
+                printLog("GetRecentData error, response code: " + String.valueOf(result.getResponseCode())
+                        + (result.getErrorMessage() == null ? "" : " Error message: " + result.getErrorMessage()));
+            }
+        } catch (Exception ex) {
+            System.out.println(ex.getMessage());
+        }
+
+        return null;
 
     }
 
@@ -265,7 +527,7 @@ public class CareLinkClientCLI {
 
         //Convert JSON to string and write to file
         try {
-            content = new GsonBuilder().setDateFormat("yyyy-MM-dd'T'HH:mm:ssXXX").setPrettyPrinting().create().toJson(object);
+            content = CareLinkGson.getPrettyGson().toJson(object);
             writeFile(content, folder, name, verbose);
         } catch (Exception ex) {
             printLog("Error during save of " + name + " . Details: " + ex.getClass().getName() + " - " + ex.getMessage());
@@ -274,6 +536,35 @@ public class CareLinkClientCLI {
     }
 
 
+    protected static void archiveData(CareLinkArchive archive, String accountId, RecentData recentData, boolean verbose){
+
+        RecentDataDelta delta;
+
+        try {
+            delta = archive.append(accountId, recentData);
+            if (verbose) printLog("Data archived! New SGs: " + delta.sgs.size() + ", markers: " + delta.markers.size()
+                    + ", notifications: " + (delta.activeNotifications.size() + delta.clearedNotifications.size()));
+        } catch (Exception ex) {
+            printLog("Error during archive of data. Details: " + ex.getClass().getName() + " - " + ex.getMessage());
+        }
+
+    }
+
+
+    protected static void uploadData(NightscoutUploader uploader, NightscoutTarget nightscout, RecentData recentData, boolean verbose){
+
+        int queued;
+
+        try {
+            queued = uploader.submit(nightscout, recentData, 1, TimeUnit.MINUTES);
+            if (verbose) printLog("Data queued for Nightscout upload! Documents: " + queued);
+        } catch (Exception ex) {
+            printLog("Error during upload of data. Details: " + ex.getClass().getName() + " - " + ex.getMessage());
+        }
+
+    }
+
+
     protected static void writeFile(String content, String folder, String name, boolean verbose){
 
         FileWriter writer = null;
@@ -0,0 +1,96 @@
+package info.nightscout.medtronic.carelink.client;
+
+import info.nightscout.medtronic.carelink.message.RecentData;
+
+import java.util.concurrent.TimeUnit;
+
+// Next poll time predicted from the 5 minutes upload cycle of the device instead of a fixed wait
+public class AdaptivePollScheduler {
+
+    public static final long UPLOAD_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    // Time needed by CareLink to make an upload available
+    public static final long UPLOAD_DELAY_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    // Retry interval while the expected upload is late
+    public static final long LATE_RETRY_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    // Upload missing for this many cycles: device is not uploading, poll less frequently
+    public static final int STALE_CYCLES = 2;
+    public static final long MIN_DELAY_MILLIS = TimeUnit.SECONDS.toMillis(15);
+    public static final long MAX_DELAY_MILLIS = TimeUnit.MINUTES.toMillis(30);
+    public static final long ERROR_DELAY_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    protected int outOfRangeCount = 0;
+    protected int errorCount = 0;
+    // Server clock - local clock, known after the first response
+    protected long serverClockOffset = 0;
+
+    // Delay of next poll after a successful poll, now is the local time when the response was received
+    public long nextDelayMillis(RecentData recentData, long now) {
+        return this.nextDelayMillis(recentData, false, now);
+    }
+
+    // Not modified: recentData is the same response as before (CareLinkResult.isNotModified())
+    public long nextDelayMillis(RecentData recentData, boolean notModified, long now) {
+
+        long serverNow;
+        long lastUpload;
+        long expectedUpload;
+        long delay;
+
+        errorCount = 0;
+
+        // Device is out of range of the phone / pump: no uploads are expected soon, back off
+        if (Boolean.FALSE.equals(recentData.conduitInRange) || Boolean.FALSE.equals(recentData.conduitMedicalDeviceInRange)) {
+            outOfRangeCount++;
+            return backoff(UPLOAD_INTERVAL_MILLIS, outOfRangeCount);
+        }
+        outOfRangeCount = 0;
+
+        lastUpload = getLastUploadTime(recentData);
+        if (lastUpload <= 0)
+            return UPLOAD_INTERVAL_MILLIS;
+
+        // Server times are compared to the server clock (local clock may be off)
+        // Not modified data is a previous response, its server time is outdated
+        if (recentData.currentServerTime > 0 && !notModified)
+            serverClockOffset = recentData.currentServerTime - now;
+        serverNow = now + serverClockOffset;
+        expectedUpload = lastUpload + UPLOAD_INTERVAL_MILLIS;
+
+        if (serverNow < expectedUpload + UPLOAD_DELAY_MILLIS) {
+            // Just after the next upload
+            delay = expectedUpload + UPLOAD_DELAY_MILLIS - serverNow;
+        } else if ((serverNow - expectedUpload) / UPLOAD_INTERVAL_MILLIS < STALE_CYCLES) {
+            // Upload is late
+            delay = LATE_RETRY_MILLIS;
+        } else {
+            // Uploads stopped, the longer the gap the less frequent the polls
+            delay = Math.min(Math.max(UPLOAD_INTERVAL_MILLIS, (serverNow - lastUpload) / 4), MAX_DELAY_MILLIS);
+        }
+
+        return Math.max(delay, MIN_DELAY_MILLIS);
+
+    }
+
+    // Delay of next poll after a failed poll
+    public long nextDelayAfterErrorMillis() {
+        errorCount++;
+        return backoff(ERROR_DELAY_MILLIS, errorCount);
+    }
+
+    // Latest upload known by the server, sensor time if no server time is available
+    protected static long getLastUploadTime(RecentData recentData) {
+
+        long lastUpload = Math.max(recentData.lastMedicalDeviceDataUpdateServerTime, recentData.lastConduitUpdateServerTime);
+
+        if (lastUpload <= 0)
+            lastUpload = recentData.lastSensorTS;
+
+        return lastUpload;
+
+    }
+
+    protected static long backoff(long baseDelay, int count) {
+        return Math.min(baseDelay << Math.min(count - 1, 10), MAX_DELAY_MILLIS);
+    }
+
+}
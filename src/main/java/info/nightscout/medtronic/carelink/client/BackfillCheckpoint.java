@@ -0,0 +1,63 @@
+package info.nightscout.medtronic.carelink.client;
+
+import info.nightscout.medtronic.carelink.message.ReportTimelinesRange;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+// Date ranges of an account already fetched by a backfill (inclusive ISO dates)
+// Ranges are kept sorted and merged, a resumed backfill checks every day against a few ranges only
+public class BackfillCheckpoint {
+
+    public long savedAt;
+    public List<ReportTimelinesRange> fetched = new ArrayList<>();
+
+    public synchronized boolean contains(LocalDate day) {
+
+        String date = day.toString();
+
+        // ISO dates compare like the days
+        for (ReportTimelinesRange range : fetched) {
+            if (range.start != null && range.end != null && range.start.compareTo(date) <= 0 && range.end.compareTo(date) >= 0)
+                return true;
+        }
+
+        return false;
+
+    }
+
+    // Overlapping and adjacent ranges become one (also the unmerged ranges of an older checkpoint)
+    public synchronized void add(LocalDate start, LocalDate end) {
+
+        List<ReportTimelinesRange> ranges = new ArrayList<>(fetched);
+        List<ReportTimelinesRange> merged = new ArrayList<>();
+        ReportTimelinesRange last = null;
+
+        ranges.add(newRange(start.toString(), end.toString()));
+        ranges.removeIf(range -> range.start == null || range.end == null);
+        ranges.sort(Comparator.comparing((ReportTimelinesRange range) -> range.start));
+
+        for (ReportTimelinesRange range : ranges) {
+            if (last != null && range.start.compareTo(LocalDate.parse(last.end).plusDays(1).toString()) <= 0) {
+                if (range.end.compareTo(last.end) > 0)
+                    last.end = range.end;
+            } else {
+                last = newRange(range.start, range.end);
+                merged.add(last);
+            }
+        }
+
+        fetched = merged;
+
+    }
+
+    protected static ReportTimelinesRange newRange(String start, String end) {
+        ReportTimelinesRange range = new ReportTimelinesRange();
+        range.start = start;
+        range.end = end;
+        return range;
+    }
+
+}
@@ -0,0 +1,13 @@
+package info.nightscout.medtronic.carelink.client;
+
+// Storage of backfill checkpoints between runs (a restarted backfill skips the fetched ranges)
+public interface BackfillCheckpointStore {
+
+    // Stored checkpoint of the key or null
+    BackfillCheckpoint load(String key);
+
+    void save(String key, BackfillCheckpoint checkpoint);
+
+    void delete(String key);
+
+}
@@ -0,0 +1,299 @@
+package info.nightscout.medtronic.carelink.client;
+
+import info.nightscout.medtronic.carelink.message.RecentData;
+import info.nightscout.medtronic.carelink.message.ReportDataProvider;
+import info.nightscout.medtronic.carelink.message.ReportSnapshotTimelinesForCalendar;
+import info.nightscout.medtronic.carelink.message.ReportTimelinesRange;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.Function;
+
+// History backfill of an account through the report endpoints
+// Days with data are discovered with the report calendar, then fetched in date range chunks, a few chunks in parallel
+// (async calls of the same client). Fetched chunks are checkpointed, a restarted backfill only fetches the missing days.
+// The most recent days can still get uploads, they are not checkpointed and are fetched again by every run.
+//
+//   CareLinkBackfill backfill = new CareLinkBackfill(client);
+//   backfill.setCheckpointStore(new FileBackfillCheckpointStore("checkpoints"));
+//   backfill.run(LocalDate.now().minusMonths(6), LocalDate.now(), (start, end, data) -> store(data));
+public class CareLinkBackfill {
+
+    public static final int DEFAULT_CHUNK_DAYS = 7;
+    public static final int DEFAULT_MAX_CONCURRENCY = 4;
+    // Today and yesterday are not checkpointed (the local date may be a day ahead of the device)
+    public static final int DEFAULT_SETTLE_DAYS = 2;
+    // Calendar days per discovery call
+    public static final int DISCOVERY_WINDOW_DAYS = 31;
+
+    public interface Listener {
+        // Called on the OkHttp threads, chunks of the account arrive concurrently and not in date order
+        // An exception marks the chunk as failed (not checkpointed)
+        void onChunk(LocalDate start, LocalDate end, RecentData data);
+        default void onChunkError(LocalDate start, LocalDate end, int responseCode, String errorMessage) { }
+    }
+
+    // Date range, both ends included
+    public static class Chunk {
+
+        public final LocalDate start;
+        public final LocalDate end;
+
+        public Chunk(LocalDate start, LocalDate end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public String toString() {
+            return start + ".." + end;
+        }
+
+    }
+
+    public static class Summary {
+
+        public int daysWithData;
+        // Already fetched by a previous run
+        public int daysSkipped;
+        public int chunks;
+        public int fetchedChunks;
+        public final List<Chunk> failedChunks = new ArrayList<>();
+        // Calendar windows which could not be read, all of their days were fetched
+        public int discoveryErrors;
+        public long elapsedMillis;
+
+        public synchronized boolean isComplete() {
+            return failedChunks.isEmpty();
+        }
+
+    }
+
+    protected final CareLinkClient client;
+    protected int chunkDays = DEFAULT_CHUNK_DAYS;
+    protected int maxConcurrency = DEFAULT_MAX_CONCURRENCY;
+    protected int settleDays = DEFAULT_SETTLE_DAYS;
+    protected BackfillCheckpointStore checkpointStore;
+
+    public CareLinkBackfill(CareLinkClient client) {
+        this.client = client;
+    }
+
+    // Calendar days per report data call
+    public void setChunkDays(int chunkDays) {
+        this.chunkDays = Math.max(1, chunkDays);
+    }
+
+    // Concurrent calls of the backfill, the dispatcher of the client limits all calls of the transport
+    public void setMaxConcurrency(int maxConcurrency) {
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+    }
+
+    // Days of the last settleDays days (today included) are fetched, but not checkpointed, 0: all days are checkpointed
+    public void setSettleDays(int settleDays) {
+        this.settleDays = Math.max(0, settleDays);
+    }
+
+    // Null: no checkpoints, every run fetches the whole range
+    public void setCheckpointStore(BackfillCheckpointStore checkpointStore) {
+        this.checkpointStore = checkpointStore;
+    }
+
+    public Summary run(LocalDate from, LocalDate to, Listener listener) {
+        return this.runAsync(from, to, listener).join();
+    }
+
+    public CompletableFuture<Summary> runAsync(LocalDate from, LocalDate to, Listener listener) {
+
+        Summary summary = new Summary();
+        BackfillCheckpoint checkpoint = this.loadCheckpoint();
+        long start = System.currentTimeMillis();
+
+        return this.discoverDays(from, to, summary).thenCompose(days -> {
+
+            List<Chunk> chunks = null;
+
+            summary.daysWithData = days.size();
+            // Days of the checkpoint are not fetched again
+            days.removeIf(checkpoint::contains);
+            summary.daysSkipped = summary.daysWithData - days.size();
+            chunks = buildChunks(days, chunkDays);
+            summary.chunks = chunks.size();
+
+            return this.runBounded(chunks, chunk -> this.fetchChunk(chunk, checkpoint, summary, listener));
+
+        }).thenApply(ignored -> {
+            summary.elapsedMillis = System.currentTimeMillis() - start;
+            return summary;
+        });
+
+    }
+
+    // Days with data of any category, a window without calendar counts as all days with data
+    protected CompletableFuture<SortedSet<LocalDate>> discoverDays(LocalDate from, LocalDate to, Summary summary) {
+
+        SortedSet<LocalDate> days = new ConcurrentSkipListSet<>();
+        List<Chunk> windows = buildChunks(dayRange(from, to), DISCOVERY_WINDOW_DAYS);
+
+        return this.runBounded(windows, window -> client.getReportTimelinesResultAsync(window.start, window.end).thenAccept(result -> {
+            if (result.isSuccess() && result.getData() != null) {
+                addDays(days, result.getData(), window);
+            } else {
+                synchronized (summary) {
+                    summary.discoveryErrors++;
+                }
+                days.addAll(dayRange(window.start, window.end));
+            }
+        })).thenApply(ignored -> days);
+
+    }
+
+    protected CompletableFuture<Void> fetchChunk(Chunk chunk, BackfillCheckpoint checkpoint, Summary summary, Listener listener) {
+
+        return client.getReportDataResultAsync(chunk.start, chunk.end).thenAccept(result -> {
+            String errorMessage = result.getErrorMessage();
+            if (result.isSuccess()) {
+                try {
+                    listener.onChunk(chunk.start, chunk.end, result.getData());
+                    this.saveCheckpoint(checkpoint, chunk);
+                    synchronized (summary) {
+                        summary.fetchedChunks++;
+                    }
+                    return;
+                } catch (RuntimeException ex) {
+                    errorMessage = ex.getMessage();
+                }
+            }
+            synchronized (summary) {
+                summary.failedChunks.add(chunk);
+            }
+            listener.onChunkError(chunk.start, chunk.end, result.getResponseCode(), errorMessage);
+        });
+
+    }
+
+    // At most maxConcurrency tasks run at a time, each worker takes the next item when its task is done
+    protected <T> CompletableFuture<Void> runBounded(List<T> items, Function<T, CompletableFuture<Void>> task) {
+
+        Queue<T> queue = new ConcurrentLinkedQueue<>(items);
+        CompletableFuture<?>[] workers = new CompletableFuture<?>[Math.min(maxConcurrency, items.size())];
+
+        for (int i = 0; i < workers.length; i++)
+            workers[i] = this.runNext(queue, task);
+
+        return CompletableFuture.allOf(workers);
+
+    }
+
+    protected <T> CompletableFuture<Void> runNext(Queue<T> queue, Function<T, CompletableFuture<Void>> task) {
+
+        T item = queue.poll();
+
+        if (item == null)
+            return CompletableFuture.completedFuture(null);
+
+        // A failed task does not stop the worker
+        return task.apply(item).handle((ignored, ex) -> null).thenCompose(ignored -> this.runNext(queue, task));
+
+    }
+
+    protected BackfillCheckpoint loadCheckpoint() {
+        BackfillCheckpoint checkpoint = checkpointStore == null ? null : checkpointStore.load(client.getSessionKey());
+        return checkpoint == null || checkpoint.fetched == null ? new BackfillCheckpoint() : checkpoint;
+    }
+
+    // Only the settled days of the chunk are checkpointed, data may still be uploaded for the recent ones
+    protected void saveCheckpoint(BackfillCheckpoint checkpoint, Chunk chunk) {
+
+        LocalDate lastSettledDay = this.today().minusDays(settleDays);
+        LocalDate end = chunk.end.isAfter(lastSettledDay) ? lastSettledDay : chunk.end;
+
+        if (end.isBefore(chunk.start))
+            return;
+
+        synchronized (checkpoint) {
+            checkpoint.add(chunk.start, end);
+            checkpoint.savedAt = System.currentTimeMillis();
+            if (checkpointStore != null)
+                checkpointStore.save(client.getSessionKey(), checkpoint);
+        }
+
+    }
+
+    protected LocalDate today() {
+        return LocalDate.now();
+    }
+
+    // Consecutive days grouped into ranges of at most maxDays calendar days, gaps of more than a range split them
+    protected static List<Chunk> buildChunks(Collection<LocalDate> days, int maxDays) {
+
+        List<Chunk> chunks = new ArrayList<>();
+        LocalDate start = null;
+        LocalDate end = null;
+
+        for (LocalDate day : new TreeSet<>(days)) {
+            if (start != null && day.isAfter(start.plusDays(maxDays - 1))) {
+                chunks.add(new Chunk(start, end));
+                start = null;
+            }
+            if (start == null)
+                start = day;
+            end = day;
+        }
+        if (start != null)
+            chunks.add(new Chunk(start, end));
+
+        return chunks;
+
+    }
+
+    protected static void addDays(Set<LocalDate> days, ReportSnapshotTimelinesForCalendar calendar, Chunk window) {
+
+        LocalDate start = null;
+        LocalDate end = null;
+
+        if (calendar.dataProvider == null)
+            return;
+
+        for (ReportDataProvider provider : calendar.dataProvider) {
+            if (provider.segments == null)
+                continue;
+            for (ReportTimelinesRange segment : provider.segments) {
+                start = parseDay(segment.start);
+                end = parseDay(segment.end);
+                if (start == null || end == null)
+                    continue;
+                // Only the days of the window (segments may reach over its ends)
+                start = start.isBefore(window.start) ? window.start : start;
+                end = end.isAfter(window.end) ? window.end : end;
+                days.addAll(dayRange(start, end));
+            }
+        }
+
+    }
+
+    protected static List<LocalDate> dayRange(LocalDate start, LocalDate end) {
+
+        List<LocalDate> days = new ArrayList<>();
+
+        for (LocalDate day = start; !day.isAfter(end); day = day.plusDays(1))
+            days.add(day);
+
+        return days;
+
+    }
+
+    // Date part of an ISO date or date time, null if there is none
+    protected static LocalDate parseDay(String value) {
+        try {
+            return value == null || value.length() < 10 ? null : LocalDate.parse(value.substring(0, 10));
+        } catch (DateTimeParseException ex) {
+            return null;
+        }
+    }
+
+}
@@ -1,14 +1,23 @@
 package info.nightscout.medtronic.carelink.client;
 
 import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 import com.google.gson.JsonObject;
+import info.nightscout.medtronic.carelink.json.CareLinkGson;
 import info.nightscout.medtronic.carelink.message.*;
+import info.nightscout.medtronic.carelink.metrics.CareLinkMetrics;
 import okhttp3.*;
+import okio.Buffer;
+import okio.ByteString;
 
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
 import java.util.*;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -16,11 +25,24 @@ public class CareLinkClient {
 
     protected static final String CARELINK_CONNECT_SERVER_EU = "carelink.minimed.eu";
     protected static final String CARELINK_CONNECT_SERVER_US = "carelink.minimed.com";
+    protected static final String CARELINK_LOGIN_SERVER = "mdtlogin.medtronic.com";
     protected static final String CARELINK_LANGUAGE_EN = "en";
     protected static final String CARELINK_LOCALE_EN = "en";
     protected static final String CARELINK_AUTH_TOKEN_COOKIE_NAME = "auth_tmp_token";
     protected static final String CARELINK_TOKEN_VALIDTO_COOKIE_NAME = "c_token_valid_to";
     protected static final int AUTH_EXPIRE_DEADLINE_MINUTES = 1;
+    protected static final int AUTH_REFRESH_RETRY_MINUTES = 1;
+    protected static final String API_PATH_MY_USER = "patient/users/me";
+    protected static final String API_PATH_MY_PROFILE = "patient/users/me/profile";
+    protected static final String API_PATH_MONITOR_DATA = "patient/monitor/data";
+    protected static final String API_PATH_COUNTRY_SETTINGS = "patient/countries/settings";
+    protected static final String API_PATH_CONNECT_DATA = "patient/connect/data";
+    protected static final String API_PATH_RECENT_UPLOADS = "patient/dataUpload/recentUploads";
+    protected static final String API_PATH_REPORTS = "patient/reports/";
+    protected static final String API_PATH_REPORT_CALENDAR = API_PATH_REPORTS + "snapshotTimelinesForCalendar";
+    protected static final String API_PATH_REPORT_DATA = API_PATH_REPORTS + "data";
+    protected static final int DEFAULT_MAX_IDLE_CONNECTIONS = 5;
+    protected static final int DEFAULT_KEEP_ALIVE_MINUTES = 10;
 
     //Authentication data
     protected String carelinkUsername;
@@ -28,73 +50,192 @@ public class CareLinkClient {
     protected String carelinkCountry;
 
     //Session info
-    protected boolean loggedIn;
+    protected volatile boolean loggedIn;
     public boolean isLoggedIn(){
         return loggedIn;
     }
-    protected User sessionUser;
+    protected volatile User sessionUser;
     public User getSessionUser() {
-        return getClone(sessionUser, User.class);
+        User user = this.sessionUser;
+        return user == null ? null : new User(user);
     }
-    protected Profile sessionProfile;
+    protected volatile Profile sessionProfile;
     public Profile getSessionProfile() {
-        return getClone(sessionProfile, Profile.class);
+        Profile profile = this.sessionProfile;
+        return profile == null ? null : new Profile(profile);
     }
-    protected CountrySettings sessionCountrySettings;
+    protected volatile CountrySettings sessionCountrySettings;
     public CountrySettings getSessionCountrySettings() {
-        return getClone(sessionCountrySettings, CountrySettings.class);
+        CountrySettings countrySettings = this.sessionCountrySettings;
+        return countrySettings == null ? null : new CountrySettings(countrySettings);
     }
-    protected MonitorData sessionMonitorData;
+    protected volatile MonitorData sessionMonitorData;
     public MonitorData getSessionMonitorData() {
-        return getClone(sessionMonitorData, MonitorData.class);
+        MonitorData monitorData = this.sessionMonitorData;
+        return monitorData == null ? null : new MonitorData(monitorData);
     }
 
+    // JSON round trip copy, session getters use the copy constructors instead (kept for comparison benchmarks)
     protected <T> T getClone(Object origObject, Class<T> origClass){
 
         Object clone = null;
 
         try{
-            clone = new GsonBuilder().create().fromJson(new GsonBuilder().create().toJson(origObject), origClass);
+            clone = CareLinkGson.getGson().fromJson(CareLinkGson.getGson().toJson(origObject), origClass);
         }catch (Exception ex){ }
 
         return clone == null ? null : origClass.cast(clone);
 
     }
 
+    //Already seen recent data items (delta polling)
+    protected final RecentDataWatermark recentDataWatermark = new RecentDataWatermark();
+    public RecentDataWatermark getRecentDataWatermark() {
+        return recentDataWatermark;
+    }
+
+    //Session persistence
+    protected CareLinkSessionStore sessionStore;
+    public void setSessionStore(CareLinkSessionStore sessionStore) {
+        this.sessionStore = sessionStore;
+        this.sessionRestoreAttempted = false;
+    }
+    // Stored session is read once per store, without a stored session (e.g. bad credentials) the store is not hit again
+    protected volatile boolean sessionRestoreAttempted;
+
+    //Token handling
+    protected static class TokenValidTo {
+        protected final String value;
+        protected final long millis;
+        protected TokenValidTo(String value, long millis) {
+            this.value = value;
+            this.millis = millis;
+        }
+    }
+    // Parsed c_token_valid_to, only parsed again if the cookie value changes
+    protected volatile TokenValidTo tokenValidTo;
+    // Running login, concurrent callers share it (single-flight)
+    protected final AtomicReference<CompletableFuture<CareLinkResult<Boolean>>> runningLogin = new AtomicReference<>();
+    // Background refresh
+    protected ScheduledExecutorService refreshScheduler;
+    protected long refreshLeadMillis;
+    protected ScheduledFuture<?> scheduledRefresh;
+
+    //Server overrides (e.g. local stand-in server for tests), only scheme, host and port are used
+    protected HttpUrl careLinkServerUrl;
+    protected HttpUrl loginServerUrl;
+    public void setServerUrls(String careLinkServerUrl, String loginServerUrl) {
+        this.careLinkServerUrl = careLinkServerUrl == null ? null : HttpUrl.get(careLinkServerUrl);
+        this.loginServerUrl = loginServerUrl == null ? null : HttpUrl.get(loginServerUrl);
+    }
+
     //Communication info
     protected OkHttpClient httpClient = null;
-    protected boolean loginInProcess = false;
-    protected String lastResponseBody;
-    protected void setLastResponseBody(Response response){
-        try{
-            this.lastResponseBody = response.body().string();
-        } catch (Exception ex){}
+    protected volatile boolean loginInProcess = false;
+    // Raw response body is only kept if requested (e.g. for dumping unparsable data)
+    protected boolean captureResponseBody = false;
+    public boolean isCaptureResponseBody() {
+        return captureResponseBody;
+    }
+    public void setCaptureResponseBody(boolean captureResponseBody) {
+        this.captureResponseBody = captureResponseBody;
+    }
+    // Sensor glucose readings of RecentData are kept in RecentData.sgSeries instead of RecentData.sgs
+    protected boolean compactSensorGlucose = false;
+    public boolean isCompactSensorGlucose() {
+        return compactSensorGlucose;
+    }
+    public void setCompactSensorGlucose(boolean compactSensorGlucose) {
+        this.compactSensorGlucose = compactSensorGlucose;
+    }
+    // Unchanged RecentData responses are reported by CareLinkResult.isNotModified(), off by default
+    protected boolean skipUnchangedRecentData = false;
+    public boolean isSkipUnchangedRecentData() {
+        return skipUnchangedRecentData;
+    }
+    public void setSkipUnchangedRecentData(boolean skipUnchangedRecentData) {
+        this.skipUnchangedRecentData = skipUnchangedRecentData;
+    }
+    // Last parsed RecentData with what is needed to recognize the same response again
+    protected static class RecentDataSnapshot {
+        protected final String endpoint;
+        protected final Gson gson;
+        protected final ByteString digest;
+        protected final String etag;
+        protected final String lastModified;
+        protected final RecentData data;
+        protected RecentDataSnapshot(String endpoint, Gson gson, ByteString digest, String etag, String lastModified, RecentData data) {
+            this.endpoint = endpoint;
+            this.gson = gson;
+            this.digest = digest;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.data = data;
+        }
+        protected boolean matches(String endpoint, Gson gson) {
+            return this.endpoint.equals(endpoint) && this.gson == gson;
+        }
+    }
+    protected volatile RecentDataSnapshot recentDataSnapshot;
+    // Thread safe counters and timings of the calls (the last* fields only show the last call)
+    protected volatile CareLinkMetrics metrics;
+    public CareLinkMetrics getMetrics() {
+        return metrics;
+    }
+    public void setMetrics(CareLinkMetrics metrics) {
+        this.metrics = metrics;
+        // Same cookie jar, dispatcher and connection pool, only the event listener changes
+        this.httpClient = this.httpClient.newBuilder()
+                .eventListenerFactory(metrics == null ? call -> okhttp3.EventListener.NONE : metrics.getEventListenerFactory())
+                .build();
+    }
+    // Retries of the data calls (backoff with jitter, per status code rules), single attempt unless a policy is set
+    protected volatile RetryPolicy retryPolicy = RetryPolicy.noRetry();
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy == null ? RetryPolicy.noRetry() : retryPolicy;
     }
-    protected void setLastResponseBody(String responseBody){
-            this.lastResponseBody = responseBody;
+    // Per host load shedding of all calls (login included), shared by all clients of the JVM by default, null: disabled
+    protected volatile CircuitBreaker circuitBreaker = CircuitBreaker.getDefault();
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
     }
+    public void setCircuitBreaker(CircuitBreaker circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+    }
+    // Timer of the async retry delays, the retried call itself runs on the OkHttp dispatcher
+    private static class RetryTimer {
+        private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "carelink-retry-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    // Token the server answered 401 to, a new login is needed even if it is not expired yet
+    protected volatile String rejectedAuthToken;
+    // Result of the last finished call of any thread (the *Result methods return the result of the call itself)
+    protected volatile CareLinkResult<?> lastResult = CareLinkResult.failure(0, null, null, null, 0);
+    protected volatile CareLinkResult<Boolean> lastLoginResult;
     public String getLastResponseBody(){
-        return lastResponseBody;
+        return lastResult.getResponseBody();
     }
-    protected int lastResponseCode;
     public int getLastResponseCode() {
-        return lastResponseCode;
+        return lastResult.getResponseCode();
     }
-    protected boolean lastLoginSuccess;
+    protected volatile boolean lastLoginSuccess;
     public boolean getLastLoginSuccess() {
         return lastLoginSuccess;
     }
-    protected boolean lastDataSuccess;
     public boolean getLastDataSuccess() {
-        return lastDataSuccess;
+        return lastResult.isSuccess();
     }
-    protected String lastErrorMessage;
     public String getLastErrorMessage() {
-        return lastErrorMessage;
+        return lastResult.getErrorMessage();
     }
-    protected String lastStackTraceString;
     public String getLastStackTraceString() {
-        return lastStackTraceString;
+        return lastResult.getStackTraceString();
     }
 
     protected enum RequestType {
@@ -111,28 +252,98 @@ public class CareLinkClient {
         // Create main http client with CookieJar
         this.httpClient = new OkHttpClient.Builder()
                 .cookieJar(new SimpleOkHttpCookieJar())
-                .connectionPool(new ConnectionPool(5, 10, TimeUnit.MINUTES))
+                .connectionPool(new ConnectionPool(DEFAULT_MAX_IDLE_CONNECTIONS, DEFAULT_KEEP_ALIVE_MINUTES, TimeUnit.MINUTES))
                 .build();
     }
 
+    public CareLinkClient(String carelinkUsername, String carelinkPassword, String carelinkCountry, OkHttpClient sharedHttpClient) {
+
+        this.carelinkUsername = carelinkUsername;
+        this.carelinkPassword = carelinkPassword;
+        this.carelinkCountry = carelinkCountry;
+
+        // Derive http client with own CookieJar (session), dispatcher and connection pool stay shared
+        this.httpClient = sharedHttpClient.newBuilder()
+                .cookieJar(new SimpleOkHttpCookieJar())
+                .build();
+    }
+
+    // Transport settings, shared OkHttpClient and client options in one place (see CareLinkClientBuilder)
+    public static CareLinkClientBuilder builder() {
+        return new CareLinkClientBuilder();
+    }
+
     /*
      *  WRAPPER DATA RETRIEVAL METHODS
      */
     public RecentData getRecentData() {
+        return this.getRecentDataResult().getData();
+    }
+
+    public CareLinkResult<RecentData> getRecentDataResult() {
 
         // Force login to get basic info
         if(getAuthorizationToken() != null) {
             if (CountryUtils.isUS(carelinkCountry) || sessionMonitorData.isBle())
-                return this.getConnectDisplayMessage(this.sessionProfile.username, this.sessionUser.getUserRole(),
+                return this.getConnectDisplayMessageResult(this.sessionProfile.username, this.sessionUser.getUserRole(),
                         sessionCountrySettings.blePereodicDataEndpoint);
             else
-                return this.getLast24Hours();
+                return this.getLast24HoursResult();
         }
         else {
-            return null;
+            return this.publish(this.loginFailed());
         }
 
+    }
 
+    public CompletableFuture<RecentData> getRecentDataAsync() {
+        return this.getRecentDataResultAsync().thenApply(CareLinkResult::getData);
+    }
+
+    public CompletableFuture<CareLinkResult<RecentData>> getRecentDataResultAsync() {
+
+        // Force login to get basic info
+        return this.getAuthorizationTokenAsync().thenCompose(authToken -> {
+            if(authToken != null) {
+                if (CountryUtils.isUS(carelinkCountry) || sessionMonitorData.isBle())
+                    return this.getConnectDisplayMessageResultAsync(this.sessionProfile.username, this.sessionUser.getUserRole(),
+                            sessionCountrySettings.blePereodicDataEndpoint);
+                else
+                    return this.getLast24HoursResultAsync();
+            }
+            else {
+                return CompletableFuture.completedFuture(this.publish(this.<RecentData>loginFailed()));
+            }
+        });
+
+    }
+
+    // Only the items which are new since the previous delta call (null if error)
+    public RecentDataDelta getRecentDataDelta() {
+        return this.toDelta(this.getRecentDataResult());
+    }
+
+    public CompletableFuture<RecentDataDelta> getRecentDataDeltaAsync() {
+        return this.getRecentDataResultAsync().thenApply(this::toDelta);
+    }
+
+    protected RecentDataDelta toDelta(CareLinkResult<RecentData> result) {
+
+        // Same response as before, nothing new
+        if (result.isNotModified())
+            return this.emptyDelta(result.getData());
+
+        if (result.getData() == null)
+            return null;
+
+        return this.recentDataWatermark.update(result.getData());
+
+    }
+
+    protected RecentDataDelta emptyDelta(RecentData recentData) {
+        RecentDataDelta delta = new RecentDataDelta();
+        delta.recentData = recentData;
+        return delta;
     }
 
     // Get server URL
@@ -143,80 +354,405 @@ public class CareLinkClient {
 
     // Authentication methods
     public boolean login(){
-        if(!this.loggedIn)
-            this.executeLoginProcedure();
+        if(!this.loggedIn && !this.tryRestoreSession())
+            this.startLogin(false, false).join();
         return this.loggedIn;
     }
 
-    protected boolean executeLoginProcedure() {
+    public CompletableFuture<Boolean> loginAsync(){
+        if(!this.loggedIn && !this.tryRestoreSession())
+            return this.startLogin(true, false).thenApply(CareLinkResult::isSuccess);
+        else
+            return CompletableFuture.completedFuture(true);
+    }
+
+    // Renew session ahead of token expiry on the given scheduler, data calls keep using the current token meanwhile
+    public void enableBackgroundRefresh(ScheduledExecutorService scheduler, long leadTime, TimeUnit unit) {
+        synchronized (this.runningLogin) {
+            this.refreshScheduler = scheduler;
+            this.refreshLeadMillis = unit.toMillis(leadTime);
+        }
+        if (this.loggedIn)
+            this.scheduleRefresh(this.getTokenValidTo() - this.refreshLeadMillis - System.currentTimeMillis());
+    }
+
+    public void disableBackgroundRefresh() {
+        synchronized (this.runningLogin) {
+            if (this.scheduledRefresh != null)
+                this.scheduledRefresh.cancel(false);
+            this.scheduledRefresh = null;
+            this.refreshScheduler = null;
+        }
+    }
+
+    protected void scheduleRefresh(long delayMillis) {
+        synchronized (this.runningLogin) {
+            if (this.refreshScheduler == null)
+                return;
+            if (this.scheduledRefresh != null)
+                this.scheduledRefresh.cancel(false);
+            try {
+                this.scheduledRefresh = this.refreshScheduler.schedule(() -> {
+                    this.startLogin(true, true);
+                }, Math.max(0, delayMillis), TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException ex) {
+                this.scheduledRefresh = null;
+            }
+        }
+    }
+
+    // Called after every login: plan the next renewal (or retry a failed renewal while the token is still valid)
+    protected void onLoginCompleted(boolean success) {
+
+        long now = System.currentTimeMillis();
+        long validTo = this.getTokenValidTo();
+
+        if (success)
+            this.scheduleRefresh(validTo - this.refreshLeadMillis - now);
+        else if (validTo > now)
+            this.scheduleRefresh(AUTH_REFRESH_RETRY_MINUTES * 60000L);
+
+    }
+
+    // Single-flight login: only one login runs at a time, concurrent callers get the future of the running one
+    protected CompletableFuture<CareLinkResult<Boolean>> startLogin(boolean async, boolean keepCurrentSession) {
+
+        CompletableFuture<CareLinkResult<Boolean>> login = new CompletableFuture<>();
+        CompletableFuture<CareLinkResult<Boolean>> running = null;
+        long loginStart = System.nanoTime();
+
+        while (!this.runningLogin.compareAndSet(null, login)) {
+            running = this.runningLogin.get();
+            if (running != null)
+                return running;
+        }
+
+        if (async) {
+            this.executeLoginProcedureAsync(keepCurrentSession).whenComplete((result, ex) -> {
+                CareLinkResult<Boolean> loginResult = ex == null ? result
+                        : CareLinkResult.failure(0, ex.getMessage(), ex, null, System.nanoTime() - loginStart);
+                this.runningLogin.compareAndSet(login, null);
+                this.onLoginCompleted(loginResult.isSuccess());
+                this.recordLogin(loginStart, loginResult.isSuccess());
+                login.complete(loginResult);
+            });
+        } else {
+            CareLinkResult<Boolean> loginResult = null;
+            try {
+                loginResult = this.executeLoginProcedure();
+            } finally {
+                if (loginResult == null)
+                    loginResult = CareLinkResult.failure(0, "Login aborted", null, null, System.nanoTime() - loginStart);
+                this.runningLogin.compareAndSet(login, null);
+                this.onLoginCompleted(loginResult.isSuccess());
+                this.recordLogin(loginStart, loginResult.isSuccess());
+                login.complete(loginResult);
+            }
+        }
+
+        return login;
+
+    }
+
+    protected void recordLogin(long loginStart, boolean success) {
+        CareLinkMetrics metrics = this.metrics;
+        if (metrics != null)
+            metrics.recordLogin(System.nanoTime() - loginStart, success);
+    }
+
+    protected void recordUnauthorizedRefresh() {
+        CareLinkMetrics metrics = this.metrics;
+        if (metrics != null && this.isAuthorizationTokenRejected())
+            metrics.recordUnauthorizedRefresh();
+    }
+
+    protected CareLinkResult<Boolean> executeLoginProcedure() {
 
         Response loginSessionResponse = null;
         Response doLoginResponse = null;
         Response consentResponse = null;
+        String authToken = null;
+        CareLinkResult<User> user = null;
+        CareLinkResult<Profile> profile = null;
+        CareLinkResult<CountrySettings> countrySettings = null;
+        CareLinkResult<MonitorData> monitorData = null;
+        CareLinkResult<Boolean> result = null;
+        int responseCode = 0;
+        String responseBody = null;
+        long start = System.nanoTime();
 
         lastLoginSuccess = false;
         loginInProcess = true;
-        lastErrorMessage = null;
 
         try {
-            // Clear cookies
-            ((SimpleOkHttpCookieJar) this.httpClient.cookieJar()).deleteAllCookies();
-
-            // Clear basic infos
-            this.sessionUser = null;
-            this.sessionProfile = null;
-            this.sessionCountrySettings = null;
-            this.sessionMonitorData = null;
+            // Clear cookies and basic infos
+            this.clearSession();
 
             // Open login (get SessionId and SessionData)
             loginSessionResponse = this.getLoginSession();
-            this.lastResponseCode = loginSessionResponse.code();
+            responseCode = loginSessionResponse.code();
 
             // Login
             doLoginResponse = this.doLogin(loginSessionResponse);
-            this.lastResponseCode = doLoginResponse.code();
-            setLastResponseBody(loginSessionResponse);
+            responseCode = doLoginResponse.code();
+            responseBody = this.captureBody(loginSessionResponse);
             loginSessionResponse.close();
 
             // Consent
             consentResponse = this.doConsent(doLoginResponse);
-            setLastResponseBody(doLoginResponse);
+            responseBody = this.captureBody(doLoginResponse);
             doLoginResponse.close();
-            this.lastResponseCode = consentResponse.code();
-            setLastResponseBody(consentResponse);
+            responseCode = consentResponse.code();
+            responseBody = this.captureBody(consentResponse);
             consentResponse.close();
 
-            // Get sessions infos if required
-            if(this.sessionUser == null)
-                this.sessionUser = this.getMyUser();
-            if(this.sessionProfile == null)
-                this.sessionProfile = this.getMyProfile();
-            if(this.sessionCountrySettings == null)
-                this.sessionCountrySettings = this.getCountrySettings(this.carelinkCountry, CARELINK_LANGUAGE_EN);
-            if(this.sessionMonitorData == null)
-                this.sessionMonitorData = this.getMonitorData();
-            // Set login success if everything was ok:
-            if(this.sessionUser != null && this.sessionProfile != null && this.sessionCountrySettings != null && this.sessionMonitorData != null)
-                lastLoginSuccess = true;
+            // Get sessions infos with the new token
+            authToken = this.buildAuthorizationToken();
+            if(authToken != null) {
+                user = this.getData(this.buildUrl(this.careLinkServer(), API_PATH_MY_USER, null), null, User.class, authToken);
+                profile = this.getData(this.buildUrl(this.careLinkServer(), API_PATH_MY_PROFILE, null), null, Profile.class, authToken);
+                countrySettings = this.getData(this.buildUrl(this.careLinkServer(), API_PATH_COUNTRY_SETTINGS,
+                        this.buildCountrySettingsParams(this.carelinkCountry, CARELINK_LANGUAGE_EN)), null, CountrySettings.class, authToken);
+                monitorData = this.getData(this.buildUrl(this.careLinkServer(), API_PATH_MONITOR_DATA, null), null, MonitorData.class, authToken);
+                this.sessionUser = user.getData();
+                this.sessionProfile = profile.getData();
+                this.sessionCountrySettings = countrySettings.getData();
+                this.sessionMonitorData = monitorData.getData();
+                result = this.buildLoginResult(System.nanoTime() - start, user, profile, countrySettings, monitorData);
+            } else {
+                result = CareLinkResult.failure(responseCode, "No authorization token after login", null, responseBody, System.nanoTime() - start);
+            }
 
         } catch (Exception e) {
-            lastErrorMessage = e.getMessage();
-            // lastStackTraceString = Log.getStackTraceString(e);
+            result = CareLinkResult.failure(responseCode, e.getMessage(), e, responseBody, System.nanoTime() - start);
+        }
+
+        return this.completeLogin(result, false);
+
+    }
+
+    // Same steps as executeLoginProcedure, chained on OkHttp callbacks
+    // keepCurrentSession: renewal, current token and session infos stay usable until the new ones arrive
+    protected CompletableFuture<CareLinkResult<Boolean>> executeLoginProcedureAsync(boolean keepCurrentSession) {
+
+        CareLinkResult<?>[] sessionInfos = new CareLinkResult<?>[4];
+        String[] authToken = new String[1];
+        int[] responseCode = new int[1];
+        String[] responseBody = new String[1];
+        long start = System.nanoTime();
+
+        loginInProcess = true;
+
+        // Clear cookies and basic infos, a renewal keeps the current session and its login success
+        if (!keepCurrentSession) {
+            lastLoginSuccess = false;
+            this.clearSession();
+        }
+
+        // Open login (get SessionId and SessionData)
+        return this.getLoginSessionAsync()
+                // Login
+                .thenCompose(loginSessionResponse -> {
+                    responseCode[0] = loginSessionResponse.code();
+                    try {
+                        return this.executeAsync(this.buildDoLoginRequest(loginSessionResponse));
+                    } finally {
+                        responseBody[0] = this.captureBody(loginSessionResponse);
+                        loginSessionResponse.close();
+                    }
+                })
+                // Consent
+                .thenCompose(doLoginResponse -> {
+                    responseCode[0] = doLoginResponse.code();
+                    try {
+                        return this.executeAsync(this.buildConsentRequest(doLoginResponse));
+                    } catch (IOException e) {
+                        throw new CompletionException(e);
+                    } finally {
+                        doLoginResponse.close();
+                    }
+                })
+                // Get sessions infos with the new token
+                .thenCompose(consentResponse -> {
+                    responseCode[0] = consentResponse.code();
+                    responseBody[0] = this.captureBody(consentResponse);
+                    consentResponse.close();
+                    authToken[0] = this.buildAuthorizationToken();
+                    if (authToken[0] == null)
+                        throw new CompletionException(new IOException("No authorization token after login"));
+                    return this.getDataAsync(this.buildUrl(this.careLinkServer(), API_PATH_MY_USER, null), null, User.class, authToken[0]);
+                })
+                .thenCompose(sessionUser -> {
+                    sessionInfos[0] = sessionUser;
+                    return this.getDataAsync(this.buildUrl(this.careLinkServer(), API_PATH_MY_PROFILE, null), null, Profile.class, authToken[0]);
+                })
+                .thenCompose(sessionProfile -> {
+                    sessionInfos[1] = sessionProfile;
+                    return this.getDataAsync(this.buildUrl(this.careLinkServer(), API_PATH_COUNTRY_SETTINGS,
+                            this.buildCountrySettingsParams(this.carelinkCountry, CARELINK_LANGUAGE_EN)), null, CountrySettings.class, authToken[0]);
+                })
+                .thenCompose(sessionCountrySettings -> {
+                    sessionInfos[2] = sessionCountrySettings;
+                    return this.getDataAsync(this.buildUrl(this.careLinkServer(), API_PATH_MONITOR_DATA, null), null, MonitorData.class, authToken[0]);
+                })
+                .thenApply(sessionMonitorData -> {
+                    CareLinkResult<Boolean> result = null;
+                    sessionInfos[3] = sessionMonitorData;
+                    result = this.buildLoginResult(System.nanoTime() - start, sessionInfos);
+                    // Set session infos if everything was ok
+                    if (result.isSuccess()) {
+                        this.sessionUser = (User) sessionInfos[0].getData();
+                        this.sessionProfile = (Profile) sessionInfos[1].getData();
+                        this.sessionCountrySettings = (CountrySettings) sessionInfos[2].getData();
+                        this.sessionMonitorData = sessionMonitorData.getData();
+                    }
+                    return result;
+                })
+                .handle((result, ex) -> {
+                    Throwable cause = (ex instanceof CompletionException && ex.getCause() != null) ? ex.getCause() : ex;
+                    if (cause != null)
+                        result = CareLinkResult.failure(responseCode[0], cause.getMessage(), cause, responseBody[0], System.nanoTime() - start);
+                    return this.completeLogin(result, keepCurrentSession);
+                });
+
+    }
+
+    // Login succeeded if all session infos were received, otherwise the first failed one is the reason
+    protected CareLinkResult<Boolean> buildLoginResult(long elapsedNanos, CareLinkResult<?>... sessionInfos) {
+
+        for (CareLinkResult<?> sessionInfo : sessionInfos) {
+            if (!sessionInfo.isSuccess())
+                return CareLinkResult.failure(sessionInfo.getResponseCode(), sessionInfo.getErrorMessage(), sessionInfo.getError(),
+                        sessionInfo.getResponseBody(), elapsedNanos);
+            if (sessionInfo.getData() == null)
+                return CareLinkResult.failure(sessionInfo.getResponseCode(), "Empty session info", null, sessionInfo.getResponseBody(), elapsedNanos);
         }
 
+        return CareLinkResult.success(sessionInfos[sessionInfos.length - 1].getResponseCode(), true, null, elapsedNanos);
+
+    }
+
+    protected CareLinkResult<Boolean> completeLogin(CareLinkResult<Boolean> result, boolean keepCurrentSession) {
+
+        boolean success = result.isSuccess();
+
+        if (success)
+            this.saveSession();
         loginInProcess = false;
-        loggedIn = lastLoginSuccess;
+        // Failed renewal keeps the current session (its token is still valid), the failure is in lastLoginResult
+        if (success || !keepCurrentSession) {
+            lastLoginSuccess = success;
+            loggedIn = success;
+        }
+        this.lastLoginResult = result;
 
-        return lastLoginSuccess;
+        return this.publish(result);
+
+    }
+
+    // Key of this account in the session store
+    protected String getSessionKey() {
+        return this.carelinkCountry + ":" + this.carelinkUsername;
+    }
+
+    protected void saveSession() {
+
+        CareLinkSession session = null;
+        SimpleOkHttpCookieJar cookieJar = (SimpleOkHttpCookieJar) this.httpClient.cookieJar();
+
+        if (this.sessionStore == null)
+            return;
+
+        session = new CareLinkSession();
+        session.savedAt = System.currentTimeMillis();
+        for (Cookie cookie : cookieJar.getCookies(CARELINK_AUTH_TOKEN_COOKIE_NAME))
+            session.cookies.add(CareLinkSession.StoredCookie.fromCookie(cookie));
+        for (Cookie cookie : cookieJar.getCookies(CARELINK_TOKEN_VALIDTO_COOKIE_NAME))
+            session.cookies.add(CareLinkSession.StoredCookie.fromCookie(cookie));
+        session.user = this.sessionUser;
+        session.profile = this.sessionProfile;
+        session.countrySettings = this.sessionCountrySettings;
+        session.monitorData = this.sessionMonitorData;
+
+        this.sessionStore.save(this.getSessionKey(), session);
+
+    }
+
+    protected boolean tryRestoreSession() {
+        return !this.sessionRestoreAttempted && this.restoreSession();
+    }
+
+    // Resume stored session if its token is still valid, no login round trips needed
+    protected synchronized boolean restoreSession() {
+
+        CareLinkSession session = null;
+        List<Cookie> cookies = null;
+
+        if (this.sessionStore == null || this.loginInProcess || this.sessionRestoreAttempted)
+            return false;
+        this.sessionRestoreAttempted = true;
+
+        session = this.sessionStore.load(this.getSessionKey());
+        if (session == null || !session.isComplete())
+            return false;
+
+        try {
+            cookies = new ArrayList<>();
+            for (CareLinkSession.StoredCookie storedCookie : session.cookies)
+                cookies.add(storedCookie.toCookie());
+        } catch (Exception ex) {
+            this.sessionStore.delete(this.getSessionKey());
+            return false;
+        }
+
+        this.clearSession();
+        ((SimpleOkHttpCookieJar) this.httpClient.cookieJar()).addCookies(cookies);
+
+        // Stored token expired (or about to expire)
+        if (this.isNewAuthorizationTokenNeeded()) {
+            this.clearSession();
+            return false;
+        }
+
+        this.sessionUser = session.user;
+        this.sessionProfile = session.profile;
+        this.sessionCountrySettings = session.countrySettings;
+        this.sessionMonitorData = session.monitorData;
+        this.loggedIn = true;
+        this.lastLoginSuccess = true;
+        this.onLoginCompleted(true);
+
+        return true;
+
+    }
+
+    protected void clearSession() {
+
+        // Clear cookies
+        ((SimpleOkHttpCookieJar) this.httpClient.cookieJar()).deleteAllCookies();
+
+        // Clear basic infos
+        this.sessionUser = null;
+        this.sessionProfile = null;
+        this.sessionCountrySettings = null;
+        this.sessionMonitorData = null;
 
     }
 
     protected Response getLoginSession() throws IOException {
+        return this.execute(this.buildLoginSessionRequest());
+    }
+
+    protected CompletableFuture<Response> getLoginSessionAsync() {
+        return this.executeAsync(this.buildLoginSessionRequest());
+    }
+
+    protected Request buildLoginSessionRequest() {
 
         HttpUrl url = null;
         Request.Builder requestBuilder = null;
 
-        url = new HttpUrl.Builder().scheme("https").host(this.careLinkServer()).addPathSegments("patient/sso/login")
+        url = this.newUrlBuilder(this.careLinkServer()).addPathSegments("patient/sso/login")
                 .addQueryParameter("country", this.carelinkCountry).addQueryParameter("lang", CARELINK_LANGUAGE_EN)
                 .build();
 
@@ -224,11 +760,15 @@ public class CareLinkClient {
 
         this.addHttpHeaders(requestBuilder, RequestType.HtmlGet);
 
-        return this.httpClient.newCall(requestBuilder.build()).execute();
+        return requestBuilder.build();
 
     }
 
     protected Response doLogin(Response loginSessionResponse) throws IOException {
+        return this.execute(this.buildDoLoginRequest(loginSessionResponse));
+    }
+
+    protected Request buildDoLoginRequest(Response loginSessionResponse) {
 
         HttpUrl url = null;
         Request.Builder requestBuilder = null;
@@ -244,7 +784,7 @@ public class CareLinkClient {
                 .add("actionButton", "Log in")
                 .build();
 
-        url = new HttpUrl.Builder().scheme("https").host("mdtlogin.medtronic.com")
+        url = this.newUrlBuilder(CARELINK_LOGIN_SERVER)
                 .addPathSegments("mmcl/auth/oauth/v2/authorize/login").addQueryParameter("locale", CARELINK_LOCALE_EN)
                 .addQueryParameter("country", this.carelinkCountry).build();
 
@@ -252,59 +792,136 @@ public class CareLinkClient {
 
         this.addHttpHeaders(requestBuilder, RequestType.HtmlGet);
 
-        return this.httpClient.newCall(requestBuilder.build()).execute();
+        return requestBuilder.build();
 
     }
 
     protected Response doConsent(Response doLoginResponse) throws IOException {
+        return this.execute(this.buildConsentRequest(doLoginResponse));
+    }
+
+    protected Request buildConsentRequest(Response doLoginResponse) throws IOException {
 
         Request.Builder requestBuilder = null;
         RequestBody form = null;
-        String doLoginRespBody = null;
-
-        doLoginRespBody = doLoginResponse.body().string();
+        HtmlForm consentForm = null;
+        HttpUrl consentUrl = null;
 
-        // Extract data for consent
-        String consentUrl = this.extractResponseData(doLoginRespBody, "(form action=\")(.*)(\" method=\"POST\")", 2);
-        String consentSessionData = this.extractResponseData(doLoginRespBody,
-                "(<input type=\"hidden\" name=\"sessionData\" value=\")(.*)(\">)", 2);
-        String consentSessionId = this.extractResponseData(doLoginRespBody,
-                "(<input type=\"hidden\" name=\"sessionID\" value=\")(.*)(\">)", 2);
+        // Extract data for consent (single pass over the body, reading stops at the end of the form)
+        consentForm = HtmlForm.parse(doLoginResponse.body().source());
+        if (consentForm != null && consentForm.getAction() != null)
+            consentUrl = doLoginResponse.request().url().resolve(consentForm.getAction());
+        if (consentUrl == null || consentForm.getField("sessionID") == null || consentForm.getField("sessionData") == null)
+            throw new IOException("No consent form in login response");
 
         // Send consent
-        form = new FormBody.Builder().add("action", "consent").add("sessionID", consentSessionId)
-                .add("sessionData", consentSessionData).add("response_type", "code").add("response_mode", "query")
+        form = new FormBody.Builder().add("action", "consent").add("sessionID", consentForm.getField("sessionID"))
+                .add("sessionData", consentForm.getField("sessionData")).add("response_type", "code").add("response_mode", "query")
                 .build();
 
         requestBuilder = new Request.Builder().url(consentUrl).post(form);
 
         this.addHttpHeaders(requestBuilder, RequestType.HtmlPost);
 
-        return this.httpClient.newCall(requestBuilder.build()).execute();
+        return requestBuilder.build();
 
     }
 
     protected String getAuthorizationToken() {
 
-        // New token is needed:
-        // a) no token or about to expire => execute authentication
-        // b) last response 401
-        if (!((SimpleOkHttpCookieJar) httpClient.cookieJar()).contains(CARELINK_AUTH_TOKEN_COOKIE_NAME)
-                || !((SimpleOkHttpCookieJar) httpClient.cookieJar()).contains(CARELINK_TOKEN_VALIDTO_COOKIE_NAME)
-                || !((new Date(Date.parse(((SimpleOkHttpCookieJar) httpClient.cookieJar())
-                .getCookies(CARELINK_TOKEN_VALIDTO_COOKIE_NAME).get(0).value())))
-                .after(new Date(new Date(System.currentTimeMillis()).getTime()
-                        + AUTH_EXPIRE_DEADLINE_MINUTES * 60000)))
-                || this.lastResponseCode == 401
-        ) {
-            //execute new login process | null, if error OR already doing login
-            if(this.loginInProcess || !this.executeLoginProcedure())
+        // Try stored session first
+        if (!this.loggedIn)
+            this.tryRestoreSession();
+
+        if (this.isNewAuthorizationTokenNeeded()) {
+            this.recordUnauthorizedRefresh();
+            // Still valid, renewal runs in the background
+            if (this.refreshScheduler != null && this.isAuthorizationTokenValid())
+                this.startLogin(true, true);
+            // Wait for new login (shared with concurrent callers) | null, if error
+            else if (!this.startLogin(false, false).join().isSuccess())
                 return null;
+        }
+
+        return this.buildAuthorizationToken();
+
+    }
 
+    protected CompletableFuture<String> getAuthorizationTokenAsync() {
+
+        // Try stored session first
+        if (!this.loggedIn)
+            this.tryRestoreSession();
+
+        if (this.isNewAuthorizationTokenNeeded()) {
+            this.recordUnauthorizedRefresh();
+            // Still valid, renewal runs in the background
+            if (this.refreshScheduler != null && this.isAuthorizationTokenValid())
+                this.startLogin(true, true);
+            // Wait for new login (shared with concurrent callers) | null, if error
+            else
+                return this.startLogin(true, false).thenApply(result -> result.isSuccess() ? this.buildAuthorizationToken() : null);
         }
 
+        return CompletableFuture.completedFuture(this.buildAuthorizationToken());
+
+    }
+
+    // New token is needed:
+    // a) no token or about to expire => execute authentication
+    // b) token rejected with 401
+    protected boolean isNewAuthorizationTokenNeeded() {
+        return this.isAuthorizationTokenRejected()
+                || !((SimpleOkHttpCookieJar) httpClient.cookieJar()).contains(CARELINK_AUTH_TOKEN_COOKIE_NAME)
+                || this.getTokenValidTo() <= System.currentTimeMillis() + AUTH_EXPIRE_DEADLINE_MINUTES * 60000L;
+    }
+
+    // Token can still be used (not expired and not rejected)
+    protected boolean isAuthorizationTokenValid() {
+        return !this.isAuthorizationTokenRejected()
+                && ((SimpleOkHttpCookieJar) httpClient.cookieJar()).contains(CARELINK_AUTH_TOKEN_COOKIE_NAME)
+                && this.getTokenValidTo() > System.currentTimeMillis();
+    }
+
+    protected boolean isAuthorizationTokenRejected() {
+        String rejectedAuthToken = this.rejectedAuthToken;
+        return rejectedAuthToken != null && rejectedAuthToken.equals(this.buildAuthorizationToken());
+    }
+
+    // Token expiry in epoch millis (0 if unknown), parsed only once per token
+    protected long getTokenValidTo() {
+
+        Cookie validToCookie = ((SimpleOkHttpCookieJar) httpClient.cookieJar()).getCookie(CARELINK_TOKEN_VALIDTO_COOKIE_NAME);
+        TokenValidTo cached = this.tokenValidTo;
+
+        if (validToCookie == null)
+            return 0;
+
+        if (cached == null || !cached.value.equals(validToCookie.value())) {
+            cached = new TokenValidTo(validToCookie.value(), parseTokenValidTo(validToCookie.value()));
+            this.tokenValidTo = cached;
+        }
+
+        return cached.millis;
+
+    }
+
+    // CareLink sends a JavaScript Date string, Date.parse is lenient enough for it
+    @SuppressWarnings("deprecation")
+    protected static long parseTokenValidTo(String value) {
+        try {
+            return Date.parse(value);
+        } catch (IllegalArgumentException ex) {
+            return 0;
+        }
+    }
+
+    protected String buildAuthorizationToken() {
+
         // there can be only one
-        return "Bearer" + " " + ((SimpleOkHttpCookieJar) httpClient.cookieJar()).getCookies(CARELINK_AUTH_TOKEN_COOKIE_NAME).get(0).value();
+        Cookie authToken = ((SimpleOkHttpCookieJar) httpClient.cookieJar()).getCookie(CARELINK_AUTH_TOKEN_COOKIE_NAME);
+
+        return authToken == null ? null : "Bearer" + " " + authToken.value();
 
     }
 
@@ -314,21 +931,75 @@ public class CareLinkClient {
 
     // My user
     public User getMyUser() {
-        return this.getData(this.careLinkServer(), "patient/users/me", null, null, User.class);
+        return this.getMyUserResult().getData();
+    }
+
+    public CareLinkResult<User> getMyUserResult() {
+        return this.getData(this.careLinkServer(), API_PATH_MY_USER, null, null, User.class);
+    }
+
+    public CompletableFuture<User> getMyUserAsync() {
+        return this.getMyUserResultAsync().thenApply(CareLinkResult::getData);
+    }
+
+    public CompletableFuture<CareLinkResult<User>> getMyUserResultAsync() {
+        return this.getDataAsync(this.careLinkServer(), API_PATH_MY_USER, null, null, User.class);
     }
 
     // My profile
     public Profile getMyProfile() {
-        return this.getData(this.careLinkServer(), "patient/users/me/profile", null, null, Profile.class);
+        return this.getMyProfileResult().getData();
+    }
+
+    public CareLinkResult<Profile> getMyProfileResult() {
+        return this.getData(this.careLinkServer(), API_PATH_MY_PROFILE, null, null, Profile.class);
+    }
+
+    public CompletableFuture<Profile> getMyProfileAsync() {
+        return this.getMyProfileResultAsync().thenApply(CareLinkResult::getData);
+    }
+
+    public CompletableFuture<CareLinkResult<Profile>> getMyProfileResultAsync() {
+        return this.getDataAsync(this.careLinkServer(), API_PATH_MY_PROFILE, null, null, Profile.class);
     }
 
     // Monitoring data
     public MonitorData getMonitorData() {
-        return this.getData(this.careLinkServer(), "patient/monitor/data", null, null, MonitorData.class);
+        return this.getMonitorDataResult().getData();
+    }
+
+    public CareLinkResult<MonitorData> getMonitorDataResult() {
+        return this.getData(this.careLinkServer(), API_PATH_MONITOR_DATA, null, null, MonitorData.class);
+    }
+
+    public CompletableFuture<MonitorData> getMonitorDataAsync() {
+        return this.getMonitorDataResultAsync().thenApply(CareLinkResult::getData);
+    }
+
+    public CompletableFuture<CareLinkResult<MonitorData>> getMonitorDataResultAsync() {
+        return this.getDataAsync(this.careLinkServer(), API_PATH_MONITOR_DATA, null, null, MonitorData.class);
     }
 
     // Country settings
     public CountrySettings getCountrySettings(String country, String language) {
+        return this.getCountrySettingsResult(country, language).getData();
+    }
+
+    public CareLinkResult<CountrySettings> getCountrySettingsResult(String country, String language) {
+        return this.getData(this.careLinkServer(), API_PATH_COUNTRY_SETTINGS, this.buildCountrySettingsParams(country, language), null,
+                CountrySettings.class);
+    }
+
+    public CompletableFuture<CountrySettings> getCountrySettingsAsync(String country, String language) {
+        return this.getCountrySettingsResultAsync(country, language).thenApply(CareLinkResult::getData);
+    }
+
+    public CompletableFuture<CareLinkResult<CountrySettings>> getCountrySettingsResultAsync(String country, String language) {
+        return this.getDataAsync(this.careLinkServer(), API_PATH_COUNTRY_SETTINGS, this.buildCountrySettingsParams(country, language), null,
+                CountrySettings.class);
+    }
+
+    protected Map<String, String> buildCountrySettingsParams(String country, String language) {
 
         Map<String, String> queryParams = null;
 
@@ -336,13 +1007,28 @@ public class CareLinkClient {
         queryParams.put("countryCode", country);
         queryParams.put("language", language);
 
-        return this.getData(this.careLinkServer(), "patient/countries/settings", queryParams, null,
-                CountrySettings.class);
+        return queryParams;
 
     }
 
     // Old last24hours webapp data
     public RecentData getLast24Hours() { //Last24Hour getLast24Hours() {
+        return this.getLast24HoursResult().getData();
+    }
+
+    public CareLinkResult<RecentData> getLast24HoursResult() {
+        return this.getData(this.careLinkServer(), API_PATH_CONNECT_DATA, this.buildLast24HoursParams(), null, RecentData.class);
+    }
+
+    public CompletableFuture<RecentData> getLast24HoursAsync() {
+        return this.getLast24HoursResultAsync().thenApply(CareLinkResult::getData);
+    }
+
+    public CompletableFuture<CareLinkResult<RecentData>> getLast24HoursResultAsync() {
+        return this.getDataAsync(this.careLinkServer(), API_PATH_CONNECT_DATA, this.buildLast24HoursParams(), null, RecentData.class);
+    }
+
+    protected Map<String, String> buildLast24HoursParams() {
 
         Map<String, String> queryParams = null;
 
@@ -351,15 +1037,110 @@ public class CareLinkClient {
         queryParams.put("msgType", "last24hours");
         queryParams.put("requestTime", String.valueOf(System.currentTimeMillis()));
 
-        return this.getData(this.careLinkServer(), "patient/connect/data", queryParams, null, RecentData.class);
+        return queryParams;
 
     }
 
     // Periodic data from CareLink Cloud
     public RecentData getConnectDisplayMessage(String username, String role, String endpointUrl) {
+        return this.getConnectDisplayMessageResult(username, role, endpointUrl).getData();
+    }
+
+    public CareLinkResult<RecentData> getConnectDisplayMessageResult(String username, String role, String endpointUrl) {
+
+        // Device time is corrected while parsing
+        return this.getData(HttpUrl.parse(endpointUrl), this.buildConnectDisplayMessageBody(username, role), RecentData.class, this.getGson(true));
+
+    }
+
+    public CompletableFuture<RecentData> getConnectDisplayMessageAsync(String username, String role, String endpointUrl) {
+        return this.getConnectDisplayMessageResultAsync(username, role, endpointUrl).thenApply(CareLinkResult::getData);
+    }
+
+    public CompletableFuture<CareLinkResult<RecentData>> getConnectDisplayMessageResultAsync(String username, String role, String endpointUrl) {
+
+        return this.getDataAsync(HttpUrl.parse(endpointUrl), this.buildConnectDisplayMessageBody(username, role), RecentData.class, this.getGson(true));
+
+    }
+
+    // Recent uploads of the devices, newest first
+    public RecentUploads getRecentUploads(int numUploads) {
+        return this.getRecentUploadsResult(numUploads).getData();
+    }
+
+    public CareLinkResult<RecentUploads> getRecentUploadsResult(int numUploads) {
+        return this.getData(this.careLinkServer(), API_PATH_RECENT_UPLOADS, this.buildRecentUploadsParams(numUploads), null, RecentUploads.class);
+    }
+
+    public CompletableFuture<RecentUploads> getRecentUploadsAsync(int numUploads) {
+        return this.getRecentUploadsResultAsync(numUploads).thenApply(CareLinkResult::getData);
+    }
+
+    public CompletableFuture<CareLinkResult<RecentUploads>> getRecentUploadsResultAsync(int numUploads) {
+        return this.getDataAsync(this.careLinkServer(), API_PATH_RECENT_UPLOADS, this.buildRecentUploadsParams(numUploads), null, RecentUploads.class);
+    }
+
+    protected Map<String, String> buildRecentUploadsParams(int numUploads) {
+
+        Map<String, String> queryParams = null;
+
+        queryParams = new HashMap<String, String>();
+        queryParams.put("numUploads", String.valueOf(numUploads));
+
+        return queryParams;
+
+    }
+
+    // Report calendar: time ranges with data per category (sensor, pump...) between the dates (inclusive)
+    public ReportSnapshotTimelinesForCalendar getReportTimelines(LocalDate startDate, LocalDate endDate) {
+        return this.getReportTimelinesResult(startDate, endDate).getData();
+    }
+
+    public CareLinkResult<ReportSnapshotTimelinesForCalendar> getReportTimelinesResult(LocalDate startDate, LocalDate endDate) {
+        return this.getData(this.careLinkServer(), API_PATH_REPORT_CALENDAR, this.buildReportParams(startDate, endDate), null,
+                ReportSnapshotTimelinesForCalendar.class);
+    }
+
+    public CompletableFuture<ReportSnapshotTimelinesForCalendar> getReportTimelinesAsync(LocalDate startDate, LocalDate endDate) {
+        return this.getReportTimelinesResultAsync(startDate, endDate).thenApply(CareLinkResult::getData);
+    }
+
+    public CompletableFuture<CareLinkResult<ReportSnapshotTimelinesForCalendar>> getReportTimelinesResultAsync(LocalDate startDate, LocalDate endDate) {
+        return this.getDataAsync(this.careLinkServer(), API_PATH_REPORT_CALENDAR, this.buildReportParams(startDate, endDate), null,
+                ReportSnapshotTimelinesForCalendar.class);
+    }
+
+    // History between the dates (inclusive) in the format of the recent data (sensor glucose, markers), see CareLinkBackfill
+    public RecentData getReportData(LocalDate startDate, LocalDate endDate) {
+        return this.getReportDataResult(startDate, endDate).getData();
+    }
+
+    public CareLinkResult<RecentData> getReportDataResult(LocalDate startDate, LocalDate endDate) {
+        return this.getData(this.careLinkServer(), API_PATH_REPORT_DATA, this.buildReportParams(startDate, endDate), null, RecentData.class);
+    }
+
+    public CompletableFuture<RecentData> getReportDataAsync(LocalDate startDate, LocalDate endDate) {
+        return this.getReportDataResultAsync(startDate, endDate).thenApply(CareLinkResult::getData);
+    }
+
+    public CompletableFuture<CareLinkResult<RecentData>> getReportDataResultAsync(LocalDate startDate, LocalDate endDate) {
+        return this.getDataAsync(this.careLinkServer(), API_PATH_REPORT_DATA, this.buildReportParams(startDate, endDate), null, RecentData.class);
+    }
+
+    protected Map<String, String> buildReportParams(LocalDate startDate, LocalDate endDate) {
+
+        Map<String, String> queryParams = null;
+
+        queryParams = new HashMap<String, String>();
+        queryParams.put("startDate", startDate.toString());
+        queryParams.put("endDate", endDate.toString());
+
+        return queryParams;
+
+    }
+
+    protected RequestBody buildConnectDisplayMessageBody(String username, String role) {
 
-        RequestBody requestBody = null;
-        Gson gson = null;
         JsonObject userJson = null;
 
         // Build user json for request
@@ -367,20 +1148,13 @@ public class CareLinkClient {
         userJson.addProperty("username", username);
         userJson.addProperty("role", role);
 
-        gson = new GsonBuilder().create();
-
-        requestBody = RequestBody.create(gson.toJson(userJson), MediaType.get("application/json; charset=utf-8"));
-
-        RecentData recentData = this.getData(HttpUrl.parse(endpointUrl), requestBody, RecentData.class);
-        if (recentData != null)
-            correctTimeInRecentData(recentData);
-        return recentData;
+        return RequestBody.create(CareLinkGson.getGson().toJson(userJson), MediaType.get("application/json; charset=utf-8"));
 
     }
 
 
     // Helper methods
-    // Response parsing
+    // Response parsing (regex based, the login uses HtmlForm instead, kept for comparison benchmarks)
     protected String extractResponseData(String respBody, String groupRegex, int groupIndex) {
 
         String responseData = null;
@@ -423,65 +1197,466 @@ public class CareLinkClient {
 
     }
 
-    // Data request for API calls
-    protected <T> T getData(HttpUrl url, RequestBody requestBody, Class<T> dataClass) {
+    // Http call guarded by the circuit breaker, single attempt
+    protected Response execute(Request request) throws IOException {
 
-        Object data = null;
+        CircuitBreaker circuitBreaker = this.circuitBreaker;
+        String host = getHostKey(request.url());
+        Response response = null;
 
-        this.lastDataSuccess = false;
-        this.lastErrorMessage = null;
+        if (circuitBreaker != null && !circuitBreaker.allowRequest(host))
+            throw this.circuitOpen(circuitBreaker, request);
 
-        // Get auth token
-        String authToken = this.getAuthorizationToken();
+        try {
+            response = this.httpClient.newCall(request).execute();
+        } catch (IOException e) {
+            if (circuitBreaker != null)
+                circuitBreaker.recordFailure(host);
+            throw e;
+        }
+        this.recordOutcome(circuitBreaker, host, response.code());
 
-        if (authToken != null) {
+        return response;
 
-            // Create request for URL with authToken
-            Request.Builder requestBuilder = new Request.Builder().url(url).addHeader("Authorization", authToken);
+    }
 
-            // Add header
-            if (requestBody == null) {
-                this.addHttpHeaders(requestBuilder, RequestType.Json);
-            } else {
-                requestBuilder.post(requestBody);
-                this.addHttpHeaders(requestBuilder, RequestType.HtmlPost);
+    // Async http call on the OkHttp dispatcher, guarded by the circuit breaker, single attempt
+    protected CompletableFuture<Response> executeAsync(Request request) {
+
+        CompletableFuture<Response> future = new CompletableFuture<>();
+        CircuitBreaker circuitBreaker = this.circuitBreaker;
+        String host = getHostKey(request.url());
+
+        if (circuitBreaker != null && !circuitBreaker.allowRequest(host)) {
+            future.completeExceptionally(this.circuitOpen(circuitBreaker, request));
+            return future;
+        }
+
+        this.httpClient.newCall(request).enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                if (circuitBreaker != null)
+                    circuitBreaker.recordFailure(host);
+                future.completeExceptionally(e);
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                recordOutcome(circuitBreaker, host, response.code());
+                future.complete(response);
             }
+        });
 
-            String responseBody = null;
+        return future;
 
-            // Send request
+    }
+
+    // Http call retried according to the retry policy (network errors and RETRY statuses), open circuit is not retried
+    // Requests which are not retryable (POST not marked as safe) get a single attempt
+    protected Response executeWithRetry(Request request) throws IOException {
+
+        RetryPolicy policy = this.retryPolicy;
+        int maxAttempts = policy.isRetryable(request) ? policy.getMaxAttempts() : 1;
+        Response response = null;
+        long delay;
+
+        for (int attempt = 1; ; attempt++) {
             try {
-                Response response = this.httpClient.newCall(requestBuilder.build()).execute();
-                this.lastResponseCode = response.code();
-                if (response.isSuccessful()) {
-                    responseBody = response.body().string();
-                    setLastResponseBody(responseBody);
-                    data = new GsonBuilder().create().fromJson(responseBody, dataClass);
-                    this.lastDataSuccess = true;
-                }
+                response = this.execute(request);
+            } catch (CircuitOpenException e) {
+                throw e;
+            } catch (IOException e) {
+                if (attempt >= maxAttempts || policy.getNetworkErrorAction() != RetryPolicy.Action.RETRY)
+                    throw e;
+                this.sleepBeforeRetry(request, policy.getDelayMillis(attempt, null));
+                continue;
+            }
+            if (attempt >= maxAttempts || policy.getAction(response.code()) != RetryPolicy.Action.RETRY)
+                return response;
+            delay = policy.getDelayMillis(attempt, response.header("Retry-After"));
+            response.close();
+            this.sleepBeforeRetry(request, delay);
+        }
+
+    }
+
+    protected CompletableFuture<Response> executeWithRetryAsync(Request request) {
+        return this.executeWithRetryAsync(request, this.retryPolicy, 1);
+    }
+
+    // Same rules as executeWithRetry, the delay does not block a thread
+    protected CompletableFuture<Response> executeWithRetryAsync(Request request, RetryPolicy policy, int attempt) {
+
+        int maxAttempts = policy.isRetryable(request) ? policy.getMaxAttempts() : 1;
+
+        return this.executeAsync(request).handle((response, ex) -> {
+            Throwable cause = (ex instanceof CompletionException && ex.getCause() != null) ? ex.getCause() : ex;
+            long delay;
+            if (cause != null) {
+                if (cause instanceof CircuitOpenException || attempt >= maxAttempts
+                        || policy.getNetworkErrorAction() != RetryPolicy.Action.RETRY)
+                    return CareLinkClient.<Response>failedFuture(cause);
+                delay = policy.getDelayMillis(attempt, null);
+            } else {
+                if (attempt >= maxAttempts || policy.getAction(response.code()) != RetryPolicy.Action.RETRY)
+                    return CompletableFuture.completedFuture(response);
+                delay = policy.getDelayMillis(attempt, response.header("Retry-After"));
                 response.close();
-            } catch (Exception e) {
-                lastErrorMessage = e.getMessage();
             }
+            this.recordRetry(request);
+            return delay(delay).thenCompose(ignored -> this.executeWithRetryAsync(request, policy, attempt + 1));
+        }).thenCompose(future -> future);
+
+    }
 
+    protected void sleepBeforeRetry(Request request, long delayMillis) throws IOException {
+        this.recordRetry(request);
+        try {
+            Thread.sleep(delayMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for retry");
         }
+    }
 
-        //Return result
-        if(data != null)
-            return dataClass.cast(data);
+    protected static CompletableFuture<Void> delay(long delayMillis) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        RetryTimer.TIMER.schedule(() -> future.complete(null), delayMillis, TimeUnit.MILLISECONDS);
+        return future;
+    }
+
+    protected static <T> CompletableFuture<T> failedFuture(Throwable ex) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(ex);
+        return future;
+    }
+
+    // Server errors and throttling count as failure of the host, other responses show a working server
+    protected void recordOutcome(CircuitBreaker circuitBreaker, String host, int code) {
+        if (circuitBreaker == null)
+            return;
+        if (code >= 500 || code == 429)
+            circuitBreaker.recordFailure(host);
         else
+            circuitBreaker.recordSuccess(host);
+    }
+
+    protected CircuitOpenException circuitOpen(CircuitBreaker circuitBreaker, Request request) {
+        CareLinkMetrics metrics = this.metrics;
+        String host = getHostKey(request.url());
+        if (metrics != null)
+            metrics.recordShortCircuit(request.url());
+        return new CircuitOpenException(host, circuitBreaker.getRetryAfterMillis(host));
+    }
+
+    protected void recordRetry(Request request) {
+        CareLinkMetrics metrics = this.metrics;
+        if (metrics != null)
+            metrics.recordRetry(request.url());
+    }
+
+    // Circuits are per host and port
+    protected static String getHostKey(HttpUrl url) {
+        return url.host() + ":" + url.port();
+    }
+
+    // Data request for API calls
+    protected <T> CareLinkResult<T> getData(HttpUrl url, RequestBody requestBody, Class<T> dataClass) {
+        return this.getData(url, requestBody, dataClass, this.getGson(false));
+    }
+
+    protected <T> CareLinkResult<T> getData(HttpUrl url, RequestBody requestBody, Class<T> dataClass, Gson gson) {
+
+        CareLinkResult<T> result = null;
+
+        // Get auth token
+        String authToken = this.getAuthorizationToken();
+
+        if (authToken != null)
+            result = this.getData(url, requestBody, dataClass, authToken, gson);
+
+        // Token rejected: new login, then the request once more
+        if (result != null && this.isLoginRenewalNeeded(result)) {
+            authToken = this.getAuthorizationToken();
+            if (authToken != null)
+                result = this.getData(url, requestBody, dataClass, authToken, gson);
+        }
+
+        //Return result
+        return this.publish(authToken != null ? result : this.loginFailed());
+
+    }
+
+    protected <T> CareLinkResult<T> getData(HttpUrl url, RequestBody requestBody, Class<T> dataClass, String authToken) {
+        return this.getData(url, requestBody, dataClass, authToken, this.getGson(false));
+    }
+
+    protected <T> CareLinkResult<T> getData(HttpUrl url, RequestBody requestBody, Class<T> dataClass, String authToken, Gson gson) {
+
+        long start = System.nanoTime();
+        Response response = null;
+
+        // Send request
+        try {
+            response = this.executeWithRetry(this.buildDataRequest(url, requestBody, authToken));
+        } catch (IOException e) {
+            return CareLinkResult.failure(0, e.getMessage(), e, null, System.nanoTime() - start);
+        }
+
+        return this.readData(response, dataClass, gson, start);
+
+    }
+
+    // Async data request, errors are reported in the result the same way as by getData
+    protected <T> CompletableFuture<CareLinkResult<T>> getDataAsync(HttpUrl url, RequestBody requestBody, Class<T> dataClass) {
+        return this.getDataAsync(url, requestBody, dataClass, this.getGson(false));
+    }
+
+    protected <T> CompletableFuture<CareLinkResult<T>> getDataAsync(HttpUrl url, RequestBody requestBody, Class<T> dataClass, Gson gson) {
+
+        // Get auth token
+        return this.getAuthorizedDataAsync(url, requestBody, dataClass, gson).thenCompose(result -> {
+
+            // Token rejected: new login, then the request once more
+            if (this.isLoginRenewalNeeded(result))
+                return this.getAuthorizedDataAsync(url, requestBody, dataClass, gson);
+
+            return CompletableFuture.completedFuture(result);
+
+        }).thenApply(this::publish);
+
+    }
+
+    protected <T> CompletableFuture<CareLinkResult<T>> getAuthorizedDataAsync(HttpUrl url, RequestBody requestBody, Class<T> dataClass, Gson gson) {
+
+        return this.getAuthorizationTokenAsync().thenCompose(authToken -> {
+
+            if (authToken == null)
+                return CompletableFuture.completedFuture(this.<T>loginFailed());
+
+            return this.getDataAsync(url, requestBody, dataClass, authToken, gson);
+
+        });
+
+    }
+
+    // Response was 401 and the retry policy renews the login for it
+    protected boolean isLoginRenewalNeeded(CareLinkResult<?> result) {
+        return result.getResponseCode() == 401 && this.retryPolicy.getAction(401) == RetryPolicy.Action.RENEW_LOGIN;
+    }
+
+    // Result of a call not sent for lack of a session, with the reason of the failed login
+    protected <T> CareLinkResult<T> loginFailed() {
+        CareLinkResult<Boolean> loginResult = this.lastLoginResult;
+        return loginResult == null || loginResult.isSuccess() ? CareLinkResult.failure(0, "Login failed", null, null, 0)
+                : loginResult.withoutData();
+    }
+
+    // Result of the call becomes the last result of the client (legacy getLast* getters)
+    protected <T> CareLinkResult<T> publish(CareLinkResult<T> result) {
+        this.lastResult = result;
+        return result;
+    }
+
+    protected <T> CompletableFuture<CareLinkResult<T>> getDataAsync(HttpUrl url, RequestBody requestBody, Class<T> dataClass, String authToken) {
+        return this.getDataAsync(url, requestBody, dataClass, authToken, this.getGson(false));
+    }
+
+    protected <T> CompletableFuture<CareLinkResult<T>> getDataAsync(HttpUrl url, RequestBody requestBody, Class<T> dataClass, String authToken, Gson gson) {
+
+        long start = System.nanoTime();
+
+        // Send request
+        return this.executeWithRetryAsync(this.buildDataRequest(url, requestBody, authToken))
+                .handle((response, ex) -> {
+                    Throwable cause = (ex instanceof CompletionException && ex.getCause() != null) ? ex.getCause() : ex;
+                    if (cause != null)
+                        return CareLinkResult.<T>failure(0, cause.getMessage(), cause, null, System.nanoTime() - start);
+                    return this.readData(response, dataClass, gson, start);
+                });
+
+    }
+
+    protected Request buildDataRequest(HttpUrl url, RequestBody requestBody, String authToken) {
+
+        // Create request for URL with authToken
+        Request.Builder requestBuilder = new Request.Builder().url(url).addHeader("Authorization", authToken);
+        RecentDataSnapshot snapshot = this.recentDataSnapshot;
+
+        // Conditional request for the same RecentData endpoint, if the server sent validators
+        if (this.skipUnchangedRecentData && snapshot != null && snapshot.endpoint.equals(getEndpoint(url))) {
+            if (snapshot.etag != null)
+                requestBuilder.addHeader("If-None-Match", snapshot.etag);
+            if (snapshot.lastModified != null)
+                requestBuilder.addHeader("If-Modified-Since", snapshot.lastModified);
+        }
+
+        // Add header
+        if (requestBody == null) {
+            this.addHttpHeaders(requestBuilder, RequestType.Json);
+        } else {
+            requestBuilder.post(requestBody);
+            this.addHttpHeaders(requestBuilder, RequestType.HtmlPost);
+        }
+
+        return requestBuilder.build();
+
+    }
+
+    // Gson of the client's parse options, device time correction is only needed for some endpoints
+    protected Gson getGson(boolean correctDeviceTime) {
+        return CareLinkGson.getGson(this.compactSensorGlucose, correctDeviceTime);
+    }
+
+    protected <T> CareLinkResult<T> readData(Response response, Class<T> dataClass) {
+        return this.readData(response, dataClass, this.getGson(false), System.nanoTime());
+    }
+
+    // Parse errors are reported in the result, the response is always closed
+    @SuppressWarnings("unchecked")
+    protected <T> CareLinkResult<T> readData(Response response, Class<T> dataClass, Gson gson, long start) {
+
+        T data = null;
+        String responseBody = null;
+
+        if (this.skipUnchangedRecentData && dataClass == RecentData.class && !isReportUrl(response.request().url()))
+            return (CareLinkResult<T>) this.readRecentData(response, gson, start);
+
+        long parseStart;
+
+        try {
+            this.checkAuthorization(response);
+            if (!response.isSuccessful())
+                return CareLinkResult.failure(response.code(), null, null, this.captureBody(response), System.nanoTime() - start);
+            // Streamed binding: parse time includes reading the body
+            parseStart = System.nanoTime();
+            if (this.captureResponseBody) {
+                responseBody = response.body().string();
+                data = gson.fromJson(responseBody, dataClass);
+            } else {
+                // Bind directly from the body stream, no full body String in memory
+                data = gson.fromJson(response.body().charStream(), dataClass);
+            }
+            this.recordParse(response, parseStart);
+            return CareLinkResult.success(response.code(), data, responseBody, System.nanoTime() - start);
+        } catch (Exception e) {
+            return CareLinkResult.failure(response.code(), e.getMessage(), e, responseBody, System.nanoTime() - start);
+        } finally {
+            response.close();
+        }
+
+    }
+
+    // Body is buffered and digested before binding, a repeated response is not parsed again
+    // Not modified results share the previously parsed instance (read only, it is never changed by the client)
+    protected CareLinkResult<RecentData> readRecentData(Response response, Gson gson, long start) {
+
+        RecentData data = null;
+        RecentDataSnapshot snapshot = this.recentDataSnapshot;
+        String endpoint = getEndpoint(response.request().url());
+        Buffer body = null;
+        ByteString digest = null;
+        MediaType contentType = null;
+        Charset charset = null;
+        String responseBody = null;
+        long parseStart;
+
+        try {
+            this.checkAuthorization(response);
+            if (snapshot != null && !snapshot.matches(endpoint, gson))
+                snapshot = null;
+            // Not modified according to the conditional request
+            if (response.code() == 304 && snapshot != null)
+                return CareLinkResult.notModified(response.code(), snapshot.data, null, System.nanoTime() - start);
+            if (!response.isSuccessful())
+                return CareLinkResult.failure(response.code(), null, null, this.captureBody(response), System.nanoTime() - start);
+            body = new Buffer();
+            response.body().source().readAll(body);
+            contentType = response.body().contentType();
+            charset = contentType == null ? StandardCharsets.UTF_8 : contentType.charset(StandardCharsets.UTF_8);
+            if (this.captureResponseBody)
+                responseBody = body.clone().readString(charset);
+            // Digest is only used to recognize a repeated response, it is compared before any binding
+            digest = body.md5();
+            if (snapshot != null && snapshot.digest.equals(digest))
+                return CareLinkResult.notModified(response.code(), snapshot.data, responseBody, System.nanoTime() - start);
+            parseStart = System.nanoTime();
+            data = gson.fromJson(new InputStreamReader(body.inputStream(), charset), RecentData.class);
+            this.recordParse(response, parseStart);
+            if (data != null)
+                this.recentDataSnapshot = new RecentDataSnapshot(endpoint, gson, digest,
+                        response.header("ETag"), response.header("Last-Modified"), data);
+            return CareLinkResult.success(response.code(), data, responseBody, System.nanoTime() - start);
+        } catch (Exception e) {
+            return CareLinkResult.failure(response.code(), e.getMessage(), e, responseBody, System.nanoTime() - start);
+        } finally {
+            response.close();
+        }
+
+    }
+
+    // 401: the token of the request is not used again, the next call logs in first
+    protected void checkAuthorization(Response response) {
+        if (response.code() == 401)
+            this.rejectedAuthToken = response.request().header("Authorization");
+    }
+
+    // Raw body, only if bodies are captured
+    protected String captureBody(Response response) {
+        if (!this.captureResponseBody)
+            return null;
+        try {
+            return response.body().string();
+        } catch (Exception ex) {
             return null;
+        }
+    }
 
+    protected void recordParse(Response response, long parseStart) {
+        CareLinkMetrics metrics = this.metrics;
+        if (metrics != null)
+            metrics.recordParse(response.request().url(), System.nanoTime() - parseStart);
     }
 
-    protected <T> T getData(String host, String path, Map<String, String> queryParams, RequestBody requestBody,
-                            Class<T> dataClass) {
+    // Report data are history ranges, never compared to the previous poll
+    protected static boolean isReportUrl(HttpUrl url) {
+        return url.encodedPath().startsWith("/" + API_PATH_REPORTS);
+    }
+
+    // Query parameters differ per call (e.g. requestTime), the endpoint is the host and path
+    protected static String getEndpoint(HttpUrl url) {
+        return url.host() + url.encodedPath();
+    }
+
+    protected <T> CareLinkResult<T> getData(String host, String path, Map<String, String> queryParams, RequestBody requestBody,
+                                           Class<T> dataClass) {
+        return this.getData(this.buildUrl(host, path, queryParams), requestBody, dataClass);
+    }
+
+    protected <T> CompletableFuture<CareLinkResult<T>> getDataAsync(String host, String path, Map<String, String> queryParams,
+                                                                    RequestBody requestBody, Class<T> dataClass) {
+        return this.getDataAsync(this.buildUrl(host, path, queryParams), requestBody, dataClass);
+    }
+
+    // Https URL of the host, or of the server override
+    protected HttpUrl.Builder newUrlBuilder(String host) {
+
+        HttpUrl serverUrl = CARELINK_LOGIN_SERVER.equals(host) ? this.loginServerUrl : this.careLinkServerUrl;
+
+        if (serverUrl == null)
+            return new HttpUrl.Builder().scheme("https").host(host);
+        else
+            return new HttpUrl.Builder().scheme(serverUrl.scheme()).host(serverUrl.host()).port(serverUrl.port());
+
+    }
+
+    protected HttpUrl buildUrl(String host, String path, Map<String, String> queryParams) {
 
         HttpUrl.Builder urlBuilder = null;
         HttpUrl url = null;
 
         // Build url
-        urlBuilder = new HttpUrl.Builder().scheme("https").host(host).addPathSegments(path);
+        urlBuilder = this.newUrlBuilder(host).addPathSegments(path);
         if (queryParams != null) {
             for (Map.Entry<String, String> param : queryParams.entrySet()) {
                 urlBuilder.addQueryParameter(param.getKey(), param.getValue());
@@ -490,10 +1665,11 @@ public class CareLinkClient {
 
         url = urlBuilder.build();
 
-        return this.getData(url, requestBody, dataClass);
+        return url;
 
     }
 
+    // Same correction as done while parsing connect display messages, for already parsed data
     protected void correctTimeInRecentData(RecentData recentData){
 
         if(recentData.sMedicalDeviceTime != null &&  recentData.lastMedicalDeviceDataUpdateServerTime > 1) {
@@ -516,6 +1692,9 @@ public class CareLinkClient {
                         sg.datetime = shiftDateByHours(sg.datetime, diffInHour);
                     }
                 }
+                if(recentData.sgSeries != null){
+                    recentData.sgSeries.shiftTimes(diffInHour * 3600000L);
+                }
                 //Markers
                 if(recentData.markers != null){
                     for (Marker marker : recentData.markers) {
@@ -543,10 +1722,7 @@ public class CareLinkClient {
 
     protected Date shiftDateByHours(Date date, int hours){
         if(date != null) {
-            Calendar calendar = Calendar.getInstance();
-            calendar.setTime(date);
-            calendar.add(Calendar.HOUR_OF_DAY, hours);
-            return calendar.getTime();
+            return new Date(date.getTime() + hours * 3600000L);
         } else {
             return  null;
         }
@@ -0,0 +1,237 @@
+package info.nightscout.medtronic.carelink.client;
+
+import info.nightscout.medtronic.carelink.metrics.CareLinkMetrics;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Builder of CareLinkClients sharing one transport
+// The transport (dispatcher, connection pool, timeouts, protocols) is built once per builder, from the given
+// OkHttpClient or from scratch. Every client built by the same builder derives its OkHttpClient from it with its
+// own cookie jar, so many accounts multiplex over the same warm connections.
+//
+//   CareLinkClientBuilder fleet = CareLinkClient.builder().maxRequestsPerHost(64).connectionPool(32, 5, TimeUnit.MINUTES);
+//   CareLinkClient client = fleet.build("carelink_username", "carelink_password", "carelink_country_code");
+public class CareLinkClientBuilder {
+
+    // Credentials of build()
+    protected String username;
+    protected String password;
+    protected String country;
+
+    // Transport
+    protected OkHttpClient httpClient;
+    protected int maxIdleConnections = -1;
+    protected long keepAliveMillis = -1;
+    protected int maxRequests = -1;
+    protected int maxRequestsPerHost = -1;
+    protected long connectTimeoutMillis = -1;
+    protected long readTimeoutMillis = -1;
+    protected long writeTimeoutMillis = -1;
+    protected long callTimeoutMillis = -1;
+    protected List<Protocol> protocols;
+    protected OkHttpClient transport;
+
+    // Client options
+    protected CareLinkSessionStore sessionStore;
+    protected CareLinkMetrics metrics;
+    protected RetryPolicy retryPolicy;
+    protected CircuitBreaker circuitBreaker = CircuitBreaker.getDefault();
+    protected boolean captureResponseBody = false;
+    protected boolean compactSensorGlucose = false;
+    protected boolean skipUnchangedRecentData = false;
+    protected String careLinkServerUrl;
+    protected String loginServerUrl;
+
+    public CareLinkClientBuilder credentials(String username, String password, String country) {
+        this.username = username;
+        this.password = password;
+        this.country = country;
+        return this;
+    }
+
+    // External OkHttpClient (e.g. shared with other parts of the application), its dispatcher and pool are kept
+    // unless changed by the settings below
+    public synchronized CareLinkClientBuilder httpClient(OkHttpClient httpClient) {
+        this.httpClient = httpClient;
+        this.transport = null;
+        return this;
+    }
+
+    // Idle connections kept per pool and how long (default 5 connections for 10 minutes)
+    public synchronized CareLinkClientBuilder connectionPool(int maxIdleConnections, long keepAlive, TimeUnit unit) {
+        this.maxIdleConnections = maxIdleConnections;
+        this.keepAliveMillis = unit.toMillis(keepAlive);
+        this.transport = null;
+        return this;
+    }
+
+    // Concurrent async calls in total (OkHttp default 64)
+    public synchronized CareLinkClientBuilder maxRequests(int maxRequests) {
+        this.maxRequests = maxRequests;
+        this.transport = null;
+        return this;
+    }
+
+    // Concurrent async calls per host (OkHttp default 5, too low for many accounts on the same CareLink host)
+    public synchronized CareLinkClientBuilder maxRequestsPerHost(int maxRequestsPerHost) {
+        this.maxRequestsPerHost = maxRequestsPerHost;
+        this.transport = null;
+        return this;
+    }
+
+    public synchronized CareLinkClientBuilder connectTimeout(long timeout, TimeUnit unit) {
+        this.connectTimeoutMillis = unit.toMillis(timeout);
+        this.transport = null;
+        return this;
+    }
+
+    public synchronized CareLinkClientBuilder readTimeout(long timeout, TimeUnit unit) {
+        this.readTimeoutMillis = unit.toMillis(timeout);
+        this.transport = null;
+        return this;
+    }
+
+    public synchronized CareLinkClientBuilder writeTimeout(long timeout, TimeUnit unit) {
+        this.writeTimeoutMillis = unit.toMillis(timeout);
+        this.transport = null;
+        return this;
+    }
+
+    // Whole call including redirects and body (default none)
+    public synchronized CareLinkClientBuilder callTimeout(long timeout, TimeUnit unit) {
+        this.callTimeoutMillis = unit.toMillis(timeout);
+        this.transport = null;
+        return this;
+    }
+
+    // E.g. HTTP_1_1 only, if a proxy does not handle HTTP/2 well (HTTP_1_1 is always added, OkHttp requires it)
+    public synchronized CareLinkClientBuilder protocols(List<Protocol> protocols) {
+        this.protocols = new ArrayList<>(protocols);
+        if (!this.protocols.contains(Protocol.HTTP_1_1) && !this.protocols.contains(Protocol.H2_PRIOR_KNOWLEDGE))
+            this.protocols.add(Protocol.HTTP_1_1);
+        this.transport = null;
+        return this;
+    }
+
+    public CareLinkClientBuilder sessionStore(CareLinkSessionStore sessionStore) {
+        this.sessionStore = sessionStore;
+        return this;
+    }
+
+    public CareLinkClientBuilder metrics(CareLinkMetrics metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
+    // Each client gets this instance, policies are not changed by the clients
+    public CareLinkClientBuilder retryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+        return this;
+    }
+
+    // Null: no circuit breaker (default: the JVM wide one)
+    public CareLinkClientBuilder circuitBreaker(CircuitBreaker circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+        return this;
+    }
+
+    public CareLinkClientBuilder captureResponseBody(boolean captureResponseBody) {
+        this.captureResponseBody = captureResponseBody;
+        return this;
+    }
+
+    public CareLinkClientBuilder compactSensorGlucose(boolean compactSensorGlucose) {
+        this.compactSensorGlucose = compactSensorGlucose;
+        return this;
+    }
+
+    public CareLinkClientBuilder skipUnchangedRecentData(boolean skipUnchangedRecentData) {
+        this.skipUnchangedRecentData = skipUnchangedRecentData;
+        return this;
+    }
+
+    // Server overrides (e.g. local stand-in server for tests)
+    public CareLinkClientBuilder serverUrls(String careLinkServerUrl, String loginServerUrl) {
+        this.careLinkServerUrl = careLinkServerUrl;
+        this.loginServerUrl = loginServerUrl;
+        return this;
+    }
+
+    // Shared transport of the clients of this builder, built at the first call (and again after a transport setting changed)
+    public synchronized OkHttpClient buildHttpClient() {
+
+        OkHttpClient.Builder builder = null;
+        Dispatcher dispatcher = null;
+
+        if (transport != null)
+            return transport;
+
+        builder = httpClient != null ? httpClient.newBuilder() : new OkHttpClient.Builder()
+                .connectionPool(new ConnectionPool(CareLinkClient.DEFAULT_MAX_IDLE_CONNECTIONS, CareLinkClient.DEFAULT_KEEP_ALIVE_MINUTES, TimeUnit.MINUTES));
+
+        if (maxIdleConnections >= 0 || keepAliveMillis >= 0) {
+            builder.connectionPool(new ConnectionPool(
+                    maxIdleConnections >= 0 ? maxIdleConnections : CareLinkClient.DEFAULT_MAX_IDLE_CONNECTIONS,
+                    keepAliveMillis >= 0 ? keepAliveMillis : TimeUnit.MINUTES.toMillis(CareLinkClient.DEFAULT_KEEP_ALIVE_MINUTES),
+                    TimeUnit.MILLISECONDS));
+        }
+        // New dispatcher, the limits of a given client's dispatcher are not changed (it may be used elsewhere)
+        if (maxRequests > 0 || maxRequestsPerHost > 0) {
+            dispatcher = httpClient != null ? new Dispatcher(httpClient.dispatcher().executorService()) : new Dispatcher();
+            if (maxRequests > 0)
+                dispatcher.setMaxRequests(maxRequests);
+            if (maxRequestsPerHost > 0)
+                dispatcher.setMaxRequestsPerHost(maxRequestsPerHost);
+            builder.dispatcher(dispatcher);
+        }
+        if (connectTimeoutMillis >= 0)
+            builder.connectTimeout(connectTimeoutMillis, TimeUnit.MILLISECONDS);
+        if (readTimeoutMillis >= 0)
+            builder.readTimeout(readTimeoutMillis, TimeUnit.MILLISECONDS);
+        if (writeTimeoutMillis >= 0)
+            builder.writeTimeout(writeTimeoutMillis, TimeUnit.MILLISECONDS);
+        if (callTimeoutMillis >= 0)
+            builder.callTimeout(callTimeoutMillis, TimeUnit.MILLISECONDS);
+        if (protocols != null)
+            builder.protocols(protocols);
+
+        transport = builder.build();
+
+        return transport;
+
+    }
+
+    public CareLinkClient build() {
+        if (username == null || password == null || country == null)
+            throw new IllegalStateException("Credentials are required");
+        return this.build(username, password, country);
+    }
+
+    // Client of another account with the same transport and options
+    public CareLinkClient build(String username, String password, String country) {
+
+        CareLinkClient client = new CareLinkClient(username, password, country, this.buildHttpClient());
+
+        client.setSessionStore(sessionStore);
+        client.setCaptureResponseBody(captureResponseBody);
+        client.setCompactSensorGlucose(compactSensorGlucose);
+        client.setSkipUnchangedRecentData(skipUnchangedRecentData);
+        if (retryPolicy != null)
+            client.setRetryPolicy(retryPolicy);
+        client.setCircuitBreaker(circuitBreaker);
+        if (careLinkServerUrl != null || loginServerUrl != null)
+            client.setServerUrls(careLinkServerUrl, loginServerUrl);
+        if (metrics != null)
+            client.setMetrics(metrics);
+
+        return client;
+
+    }
+
+}
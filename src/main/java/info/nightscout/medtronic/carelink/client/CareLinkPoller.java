@@ -0,0 +1,198 @@
+package info.nightscout.medtronic.carelink.client;
+
+import info.nightscout.medtronic.carelink.message.RecentData;
+import info.nightscout.medtronic.carelink.message.RecentDataDelta;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class CareLinkPoller {
+
+    protected static final int DEFAULT_WORKER_THREADS = 16;
+    protected static final int DEFAULT_MAX_IDLE_CONNECTIONS = 16;
+    protected static final int DEFAULT_KEEP_ALIVE_MINUTES = 5;
+    protected static final int DEFAULT_MAX_REQUESTS = 256;
+    protected static final int DEFAULT_REFRESH_LEAD_MINUTES = 5;
+
+    public interface Listener {
+        void onRecentData(String accountId, RecentData recentData);
+        void onError(String accountId, int responseCode, String errorMessage);
+        // Only the items which are new since the previous poll of the account
+        default void onRecentDataDelta(String accountId, RecentDataDelta delta) { }
+    }
+
+    protected static class Account {
+
+        protected final String accountId;
+        protected final CareLinkClient client;
+        protected final Listener listener;
+        protected final AtomicBoolean polling = new AtomicBoolean(false);
+        protected ScheduledFuture<?> schedule;
+
+        protected Account(String accountId, CareLinkClient client, Listener listener) {
+            this.accountId = accountId;
+            this.client = client;
+            this.listener = listener;
+        }
+
+    }
+
+    //Shared transport and client options of the accounts
+    protected final CareLinkClientBuilder clientBuilder;
+    protected final boolean ownTransport;
+
+    //Scheduling
+    protected final ScheduledExecutorService scheduler;
+    protected final ExecutorService workers;
+    protected final boolean ownWorkers;
+    protected final long pollIntervalMillis;
+    protected final Random random = new Random();
+
+    //Session persistence (restarted poller resumes valid sessions)
+    protected CareLinkSessionStore sessionStore;
+    public void setSessionStore(CareLinkSessionStore sessionStore) {
+        this.sessionStore = sessionStore;
+    }
+
+    //Accounts
+    protected final Map<String, Account> accounts = new ConcurrentHashMap<>();
+    public int getAccountCount() {
+        return accounts.size();
+    }
+
+    public CareLinkPoller(long pollInterval, TimeUnit unit) {
+        this(pollInterval, unit, Executors.newFixedThreadPool(DEFAULT_WORKER_THREADS), true, null);
+    }
+
+    // Workers can be any executor, e.g. a virtual thread per task executor on newer JVMs
+    public CareLinkPoller(long pollInterval, TimeUnit unit, ExecutorService workers) {
+        this(pollInterval, unit, workers, false, null);
+    }
+
+    // Clients of the accounts are built by the given builder (transport, retry policy, metrics...), credentials are set per account
+    public CareLinkPoller(long pollInterval, TimeUnit unit, ExecutorService workers, CareLinkClientBuilder clientBuilder) {
+        this(pollInterval, unit, workers, false, Objects.requireNonNull(clientBuilder));
+    }
+
+    protected CareLinkPoller(long pollInterval, TimeUnit unit, ExecutorService workers, boolean ownWorkers, CareLinkClientBuilder clientBuilder) {
+
+        this.pollIntervalMillis = unit.toMillis(pollInterval);
+        this.workers = workers;
+        this.ownWorkers = ownWorkers;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor();
+        this.ownTransport = clientBuilder == null;
+        this.clientBuilder = clientBuilder == null ? newClientBuilder() : clientBuilder;
+
+    }
+
+    // One dispatcher and connection pool for all accounts (every account talks to the same few hosts)
+    protected static CareLinkClientBuilder newClientBuilder() {
+        return CareLinkClient.builder()
+                .maxRequests(DEFAULT_MAX_REQUESTS)
+                .maxRequestsPerHost(DEFAULT_MAX_REQUESTS)
+                .connectionPool(DEFAULT_MAX_IDLE_CONNECTIONS, DEFAULT_KEEP_ALIVE_MINUTES, TimeUnit.MINUTES);
+    }
+
+    // Add account and start polling it, first poll is spread randomly over the first interval
+    public CareLinkClient addAccount(String accountId, String username, String password, String country, Listener listener) {
+
+        Account account = null;
+        long initialDelay;
+
+        account = new Account(accountId, clientBuilder.build(username, password, country), listener);
+        if (sessionStore != null)
+            account.client.setSessionStore(sessionStore);
+        // Sessions are renewed in the background, polls never wait for a login of a valid session
+        account.client.enableBackgroundRefresh(scheduler, DEFAULT_REFRESH_LEAD_MINUTES, TimeUnit.MINUTES);
+        if (accounts.putIfAbsent(accountId, account) != null)
+            throw new IllegalArgumentException("Account already added: " + accountId);
+
+        synchronized (random) {
+            initialDelay = (long) (random.nextDouble() * pollIntervalMillis);
+        }
+
+        final Account scheduledAccount = account;
+        account.schedule = scheduler.scheduleAtFixedRate(() -> submitPoll(scheduledAccount),
+                initialDelay, pollIntervalMillis, TimeUnit.MILLISECONDS);
+
+        return account.client;
+
+    }
+
+    public void removeAccount(String accountId) {
+
+        Account account = accounts.remove(accountId);
+
+        if (account != null) {
+            if (account.schedule != null)
+                account.schedule.cancel(false);
+            account.client.disableBackgroundRefresh();
+        }
+
+    }
+
+    public CareLinkClient getClient(String accountId) {
+        Account account = accounts.get(accountId);
+        return account == null ? null : account.client;
+    }
+
+    public void shutdown() {
+
+        for (Account account : accounts.values()) {
+            if (account.schedule != null)
+                account.schedule.cancel(false);
+        }
+        accounts.clear();
+
+        scheduler.shutdownNow();
+        if (ownWorkers)
+            workers.shutdownNow();
+
+        // A given builder's transport may be used elsewhere too
+        if (ownTransport) {
+            clientBuilder.buildHttpClient().dispatcher().executorService().shutdown();
+            clientBuilder.buildHttpClient().connectionPool().evictAll();
+        }
+
+    }
+
+    // Skip this round if the previous poll of the account is still running
+    protected void submitPoll(Account account) {
+
+        if (!account.polling.compareAndSet(false, true))
+            return;
+
+        try {
+            workers.execute(() -> poll(account));
+        } catch (RejectedExecutionException ex) {
+            account.polling.set(false);
+        }
+
+    }
+
+    protected void poll(Account account) {
+
+        CareLinkResult<RecentData> result = null;
+
+        try {
+            result = account.client.getRecentDataResult();
+            // Same response as the previous poll, nothing new to report
+            if (result.isNotModified())
+                return;
+            if (result.getData() != null) {
+                account.listener.onRecentData(account.accountId, result.getData());
+                account.listener.onRecentDataDelta(account.accountId, account.client.getRecentDataWatermark().update(result.getData()));
+            } else
+                account.listener.onError(account.accountId, result.getResponseCode(), result.getErrorMessage());
+        } catch (Exception ex) {
+            account.listener.onError(account.accountId, result == null ? 0 : result.getResponseCode(), ex.getMessage());
+        } finally {
+            account.polling.set(false);
+        }
+
+    }
+
+}
@@ -0,0 +1,112 @@
+package info.nightscout.medtronic.carelink.client;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+// Outcome of one CareLinkClient call: data, response code, timing, error and raw body (if captured)
+// Every call gets its own immutable result, concurrent calls of the same client don't overwrite each other
+public class CareLinkResult<T> {
+
+    protected final T data;
+    protected final boolean success;
+    protected final int responseCode;
+    protected final String errorMessage;
+    protected final Throwable error;
+    protected final String responseBody;
+    protected final long elapsedNanos;
+    protected final boolean notModified;
+
+    protected CareLinkResult(T data, boolean success, int responseCode, String errorMessage, Throwable error, String responseBody,
+                             long elapsedNanos) {
+        this(data, success, responseCode, errorMessage, error, responseBody, elapsedNanos, false);
+    }
+
+    protected CareLinkResult(T data, boolean success, int responseCode, String errorMessage, Throwable error, String responseBody,
+                             long elapsedNanos, boolean notModified) {
+        this.data = data;
+        this.success = success;
+        this.responseCode = responseCode;
+        this.errorMessage = errorMessage;
+        this.error = error;
+        this.responseBody = responseBody;
+        this.elapsedNanos = elapsedNanos;
+        this.notModified = notModified;
+    }
+
+    public static <T> CareLinkResult<T> success(int responseCode, T data, String responseBody, long elapsedNanos) {
+        return new CareLinkResult<>(data, true, responseCode, null, null, responseBody, elapsedNanos);
+    }
+
+    // Same response as the previous call, data is the instance parsed by that call
+    public static <T> CareLinkResult<T> notModified(int responseCode, T data, String responseBody, long elapsedNanos) {
+        return new CareLinkResult<>(data, true, responseCode, null, null, responseBody, elapsedNanos, true);
+    }
+
+    // Error message is null if the server answered with an error code (no exception)
+    public static <T> CareLinkResult<T> failure(int responseCode, String errorMessage, Throwable error, String responseBody,
+                                                long elapsedNanos) {
+        return new CareLinkResult<>(null, false, responseCode, errorMessage, error, responseBody, elapsedNanos);
+    }
+
+    // Same outcome without data, e.g. a failed login as the result of the data call waiting for it
+    public <U> CareLinkResult<U> withoutData() {
+        return new CareLinkResult<>(null, false, responseCode, errorMessage, error, responseBody, elapsedNanos);
+    }
+
+    // Null if the call failed (a successful call may have null data too, e.g. a "null" body)
+    public T getData() {
+        return data;
+    }
+
+    // Successful response, parsed without error
+    public boolean isSuccess() {
+        return success;
+    }
+
+    // Nothing new since the previous call of the client (only if unchanged responses are detected)
+    public boolean isNotModified() {
+        return notModified;
+    }
+
+    // 0 if there was no response (network error, open circuit, no session)
+    public int getResponseCode() {
+        return responseCode;
+    }
+
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    public Throwable getError() {
+        return error;
+    }
+
+    public String getStackTraceString() {
+        StringWriter writer = null;
+        if (error == null)
+            return null;
+        writer = new StringWriter();
+        error.printStackTrace(new PrintWriter(writer));
+        return writer.toString();
+    }
+
+    // Only kept if the client captures response bodies
+    public String getResponseBody() {
+        return responseBody;
+    }
+
+    // Request (with retries) and parsing, without waiting for a login
+    public long getElapsed(TimeUnit unit) {
+        return unit.convert(elapsedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public String toString() {
+        return "CareLinkResult{success=" + success + ", responseCode=" + responseCode
+                + (notModified ? ", notModified=true" : "")
+                + (errorMessage == null ? "" : ", errorMessage=" + errorMessage)
+                + ", elapsedMillis=" + this.getElapsed(TimeUnit.MILLISECONDS) + "}";
+    }
+
+}
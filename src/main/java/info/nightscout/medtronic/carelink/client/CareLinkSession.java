@@ -0,0 +1,77 @@
+package info.nightscout.medtronic.carelink.client;
+
+import info.nightscout.medtronic.carelink.message.CountrySettings;
+import info.nightscout.medtronic.carelink.message.MonitorData;
+import info.nightscout.medtronic.carelink.message.Profile;
+import info.nightscout.medtronic.carelink.message.User;
+import okhttp3.Cookie;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Persistable login session: auth cookies and the session infos loaded after login
+public class CareLinkSession {
+
+    public static class StoredCookie {
+
+        public String name;
+        public String value;
+        public long expiresAt;
+        public String domain;
+        public String path;
+        public boolean secure;
+        public boolean httpOnly;
+        public boolean persistent;
+        public boolean hostOnly;
+
+        public static StoredCookie fromCookie(Cookie cookie) {
+
+            StoredCookie storedCookie = new StoredCookie();
+
+            storedCookie.name = cookie.name();
+            storedCookie.value = cookie.value();
+            storedCookie.expiresAt = cookie.expiresAt();
+            storedCookie.domain = cookie.domain();
+            storedCookie.path = cookie.path();
+            storedCookie.secure = cookie.secure();
+            storedCookie.httpOnly = cookie.httpOnly();
+            storedCookie.persistent = cookie.persistent();
+            storedCookie.hostOnly = cookie.hostOnly();
+
+            return storedCookie;
+
+        }
+
+        public Cookie toCookie() {
+
+            Cookie.Builder builder = new Cookie.Builder().name(name).value(value).path(path);
+
+            if (hostOnly)
+                builder.hostOnlyDomain(domain);
+            else
+                builder.domain(domain);
+            if (persistent)
+                builder.expiresAt(expiresAt);
+            if (secure)
+                builder.secure();
+            if (httpOnly)
+                builder.httpOnly();
+
+            return builder.build();
+
+        }
+
+    }
+
+    public long savedAt;
+    public List<StoredCookie> cookies = new ArrayList<>();
+    public User user;
+    public Profile profile;
+    public CountrySettings countrySettings;
+    public MonitorData monitorData;
+
+    public boolean isComplete() {
+        return cookies != null && !cookies.isEmpty() && user != null && profile != null && countrySettings != null && monitorData != null;
+    }
+
+}
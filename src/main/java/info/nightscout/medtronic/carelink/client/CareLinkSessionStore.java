@@ -0,0 +1,13 @@
+package info.nightscout.medtronic.carelink.client;
+
+// Storage of login sessions between client instances (process restarts)
+public interface CareLinkSessionStore {
+
+    // Stored session of the key or null
+    CareLinkSession load(String key);
+
+    void save(String key, CareLinkSession session);
+
+    void delete(String key);
+
+}
@@ -0,0 +1,211 @@
+package info.nightscout.medtronic.carelink.client;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+// Per host circuit breaker, shared by the clients calling the same servers (e.g. all accounts of a poller)
+// CLOSED: calls pass, outcomes are counted in a rolling time window (buckets of a tenth of the window)
+// OPEN: too many failures in the window, calls fail fast without a request until the open period ends
+// HALF_OPEN: a few probe calls pass, a success closes the circuit, a failure opens it again for a doubled period
+// Failures are network errors, 5xx and 429 responses (other 4xx mean the server itself is working)
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    public static final long DEFAULT_WINDOW_MILLIS = TimeUnit.SECONDS.toMillis(10);
+    public static final int DEFAULT_MIN_REQUESTS = 20;
+    public static final double DEFAULT_FAILURE_RATE = 0.5;
+    public static final long DEFAULT_OPEN_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    public static final long DEFAULT_MAX_OPEN_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    public static final int DEFAULT_HALF_OPEN_PROBES = 1;
+
+    private static final int WINDOW_BUCKETS = 10;
+    private static final CircuitBreaker DEFAULT = new CircuitBreaker();
+
+    protected final long bucketMillis;
+    protected final int minRequests;
+    protected final double failureRate;
+    protected final long openMillis;
+    protected final long maxOpenMillis;
+    protected final int halfOpenProbes;
+    protected final LongSupplier clock;
+    protected final Map<String, HostCircuit> hosts = new ConcurrentHashMap<>();
+
+    public CircuitBreaker() {
+        this(DEFAULT_WINDOW_MILLIS, DEFAULT_MIN_REQUESTS, DEFAULT_FAILURE_RATE, DEFAULT_OPEN_MILLIS, DEFAULT_MAX_OPEN_MILLIS,
+                DEFAULT_HALF_OPEN_PROBES);
+    }
+
+    // minRequests: outcomes needed in the window before the failure rate counts
+    public CircuitBreaker(long windowMillis, int minRequests, double failureRate, long openMillis, long maxOpenMillis, int halfOpenProbes) {
+        this(windowMillis, minRequests, failureRate, openMillis, maxOpenMillis, halfOpenProbes, System::currentTimeMillis);
+    }
+
+    // clock: current time in milliseconds (e.g. a manual clock in tests)
+    public CircuitBreaker(long windowMillis, int minRequests, double failureRate, long openMillis, long maxOpenMillis, int halfOpenProbes,
+                          LongSupplier clock) {
+        this.bucketMillis = Math.max(1, windowMillis / WINDOW_BUCKETS);
+        this.minRequests = Math.max(1, minRequests);
+        this.failureRate = failureRate;
+        this.openMillis = openMillis;
+        this.maxOpenMillis = Math.max(openMillis, maxOpenMillis);
+        this.halfOpenProbes = Math.max(1, halfOpenProbes);
+        this.clock = clock;
+    }
+
+    // JVM wide instance, used by the clients by default
+    public static CircuitBreaker getDefault() {
+        return DEFAULT;
+    }
+
+    // False: the call must not be sent (circuit open or enough probes running)
+    public boolean allowRequest(String host) {
+        return this.getCircuit(host).allowRequest(clock.getAsLong());
+    }
+
+    public void recordSuccess(String host) {
+        this.getCircuit(host).record(true, clock.getAsLong());
+    }
+
+    public void recordFailure(String host) {
+        this.getCircuit(host).record(false, clock.getAsLong());
+    }
+
+    public State getState(String host) {
+        HostCircuit circuit = hosts.get(host);
+        return circuit == null ? State.CLOSED : circuit.getState(clock.getAsLong());
+    }
+
+    // Remaining open time of the host, 0 if not open
+    public long getRetryAfterMillis(String host) {
+        HostCircuit circuit = hosts.get(host);
+        return circuit == null ? 0 : circuit.getRetryAfterMillis(clock.getAsLong());
+    }
+
+    public void reset(String host) {
+        hosts.remove(host);
+    }
+
+    protected HostCircuit getCircuit(String host) {
+        HostCircuit circuit = hosts.get(host);
+        return circuit != null ? circuit : hosts.computeIfAbsent(host, key -> new HostCircuit());
+    }
+
+    protected class HostCircuit {
+
+        protected State state = State.CLOSED;
+        // Bucket i counts the outcomes of bucket number bucketNumbers[i] (time / bucketMillis)
+        protected final long[] bucketNumbers = new long[WINDOW_BUCKETS];
+        protected final int[] requests = new int[WINDOW_BUCKETS];
+        protected final int[] failures = new int[WINDOW_BUCKETS];
+        protected long openUntil;
+        protected long nextOpenMillis = openMillis;
+        protected int probesInFlight;
+        protected long lastProbe;
+
+        protected synchronized boolean allowRequest(long now) {
+
+            if (state == State.OPEN) {
+                if (now < openUntil)
+                    return false;
+                state = State.HALF_OPEN;
+                probesInFlight = 0;
+            }
+            if (state == State.HALF_OPEN) {
+                // A probe without outcome (e.g. lost callback) does not block the circuit forever
+                if (probesInFlight >= halfOpenProbes && now - lastProbe < nextOpenMillis)
+                    return false;
+                probesInFlight++;
+                lastProbe = now;
+            }
+
+            return true;
+
+        }
+
+        protected synchronized void record(boolean success, long now) {
+
+            if (state == State.HALF_OPEN) {
+                probesInFlight = Math.max(0, probesInFlight - 1);
+                if (success) {
+                    state = State.CLOSED;
+                    nextOpenMillis = openMillis;
+                    this.resetWindow();
+                } else {
+                    this.open(now);
+                }
+                return;
+            }
+            // Late outcome of a call started before the circuit opened
+            if (state == State.OPEN)
+                return;
+
+            this.count(success, now);
+            if (this.isFailureRateExceeded(now))
+                this.open(now);
+
+        }
+
+        protected void count(boolean success, long now) {
+
+            long bucketNumber = now / bucketMillis;
+            int index = (int) (bucketNumber % WINDOW_BUCKETS);
+
+            if (bucketNumbers[index] != bucketNumber) {
+                bucketNumbers[index] = bucketNumber;
+                requests[index] = 0;
+                failures[index] = 0;
+            }
+            requests[index]++;
+            if (!success)
+                failures[index]++;
+
+        }
+
+        protected boolean isFailureRateExceeded(long now) {
+
+            long bucketNumber = now / bucketMillis;
+            int windowRequests = 0;
+            int windowFailures = 0;
+
+            for (int i = 0; i < WINDOW_BUCKETS; i++) {
+                if (bucketNumber - bucketNumbers[i] < WINDOW_BUCKETS) {
+                    windowRequests += requests[i];
+                    windowFailures += failures[i];
+                }
+            }
+
+            return windowRequests >= minRequests && windowFailures >= windowRequests * failureRate;
+
+        }
+
+        // Open period has jitter, processes sharing the servers don't probe at the same time
+        protected void open(long now) {
+            state = State.OPEN;
+            openUntil = now + nextOpenMillis / 2 + ThreadLocalRandom.current().nextLong(nextOpenMillis / 2 + 1);
+            nextOpenMillis = Math.min(nextOpenMillis * 2, maxOpenMillis);
+            this.resetWindow();
+        }
+
+        protected void resetWindow() {
+            Arrays.fill(requests, 0);
+            Arrays.fill(failures, 0);
+        }
+
+        protected synchronized State getState(long now) {
+            return state == State.OPEN && now >= openUntil ? State.HALF_OPEN : state;
+        }
+
+        protected synchronized long getRetryAfterMillis(long now) {
+            return state == State.OPEN ? Math.max(0, openUntil - now) : 0;
+        }
+
+    }
+
+}
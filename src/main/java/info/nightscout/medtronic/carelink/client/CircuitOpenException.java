@@ -0,0 +1,27 @@
+package info.nightscout.medtronic.carelink.client;
+
+import java.io.IOException;
+
+// Call not sent, the circuit of the host is open
+public class CircuitOpenException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    protected final String host;
+    protected final long retryAfterMillis;
+
+    public CircuitOpenException(String host, long retryAfterMillis) {
+        super("Circuit open for " + host + ", retry after " + retryAfterMillis + " ms");
+        this.host = host;
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+
+}
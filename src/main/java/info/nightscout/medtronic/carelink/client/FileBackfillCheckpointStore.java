@@ -0,0 +1,30 @@
+package info.nightscout.medtronic.carelink.client;
+
+// Checkpoint store keeping one json file per account key in a folder (can be the folder of the session store)
+public class FileBackfillCheckpointStore implements BackfillCheckpointStore {
+
+    protected static final String FILE_PREFIX = "backfill-";
+
+    // Saved after every chunk, an unreadable checkpoint means the ranges are fetched again
+    protected final JsonFileStore<BackfillCheckpoint> files;
+
+    public FileBackfillCheckpointStore(String folder) {
+        this.files = new JsonFileStore<>(folder, FILE_PREFIX, BackfillCheckpoint.class);
+    }
+
+    @Override
+    public BackfillCheckpoint load(String key) {
+        return files.load(key);
+    }
+
+    @Override
+    public void save(String key, BackfillCheckpoint checkpoint) {
+        files.save(key, checkpoint);
+    }
+
+    @Override
+    public void delete(String key) {
+        files.delete(key);
+    }
+
+}
@@ -0,0 +1,30 @@
+package info.nightscout.medtronic.carelink.client;
+
+// Session store keeping one json file per session key in a folder
+public class FileCareLinkSessionStore implements CareLinkSessionStore {
+
+    protected static final String FILE_PREFIX = "session-";
+
+    // Unreadable session is the same as no session
+    protected final JsonFileStore<CareLinkSession> files;
+
+    public FileCareLinkSessionStore(String folder) {
+        this.files = new JsonFileStore<>(folder, FILE_PREFIX, CareLinkSession.class);
+    }
+
+    @Override
+    public CareLinkSession load(String key) {
+        return files.load(key);
+    }
+
+    @Override
+    public void save(String key, CareLinkSession session) {
+        files.save(key, session);
+    }
+
+    @Override
+    public void delete(String key) {
+        files.delete(key);
+    }
+
+}
@@ -0,0 +1,291 @@
+package info.nightscout.medtronic.carelink.client;
+
+import okio.BufferedSource;
+import okio.ByteString;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+// First form of an HTML page with its input fields (e.g. the consent form of the login)
+// Parsed in one pass over the response source: text is skipped with indexOf, only tags are looked at,
+// reading stops at the end of the form (the rest of the page is not read)
+public class HtmlForm {
+
+    private static final ByteString COMMENT_START = ByteString.encodeUtf8("!--");
+    private static final ByteString COMMENT_END = ByteString.encodeUtf8("-->");
+    private static final ByteString END_TAG_START = ByteString.encodeUtf8("</");
+    // Bytes ending a tag or attribute name
+    private static final boolean[] NAME_END = new boolean[256];
+    private static final int MAX_ENTITY_LENGTH = 10;
+
+    static {
+        for (char c : " \t\n\r\f>/=".toCharArray())
+            NAME_END[c] = true;
+    }
+
+    protected String action;
+    protected String method;
+    protected final Map<String, String> fields = new LinkedHashMap<>();
+
+    public String getAction() {
+        return action;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    // Value of the first input with the name, null if there is no such input
+    public String getField(String name) {
+        return fields.get(name);
+    }
+
+    public Map<String, String> getFields() {
+        return Collections.unmodifiableMap(fields);
+    }
+
+    // Null if the page has no form, a form without end tag has the inputs read until the end of the page
+    public static HtmlForm parse(BufferedSource source) throws IOException {
+
+        HtmlForm form = null;
+        Map<String, String> attributes = null;
+        String tagName = null;
+        long index;
+
+        while ((index = source.indexOf((byte) '<')) != -1) {
+            source.skip(index + 1);
+            if (!source.request(1))
+                break;
+            switch (source.getBuffer().getByte(0)) {
+                // Comment or doctype
+                case '!':
+                    if (source.rangeEquals(0, COMMENT_START))
+                        skipPast(source, COMMENT_END);
+                    else
+                        skipPast(source, (byte) '>');
+                    break;
+                case '/':
+                    source.skip(1);
+                    tagName = readName(source);
+                    skipPast(source, (byte) '>');
+                    if (form != null && "form".equals(tagName))
+                        return form;
+                    break;
+                default:
+                    if (!isNameStart(source.getBuffer().getByte(0)))
+                        break;
+                    tagName = readName(source);
+                    attributes = readAttributes(source);
+                    if ("form".equals(tagName) && form == null) {
+                        form = new HtmlForm();
+                        form.action = attributes.get("action");
+                        form.method = attributes.get("method");
+                    } else if ("input".equals(tagName) && form != null && attributes.get("name") != null) {
+                        form.fields.putIfAbsent(attributes.get("name"), attributes.containsKey("value") ? attributes.get("value") : "");
+                    } else if ("script".equals(tagName) || "style".equals(tagName)) {
+                        // Raw text, may contain '<'
+                        skipRawText(source, tagName);
+                    }
+            }
+        }
+
+        return form;
+
+    }
+
+    // Tag and attribute names, lower case
+    protected static String readName(BufferedSource source) throws IOException {
+
+        long end = 0;
+
+        while (source.request(end + 1) && !NAME_END[source.getBuffer().getByte(end) & 0xff])
+            end++;
+
+        return source.readUtf8(end).toLowerCase(Locale.ROOT);
+
+    }
+
+    // Attributes until the end of the tag (the '>' is consumed)
+    protected static Map<String, String> readAttributes(BufferedSource source) throws IOException {
+
+        Map<String, String> attributes = new HashMap<>();
+        String name = null;
+        String value = null;
+        byte b;
+
+        while (source.request(1)) {
+            b = source.getBuffer().getByte(0);
+            if (isWhitespace(b) || b == '/') {
+                source.skip(1);
+                continue;
+            }
+            if (b == '>') {
+                source.skip(1);
+                break;
+            }
+            name = readName(source);
+            if (name.isEmpty()) {
+                // Stray '=' without name
+                source.skip(1);
+                continue;
+            }
+            value = null;
+            skipWhitespace(source);
+            if (source.request(1) && source.getBuffer().getByte(0) == '=') {
+                source.skip(1);
+                skipWhitespace(source);
+                value = readValue(source);
+            }
+            attributes.putIfAbsent(name, value == null ? "" : decodeEntities(value));
+        }
+
+        return attributes;
+
+    }
+
+    protected static String readValue(BufferedSource source) throws IOException {
+
+        byte quote;
+        long end;
+        long length = 0;
+        byte b;
+
+        if (!source.request(1))
+            return "";
+
+        quote = source.getBuffer().getByte(0);
+        if (quote == '"' || quote == '\'') {
+            source.skip(1);
+            end = source.indexOf(quote);
+            if (end == -1)
+                return source.readUtf8();
+            String value = source.readUtf8(end);
+            source.skip(1);
+            return value;
+        }
+
+        // Unquoted value
+        while (source.request(length + 1)) {
+            b = source.getBuffer().getByte(length);
+            if (b == '>' || isWhitespace(b))
+                break;
+            length++;
+        }
+
+        return source.readUtf8(length);
+
+    }
+
+    // Named entities used in attribute values and numeric references, unknown ones are kept as they are
+    protected static String decodeEntities(String value) {
+
+        StringBuilder decoded = null;
+        int start = 0;
+        int amp;
+        int semicolon;
+        String entity = null;
+        String replacement = null;
+
+        if (value.indexOf('&') == -1)
+            return value;
+
+        decoded = new StringBuilder(value.length());
+        while ((amp = value.indexOf('&', start)) != -1) {
+            semicolon = value.indexOf(';', amp);
+            if (semicolon == -1)
+                break;
+            entity = semicolon - amp <= MAX_ENTITY_LENGTH ? value.substring(amp + 1, semicolon) : null;
+            replacement = entity == null ? null : decodeEntity(entity);
+            // Not an entity: the '&' is kept, the rest is looked at again
+            if (replacement == null) {
+                decoded.append(value, start, amp + 1);
+                start = amp + 1;
+                continue;
+            }
+            decoded.append(value, start, amp).append(replacement);
+            start = semicolon + 1;
+        }
+        decoded.append(value, start, value.length());
+
+        return decoded.toString();
+
+    }
+
+    protected static String decodeEntity(String entity) {
+
+        switch (entity) {
+            case "amp": return "&";
+            case "lt": return "<";
+            case "gt": return ">";
+            case "quot": return "\"";
+            case "apos": return "'";
+            default:
+                break;
+        }
+
+        try {
+            if (entity.startsWith("#x") || entity.startsWith("#X"))
+                return new String(Character.toChars(Integer.parseInt(entity.substring(2), 16)));
+            if (entity.startsWith("#"))
+                return new String(Character.toChars(Integer.parseInt(entity.substring(1))));
+        } catch (IllegalArgumentException ex) {
+            // Not a valid code point
+        }
+
+        return null;
+
+    }
+
+    // Skip to the end tag of a script or style element
+    protected static void skipRawText(BufferedSource source, String tagName) throws IOException {
+
+        long index;
+
+        while ((index = source.indexOf(END_TAG_START)) != -1) {
+            source.skip(index + 2);
+            if (tagName.equals(readName(source))) {
+                skipPast(source, (byte) '>');
+                return;
+            }
+        }
+
+        skipPast(source, END_TAG_START);
+
+    }
+
+    protected static void skipPast(BufferedSource source, byte b) throws IOException {
+        long index = source.indexOf(b);
+        if (index == -1)
+            while (source.request(1))
+                source.skip(source.getBuffer().size());
+        else
+            source.skip(index + 1);
+    }
+
+    protected static void skipPast(BufferedSource source, ByteString bytes) throws IOException {
+        long index = source.indexOf(bytes);
+        if (index == -1)
+            while (source.request(1))
+                source.skip(source.getBuffer().size());
+        else
+            source.skip(index + bytes.size());
+    }
+
+    protected static void skipWhitespace(BufferedSource source) throws IOException {
+        while (source.request(1) && isWhitespace(source.getBuffer().getByte(0)))
+            source.skip(1);
+    }
+
+    protected static boolean isNameStart(byte b) {
+        return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z');
+    }
+
+    protected static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\n' || b == '\r' || b == '\t' || b == '\f';
+    }
+
+}
@@ -0,0 +1,94 @@
+package info.nightscout.medtronic.carelink.client;
+
+import info.nightscout.medtronic.carelink.json.CareLinkGson;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+// One json file per key in a folder, shared by the file based stores (sessions, backfill checkpoints)
+public class JsonFileStore<T> {
+
+    protected static final String FILE_EXTENSION = ".json";
+
+    protected final Path folder;
+    protected final String filePrefix;
+    protected final Class<T> valueClass;
+
+    public JsonFileStore(String folder, String filePrefix, Class<T> valueClass) {
+        this.folder = Paths.get(folder);
+        this.filePrefix = filePrefix;
+        this.valueClass = valueClass;
+    }
+
+    // Stored value of the key, null if there is none or it is unreadable
+    public T load(String key) {
+
+        Path file = this.getFile(key);
+
+        if (!Files.exists(file))
+            return null;
+
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return CareLinkGson.getGson().fromJson(reader, valueClass);
+        } catch (Exception ex) {
+            return null;
+        }
+
+    }
+
+    // A failed save keeps the previous file
+    public void save(String key, T value) {
+
+        Path file = this.getFile(key);
+        Path tempFile = null;
+
+        try {
+            Files.createDirectories(folder);
+            // Write to temp file and move it in place, a crash never leaves a half written file
+            tempFile = Files.createTempFile(folder, filePrefix, ".tmp");
+            try (Writer writer = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+                CareLinkGson.getGson().toJson(value, writer);
+            }
+            try {
+                Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException ex) {
+            try {
+                if (tempFile != null)
+                    Files.deleteIfExists(tempFile);
+            } catch (IOException ignored) { }
+        }
+
+    }
+
+    public void delete(String key) {
+        try {
+            Files.deleteIfExists(this.getFile(key));
+        } catch (IOException ignored) { }
+    }
+
+    // Key contains the username, use its hash as file name
+    protected Path getFile(String key) {
+
+        String fileName = null;
+
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            fileName = String.format("%064x", new BigInteger(1, digest));
+        } catch (NoSuchAlgorithmException ex) {
+            fileName = Integer.toHexString(key.hashCode());
+        }
+
+        return folder.resolve(filePrefix + fileName + FILE_EXTENSION);
+
+    }
+
+}
@@ -0,0 +1,158 @@
+package info.nightscout.medtronic.carelink.client;
+
+import info.nightscout.medtronic.carelink.message.*;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+// Per account watermark of the already seen RecentData items
+public class RecentDataWatermark {
+
+    // Time based items: keys of the items seen in the current 24h window (key -> item time) + newest seen timestamp
+    // A reading which arrives later for an older slot (backfilled gap, value after sg=0) has a new key and is emitted
+    protected Map<String, Long> seenSgKeys = new HashMap<>();
+    protected Map<String, Long> seenMarkerKeys = new HashMap<>();
+    protected long lastSgTime = Long.MIN_VALUE;
+    protected long lastMarkerTime = Long.MIN_VALUE;
+
+    // Notifications: GUIDs of the previous response (it always covers the whole 24h window)
+    protected Set<String> activeNotificationGuids = new HashSet<>();
+    protected Set<String> clearedNotificationGuids = new HashSet<>();
+
+    public synchronized long getLastSgTime() {
+        return lastSgTime;
+    }
+
+    public synchronized long getLastMarkerTime() {
+        return lastMarkerTime;
+    }
+
+    public synchronized void reset() {
+        seenSgKeys = new HashMap<>();
+        seenMarkerKeys = new HashMap<>();
+        lastSgTime = Long.MIN_VALUE;
+        lastMarkerTime = Long.MIN_VALUE;
+        activeNotificationGuids = new HashSet<>();
+        clearedNotificationGuids = new HashSet<>();
+    }
+
+    // Collect new items of the response and move the watermark
+    public synchronized RecentDataDelta update(RecentData recentData) {
+
+        RecentDataDelta delta = new RecentDataDelta();
+
+        delta.recentData = recentData;
+        if (recentData == null)
+            return delta;
+
+        this.updateSgs(recentData, delta);
+        this.updateMarkers(recentData, delta);
+        this.updateNotifications(recentData, delta);
+
+        return delta;
+
+    }
+
+    protected void updateSgs(RecentData recentData, RecentDataDelta delta) {
+
+        SensorGlucoseSeries series = recentData.sgSeries;
+        long oldestTime = Long.MAX_VALUE;
+        long sgTime;
+
+        // Compact series: only the new readings get a SensorGlucose object
+        if (series != null) {
+            for (int i = 0; i < series.size(); i++) {
+                sgTime = series.getTime(i);
+                if (sgTime == SensorGlucoseSeries.NO_TIME)
+                    continue;
+                oldestTime = Math.min(oldestTime, sgTime);
+                if (seenSgKeys.put(RecentDataDelta.getSensorGlucoseKey(sgTime, series.hasValue(i) ? series.getValue(i) : null, series.getSensorState(i)), sgTime) == null) {
+                    delta.sgs.add(series.get(i));
+                    lastSgTime = Math.max(lastSgTime, sgTime);
+                }
+            }
+        }
+
+        if (recentData.sgs != null) {
+            for (SensorGlucose sg : recentData.sgs) {
+                if (sg.datetime == null)
+                    continue;
+                sgTime = sg.datetime.getTime();
+                oldestTime = Math.min(oldestTime, sgTime);
+                if (seenSgKeys.put(RecentDataDelta.getSensorGlucoseKey(sgTime, sg.sg, sg.sensorState), sgTime) == null) {
+                    delta.sgs.add(sg);
+                    lastSgTime = Math.max(lastSgTime, sgTime);
+                }
+            }
+        }
+
+        prune(seenSgKeys, oldestTime);
+
+    }
+
+    protected void updateMarkers(RecentData recentData, RecentDataDelta delta) {
+
+        long oldestTime = Long.MAX_VALUE;
+        long markerTime;
+
+        if (recentData.markers == null)
+            return;
+
+        // Several markers can have the same time (e.g. meal + bolus, two manual boluses)
+        for (Marker marker : recentData.markers) {
+            if (marker.dateTime == null)
+                continue;
+            markerTime = marker.dateTime.getTime();
+            oldestTime = Math.min(oldestTime, markerTime);
+            if (seenMarkerKeys.put(RecentDataDelta.getMarkerKey(marker), markerTime) == null) {
+                delta.markers.add(marker);
+                lastMarkerTime = Math.max(lastMarkerTime, markerTime);
+            }
+        }
+
+        prune(seenMarkerKeys, oldestTime);
+
+    }
+
+    protected void updateNotifications(RecentData recentData, RecentDataDelta delta) {
+
+        Set<String> newActiveGuids = new HashSet<>();
+        Set<String> newClearedGuids = new HashSet<>();
+
+        if (recentData.notificationHistory == null)
+            return;
+
+        if (recentData.notificationHistory.activeNotifications != null) {
+            for (ActiveNotification notification : recentData.notificationHistory.activeNotifications) {
+                if (notification.GUID == null)
+                    continue;
+                newActiveGuids.add(notification.GUID);
+                if (!activeNotificationGuids.contains(notification.GUID))
+                    delta.activeNotifications.add(notification);
+            }
+        }
+
+        if (recentData.notificationHistory.clearedNotifications != null) {
+            for (ClearedNotification notification : recentData.notificationHistory.clearedNotifications) {
+                if (notification.GUID == null)
+                    continue;
+                newClearedGuids.add(notification.GUID);
+                if (!clearedNotificationGuids.contains(notification.GUID))
+                    delta.clearedNotifications.add(notification);
+            }
+        }
+
+        activeNotificationGuids = newActiveGuids;
+        clearedNotificationGuids = newClearedGuids;
+
+    }
+
+    // Items which left the 24h window of the response are not seen again
+    protected static void prune(Map<String, Long> seenKeys, long oldestTime) {
+        if (oldestTime != Long.MAX_VALUE)
+            seenKeys.values().removeIf(time -> time < oldestTime);
+    }
+
+}
@@ -0,0 +1,161 @@
+package info.nightscout.medtronic.carelink.client;
+
+import okhttp3.Request;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+// What the client does after a failed call: per status code rules, exponential backoff with full jitter
+// Jitter spreads the retries of many accounts, they don't hit a recovering server at the same moment
+// Only idempotent requests are retried, a POST only if the policy marks it as safe to repeat
+public class RetryPolicy {
+
+    public enum Action {
+        // Return the response as it is
+        FAIL,
+        // Same request again after the backoff delay
+        RETRY,
+        // New login (shared by concurrent callers), then the request again once
+        RENEW_LOGIN
+    }
+
+    public static final int DEFAULT_MAX_ATTEMPTS = 3;
+    public static final long DEFAULT_BASE_DELAY_MILLIS = 1000;
+    public static final long DEFAULT_MAX_DELAY_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    protected final Map<Integer, Action> statusActions = new ConcurrentHashMap<>();
+    protected volatile Action networkErrorAction = Action.RETRY;
+    protected volatile int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+    protected volatile long baseDelayMillis = DEFAULT_BASE_DELAY_MILLIS;
+    protected volatile long maxDelayMillis = DEFAULT_MAX_DELAY_MILLIS;
+    protected volatile boolean respectRetryAfter = true;
+    protected volatile Predicate<Request> safeToRetry = request -> false;
+
+    // Defaults: 401 renews the login, timeouts, throttling and server errors are retried
+    public RetryPolicy() {
+        this.statusActions.put(401, Action.RENEW_LOGIN);
+        this.statusActions.put(408, Action.RETRY);
+        this.statusActions.put(429, Action.RETRY);
+        this.statusActions.put(500, Action.RETRY);
+        this.statusActions.put(502, Action.RETRY);
+        this.statusActions.put(503, Action.RETRY);
+        this.statusActions.put(504, Action.RETRY);
+    }
+
+    // Single attempt, a 401 still renews the login for the next call (same as before the policy existed)
+    public static RetryPolicy noRetry() {
+        RetryPolicy policy = new RetryPolicy();
+        policy.statusActions.clear();
+        policy.setNetworkErrorAction(Action.FAIL);
+        policy.setMaxAttempts(1);
+        return policy;
+    }
+
+    // Successful responses are never retried
+    public Action getAction(int code) {
+        if (code >= 200 && code < 400)
+            return Action.FAIL;
+        Action action = statusActions.get(code);
+        return action == null ? Action.FAIL : action;
+    }
+
+    public void setAction(int code, Action action) {
+        if (action == null)
+            statusActions.remove(code);
+        else
+            statusActions.put(code, action);
+    }
+
+    public Action getNetworkErrorAction() {
+        return networkErrorAction;
+    }
+
+    public void setNetworkErrorAction(Action networkErrorAction) {
+        this.networkErrorAction = networkErrorAction == Action.RENEW_LOGIN ? Action.RETRY : networkErrorAction;
+    }
+
+    // RETRY actions only apply to retryable requests, the others get a single attempt
+    public boolean isRetryable(Request request) {
+        switch (request.method()) {
+            case "GET":
+            case "HEAD":
+            case "PUT":
+            case "DELETE":
+            case "OPTIONS":
+                return true;
+            default:
+                return safeToRetry.test(request);
+        }
+    }
+
+    // Non idempotent requests which can be repeated, e.g. a read only POST of a data endpoint
+    public void setSafeToRetry(Predicate<Request> safeToRetry) {
+        this.safeToRetry = safeToRetry == null ? request -> false : safeToRetry;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    // Attempts of one request, including the first one
+    public void setMaxAttempts(int maxAttempts) {
+        this.maxAttempts = Math.max(1, maxAttempts);
+    }
+
+    public long getBaseDelayMillis() {
+        return baseDelayMillis;
+    }
+
+    public void setBaseDelayMillis(long baseDelayMillis) {
+        this.baseDelayMillis = baseDelayMillis;
+    }
+
+    public long getMaxDelayMillis() {
+        return maxDelayMillis;
+    }
+
+    public void setMaxDelayMillis(long maxDelayMillis) {
+        this.maxDelayMillis = maxDelayMillis;
+    }
+
+    public boolean isRespectRetryAfter() {
+        return respectRetryAfter;
+    }
+
+    public void setRespectRetryAfter(boolean respectRetryAfter) {
+        this.respectRetryAfter = respectRetryAfter;
+    }
+
+    // Delay before the given retry (1 = first retry): random between 0 and base * 2^(retry-1), capped
+    // A Retry-After (seconds) of the server is used instead, if present (also capped)
+    public long getDelayMillis(int retry, String retryAfter) {
+
+        long retryAfterMillis = respectRetryAfter ? parseRetryAfterMillis(retryAfter) : -1;
+        long ceiling;
+
+        if (retryAfterMillis >= 0)
+            return Math.min(retryAfterMillis, maxDelayMillis);
+
+        ceiling = baseDelayMillis << Math.min(Math.max(retry - 1, 0), 30);
+        if (ceiling <= 0 || ceiling > maxDelayMillis)
+            ceiling = maxDelayMillis;
+
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+
+    }
+
+    // Only the delay-seconds form, -1 if missing or an HTTP date
+    protected static long parseRetryAfterMillis(String retryAfter) {
+        if (retryAfter == null)
+            return -1;
+        try {
+            return Math.max(0, Long.parseLong(retryAfter.trim())) * 1000;
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+    }
+
+}
@@ -6,28 +6,48 @@ import okhttp3.HttpUrl;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+// Thread-safe cookie jar, cookies are indexed by name and by domain + path, expired ones are dropped lazily
 public class SimpleOkHttpCookieJar implements CookieJar {
 
-    private List<Cookie> storage = new ArrayList<>();
+    // name => (domain + path => cookie)
+    private final Map<String, Map<String, Cookie>> storage = new ConcurrentHashMap<>();
 
     @Override
     public void saveFromResponse(HttpUrl url, List<Cookie> cookies) {
-        storage.addAll(cookies);
+        addCookies(cookies);
+    }
+
+    public void addCookies(List<Cookie> cookies) {
+
+        long now = System.currentTimeMillis();
+
+        for (Cookie cookie : cookies) {
+            Map<String, Cookie> cookiesOfName = storage.computeIfAbsent(cookie.name(), name -> new ConcurrentHashMap<>());
+            // Same name, domain and path replaces the old cookie, an expired one deletes it
+            if (cookie.expiresAt() < now)
+                cookiesOfName.remove(getCookieKey(cookie));
+            else
+                cookiesOfName.put(getCookieKey(cookie), cookie);
+        }
+
     }
 
     @Override
     public List<Cookie> loadForRequest(HttpUrl url) {
 
         List<Cookie> cookies = new ArrayList<>();
-
-        // Remove expired Cookies
-        removeExpiredCookies();
+        long now = System.currentTimeMillis();
 
         // Only return matching Cookies
-        for (int i = 0; i < storage.size(); i++) {
-            if(storage.get(i).matches(url)) {
-                cookies.add(storage.get(i));
+        for (Map<String, Cookie> cookiesOfName : storage.values()) {
+            for (Cookie cookie : cookiesOfName.values()) {
+                if (isExpired(cookiesOfName, cookie, now))
+                    continue;
+                if (cookie.matches(url))
+                    cookies.add(cookie);
             }
         }
 
@@ -37,14 +57,13 @@ public class SimpleOkHttpCookieJar implements CookieJar {
     public List<Cookie> getCookies(String name) {
 
         List<Cookie> cookies = new ArrayList<>();
+        Map<String, Cookie> cookiesOfName = storage.get(name);
+        long now = System.currentTimeMillis();
 
-        // Remove expired Cookies
-        removeExpiredCookies();
-
-        // Only return matching Cookies
-        for (int i = 0; i < storage.size(); i++) {
-            if(storage.get(i).name().equals(name)) {
-                cookies.add(storage.get(i));
+        if (cookiesOfName != null) {
+            for (Cookie cookie : cookiesOfName.values()) {
+                if (!isExpired(cookiesOfName, cookie, now))
+                    cookies.add(cookie);
             }
         }
 
@@ -52,27 +71,45 @@ public class SimpleOkHttpCookieJar implements CookieJar {
 
     }
 
+    // First valid cookie of the name or null, no list is created
+    public Cookie getCookie(String name) {
+
+        Map<String, Cookie> cookiesOfName = storage.get(name);
+        long now = System.currentTimeMillis();
+
+        if (cookiesOfName != null) {
+            for (Cookie cookie : cookiesOfName.values()) {
+                if (!isExpired(cookiesOfName, cookie, now))
+                    return cookie;
+            }
+        }
+
+        return null;
+
+    }
+
     public boolean contains(String name) {
-        return (getCookies(name).size() > 0);
+        return getCookie(name) != null;
     }
 
     public void deleteCookie(String name) {
-        for (int i = 0; i < storage.size(); i++) {
-            if(storage.get(i).name() == name) {
-                storage.remove(i);
-            }
-        }
+        storage.remove(name);
     }
 
     public void deleteAllCookies() {
         storage.clear();
     }
 
-    private void removeExpiredCookies(){
-        for (int i = 0; i < storage.size(); i++) {
-            if(storage.get(i).expiresAt() < System.currentTimeMillis()) {
-                storage.remove(i);
-            }
+    private static String getCookieKey(Cookie cookie) {
+        return cookie.domain() + cookie.path();
+    }
+
+    private static boolean isExpired(Map<String, Cookie> cookiesOfName, Cookie cookie, long now) {
+        if (cookie.expiresAt() < now) {
+            cookiesOfName.remove(getCookieKey(cookie), cookie);
+            return true;
+        } else {
+            return false;
         }
     }
 
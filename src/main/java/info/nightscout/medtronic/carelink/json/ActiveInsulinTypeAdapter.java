@@ -0,0 +1,38 @@
+package info.nightscout.medtronic.carelink.json;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import info.nightscout.medtronic.carelink.message.ActiveInsulin;
+
+import java.io.IOException;
+import java.util.Date;
+
+public class ActiveInsulinTypeAdapter extends MessageTypeAdapter<ActiveInsulin> {
+
+    private final TypeAdapter<Date> dateAdapter;
+
+    public ActiveInsulinTypeAdapter(Gson gson, TypeAdapter<ActiveInsulin> delegate) {
+        super(delegate);
+        this.dateAdapter = gson.getAdapter(Date.class);
+    }
+
+    @Override
+    protected ActiveInsulin create() {
+        return new ActiveInsulin();
+    }
+
+    @Override
+    protected boolean readField(JsonReader in, String name, ActiveInsulin activeInsulin) throws IOException {
+        switch (name) {
+            case "code": activeInsulin.code = in.nextInt(); return true;
+            case "datetime": activeInsulin.datetime = dateAdapter.read(in); return true;
+            case "version": activeInsulin.version = in.nextInt(); return true;
+            case "amount": activeInsulin.amount = in.nextDouble(); return true;
+            case "precision": activeInsulin.precision = in.nextString(); return true;
+            case "kind": activeInsulin.kind = in.nextString(); return true;
+            default: return false;
+        }
+    }
+
+}
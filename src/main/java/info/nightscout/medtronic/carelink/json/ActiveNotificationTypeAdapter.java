@@ -0,0 +1,42 @@
+package info.nightscout.medtronic.carelink.json;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import info.nightscout.medtronic.carelink.message.ActiveNotification;
+
+import java.io.IOException;
+import java.util.Date;
+
+public class ActiveNotificationTypeAdapter extends MessageTypeAdapter<ActiveNotification> {
+
+    private final TypeAdapter<Date> dateAdapter;
+
+    public ActiveNotificationTypeAdapter(Gson gson, TypeAdapter<ActiveNotification> delegate) {
+        super(delegate);
+        this.dateAdapter = gson.getAdapter(Date.class);
+    }
+
+    @Override
+    protected ActiveNotification create() {
+        return new ActiveNotification();
+    }
+
+    @Override
+    protected boolean readField(JsonReader in, String name, ActiveNotification notification) throws IOException {
+        switch (name) {
+            case "GUID": notification.GUID = in.nextString(); return true;
+            case "dateTime": notification.dateTime = DeviceTimeCorrection.correctIfActive(dateAdapter.read(in)); return true;
+            case "type": notification.type = in.nextString(); return true;
+            case "faultId": notification.faultId = in.nextInt(); return true;
+            case "instanceId": notification.instanceId = in.nextInt(); return true;
+            case "messageId": notification.messageId = in.nextString(); return true;
+            case "pumpDeliverySuspendState": notification.pumpDeliverySuspendState = in.nextString(); return true;
+            case "pnpId": notification.pnpId = in.nextString(); return true;
+            case "relativeOffset": notification.relativeOffset = in.nextInt(); return true;
+            case "alertSilenced": notification.alertSilenced = readBoolean(in); return true;
+            default: return false;
+        }
+    }
+
+}
@@ -0,0 +1,43 @@
+package info.nightscout.medtronic.carelink.json;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import info.nightscout.medtronic.carelink.message.Alarm;
+
+import java.io.IOException;
+import java.util.Date;
+
+public class AlarmTypeAdapter extends MessageTypeAdapter<Alarm> {
+
+    private final TypeAdapter<Date> dateAdapter;
+
+    public AlarmTypeAdapter(Gson gson, TypeAdapter<Alarm> delegate) {
+        super(delegate);
+        this.dateAdapter = gson.getAdapter(Date.class);
+    }
+
+    @Override
+    protected Alarm create() {
+        return new Alarm();
+    }
+
+    @Override
+    protected boolean readField(JsonReader in, String name, Alarm alarm) throws IOException {
+        switch (name) {
+            case "code": alarm.code = in.nextInt(); return true;
+            case "datetime": alarm.datetime = dateAdapter.read(in); return true;
+            case "type": alarm.type = in.nextString(); return true;
+            case "flash": alarm.flash = readBoolean(in); return true;
+            case "kind": alarm.kind = in.nextString(); return true;
+            case "version": alarm.version = in.nextLong(); return true;
+            case "instanceId": alarm.instanceId = in.nextInt(); return true;
+            case "messageId": alarm.messageId = in.nextString(); return true;
+            case "sg": alarm.sg = in.nextInt(); return true;
+            case "pumpDeliverySuspendState": alarm.pumpDeliverySuspendState = readBoolean(in); return true;
+            case "referenceGUID": alarm.referenceGUID = in.nextString(); return true;
+            default: return false;
+        }
+    }
+
+}
@@ -0,0 +1,59 @@
+package info.nightscout.medtronic.carelink.json;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import java.util.TimeZone;
+
+public class CareLinkGson {
+
+    public static final String OUTPUT_DATE_FORMAT = "yyyy-MM-dd'T'HH:mm:ssXXX";
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+    // Gson instances are immutable and thread-safe, build them only once
+    private static final Gson GSON = newBuilder().create();
+    private static final Gson COMPACT_GSON = newBuilder(true, false).create();
+    private static final Gson DEVICE_TIME_GSON = newBuilder(false, true).create();
+    private static final Gson COMPACT_DEVICE_TIME_GSON = newBuilder(true, true).create();
+    // Local time without milliseconds, same as OUTPUT_DATE_FORMAT
+    private static final Gson PRETTY_GSON = new GsonBuilder()
+            .registerTypeAdapterFactory(IsoDateTypeAdapter.factory(TimeZone.getDefault(), false))
+            .registerTypeAdapterFactory(new CareLinkTypeAdapterFactory())
+            .setPrettyPrinting().create();
+
+    // Shared instance for CareLink API messages
+    public static Gson getGson() {
+        return GSON;
+    }
+
+    // Shared instance reading sensor glucose readings into RecentData.sgSeries
+    public static Gson getCompactGson() {
+        return COMPACT_GSON;
+    }
+
+    // Shared instance for the given RecentData parse options
+    public static Gson getGson(boolean compactSensorGlucose, boolean correctDeviceTime) {
+        if (correctDeviceTime)
+            return compactSensorGlucose ? COMPACT_DEVICE_TIME_GSON : DEVICE_TIME_GSON;
+        else
+            return compactSensorGlucose ? COMPACT_GSON : GSON;
+    }
+
+    // Shared instance for human readable output (CLI)
+    public static Gson getPrettyGson() {
+        return PRETTY_GSON;
+    }
+
+    // Builder with the CareLink message adapters registered
+    public static GsonBuilder newBuilder() {
+        return newBuilder(false, false);
+    }
+
+    // Dates are written as UTC ISO-8601 with milliseconds
+    public static GsonBuilder newBuilder(boolean compactSensorGlucose, boolean correctDeviceTime) {
+        return new GsonBuilder()
+                .registerTypeAdapterFactory(IsoDateTypeAdapter.factory(UTC, true))
+                .registerTypeAdapterFactory(new CareLinkTypeAdapterFactory(compactSensorGlucose, correctDeviceTime));
+    }
+
+}
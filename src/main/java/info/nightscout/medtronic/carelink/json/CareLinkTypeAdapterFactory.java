@@ -0,0 +1,62 @@
+package info.nightscout.medtronic.carelink.json;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import info.nightscout.medtronic.carelink.message.*;
+
+public class CareLinkTypeAdapterFactory implements TypeAdapterFactory {
+
+    // Sensor glucose readings of RecentData are read into a SensorGlucoseSeries instead of a list
+    private final boolean compactSensorGlucose;
+    // Device time of RecentData is corrected to the server time while parsing
+    private final boolean correctDeviceTime;
+
+    public CareLinkTypeAdapterFactory() {
+        this(false, false);
+    }
+
+    public CareLinkTypeAdapterFactory(boolean compactSensorGlucose, boolean correctDeviceTime) {
+        this.compactSensorGlucose = compactSensorGlucose;
+        this.correctDeviceTime = correctDeviceTime;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+
+        Class<? super T> rawType = type.getRawType();
+
+        // Streaming adapters for the hot messages, everything else stays reflective
+        if (rawType == RecentData.class)
+            return (TypeAdapter<T>) new RecentDataTypeAdapter(gson, gson.getDelegateAdapter(this, TypeToken.get(RecentData.class)), compactSensorGlucose, correctDeviceTime);
+        else if (rawType == SensorGlucose.class)
+            return (TypeAdapter<T>) new SensorGlucoseTypeAdapter(gson, gson.getDelegateAdapter(this, TypeToken.get(SensorGlucose.class)));
+        else if (rawType == Marker.class)
+            return (TypeAdapter<T>) new MarkerTypeAdapter(gson, gson.getDelegateAdapter(this, TypeToken.get(Marker.class)));
+        else if (rawType == NotificationHistory.class)
+            return (TypeAdapter<T>) new NotificationHistoryTypeAdapter(gson, gson.getDelegateAdapter(this, TypeToken.get(NotificationHistory.class)));
+        else if (rawType == ActiveNotification.class)
+            return (TypeAdapter<T>) new ActiveNotificationTypeAdapter(gson, gson.getDelegateAdapter(this, TypeToken.get(ActiveNotification.class)));
+        else if (rawType == ClearedNotification.class)
+            return (TypeAdapter<T>) new ClearedNotificationTypeAdapter(gson, gson.getDelegateAdapter(this, TypeToken.get(ClearedNotification.class)));
+        else if (rawType == Alarm.class)
+            return (TypeAdapter<T>) new AlarmTypeAdapter(gson, gson.getDelegateAdapter(this, TypeToken.get(Alarm.class)));
+        else if (rawType == ActiveInsulin.class)
+            return (TypeAdapter<T>) new ActiveInsulinTypeAdapter(gson, gson.getDelegateAdapter(this, TypeToken.get(ActiveInsulin.class)));
+        // Session
+        else if (rawType == User.class)
+            return (TypeAdapter<T>) new UserTypeAdapter(gson, gson.getDelegateAdapter(this, TypeToken.get(User.class)));
+        else if (rawType == Profile.class)
+            return (TypeAdapter<T>) new ProfileTypeAdapter(gson.getDelegateAdapter(this, TypeToken.get(Profile.class)));
+        else if (rawType == CountrySettings.class)
+            return (TypeAdapter<T>) new CountrySettingsTypeAdapter(gson, gson.getDelegateAdapter(this, TypeToken.get(CountrySettings.class)));
+        else if (rawType == MonitorData.class)
+            return (TypeAdapter<T>) new MonitorDataTypeAdapter(gson.getDelegateAdapter(this, TypeToken.get(MonitorData.class)));
+        else
+            return null;
+
+    }
+
+}
@@ -0,0 +1,44 @@
+package info.nightscout.medtronic.carelink.json;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import info.nightscout.medtronic.carelink.message.ClearedNotification;
+
+import java.io.IOException;
+import java.util.Date;
+
+public class ClearedNotificationTypeAdapter extends MessageTypeAdapter<ClearedNotification> {
+
+    private final TypeAdapter<Date> dateAdapter;
+
+    public ClearedNotificationTypeAdapter(Gson gson, TypeAdapter<ClearedNotification> delegate) {
+        super(delegate);
+        this.dateAdapter = gson.getAdapter(Date.class);
+    }
+
+    @Override
+    protected ClearedNotification create() {
+        return new ClearedNotification();
+    }
+
+    @Override
+    protected boolean readField(JsonReader in, String name, ClearedNotification notification) throws IOException {
+        switch (name) {
+            case "GUID": notification.GUID = in.nextString(); return true;
+            case "referenceGUID": notification.referenceGUID = in.nextString(); return true;
+            case "dateTime": notification.dateTime = DeviceTimeCorrection.correctIfActive(dateAdapter.read(in)); return true;
+            case "type": notification.type = in.nextString(); return true;
+            case "faultId": notification.faultId = in.nextInt(); return true;
+            case "instanceId": notification.instanceId = in.nextInt(); return true;
+            case "messageId": notification.messageId = in.nextString(); return true;
+            case "pumpDeliverySuspendState": notification.pumpDeliverySuspendState = in.nextString(); return true;
+            case "pnpId": notification.pnpId = in.nextString(); return true;
+            case "relativeOffset": notification.relativeOffset = in.nextInt(); return true;
+            case "triggeredDateTime": notification.triggeredDateTime = DeviceTimeCorrection.correctIfActive(dateAdapter.read(in)); return true;
+            case "alertSilenced": notification.alertSilenced = readBoolean(in); return true;
+            default: return false;
+        }
+    }
+
+}
@@ -0,0 +1,75 @@
+package info.nightscout.medtronic.carelink.json;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import info.nightscout.medtronic.carelink.message.*;
+
+import java.io.IOException;
+import java.util.List;
+
+public class CountrySettingsTypeAdapter extends MessageTypeAdapter<CountrySettings> {
+
+    private final TypeAdapter<List<Language>> languagesAdapter;
+    private final TypeAdapter<List<SupportedReport>> supportedReportsAdapter;
+    private final TypeAdapter<ReportDateFormat> reportDateFormatAdapter;
+    private final TypeAdapter<MfaRules> mfaAdapter;
+    private final TypeAdapter<PostalInfo> postalAdapter;
+    private final TypeAdapter<NumberFormat> numberFormatAdapter;
+
+    public CountrySettingsTypeAdapter(Gson gson, TypeAdapter<CountrySettings> delegate) {
+        super(delegate);
+        this.languagesAdapter = gson.getAdapter(new TypeToken<List<Language>>(){});
+        this.supportedReportsAdapter = gson.getAdapter(new TypeToken<List<SupportedReport>>(){});
+        this.reportDateFormatAdapter = gson.getAdapter(ReportDateFormat.class);
+        this.mfaAdapter = gson.getAdapter(MfaRules.class);
+        this.postalAdapter = gson.getAdapter(PostalInfo.class);
+        this.numberFormatAdapter = gson.getAdapter(NumberFormat.class);
+    }
+
+    @Override
+    protected CountrySettings create() {
+        return new CountrySettings();
+    }
+
+    @Override
+    protected boolean readField(JsonReader in, String name, CountrySettings settings) throws IOException {
+        switch (name) {
+            case "name": settings.name = in.nextString(); return true;
+            case "languages": settings.languages = languagesAdapter.read(in); return true;
+            case "defaultLanguage": settings.defaultLanguage = in.nextString(); return true;
+            case "defaultCountryName": settings.defaultCountryName = in.nextString(); return true;
+            case "defaultDevice": settings.defaultDevice = in.nextString(); return true;
+            case "dialCode": settings.dialCode = in.nextString(); return true;
+            case "cpMobileAppAvailable": settings.cpMobileAppAvailable = readBoolean(in); return true;
+            case "uploaderAllowed": settings.uploaderAllowed = readBoolean(in); return true;
+            case "techSupport": settings.techSupport = in.nextString(); return true;
+            case "techDays": settings.techDays = in.nextString(); return true;
+            case "firstDayOfWeek": settings.firstDayOfWeek = in.nextString(); return true;
+            case "techHours": settings.techHours = in.nextString(); return true;
+            case "legalAge": settings.legalAge = in.nextInt(); return true;
+            case "shortDateFormat": settings.shortDateFormat = in.nextString(); return true;
+            case "shortTimeFormat": settings.shortTimeFormat = in.nextString(); return true;
+            case "mediaHost": settings.mediaHost = in.nextString(); return true;
+            case "blePereodicDataEndpoint": settings.blePereodicDataEndpoint = in.nextString(); return true;
+            case "region": settings.region = in.nextString(); return true;
+            case "carbDefaultUnit": settings.carbDefaultUnit = in.nextString(); return true;
+            case "bgUnits": settings.bgUnits = in.nextString(); return true;
+            case "timeFormat": settings.timeFormat = in.nextString(); return true;
+            case "timeUnitsDefault": settings.timeUnitsDefault = in.nextString(); return true;
+            case "recordSeparator": settings.recordSeparator = in.nextString(); return true;
+            case "glucoseUnitsDefault": settings.glucoseUnitsDefault = in.nextString(); return true;
+            case "carbohydrateUnitsDefault": settings.carbohydrateUnitsDefault = in.nextString(); return true;
+            case "carbExchangeRatioDefault": settings.carbExchangeRatioDefault = in.nextLong(); return true;
+            case "reportDateFormat": settings.reportDateFormat = reportDateFormatAdapter.read(in); return true;
+            case "mfa": settings.mfa = mfaAdapter.read(in); return true;
+            case "supportedReports": settings.supportedReports = supportedReportsAdapter.read(in); return true;
+            case "smsSendingAllowed": settings.smsSendingAllowed = readBoolean(in); return true;
+            case "postal": settings.postal = postalAdapter.read(in); return true;
+            case "numberFormat": settings.numberFormat = numberFormatAdapter.read(in); return true;
+            default: return false;
+        }
+    }
+
+}
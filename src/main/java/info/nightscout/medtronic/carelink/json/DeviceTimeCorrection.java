@@ -0,0 +1,130 @@
+package info.nightscout.medtronic.carelink.json;
+
+import info.nightscout.medtronic.carelink.message.SensorGlucoseSeries;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+// Device time correction of one RecentData parse (device time is local time, but it is labelled as UTC in CareLink data)
+// Offset is calculated from lastMedicalDeviceDataUpdateServerTime and sMedicalDeviceTime,
+// dates read before both are known are shifted as soon as the offset is known
+final class DeviceTimeCorrection {
+
+    private static final long HOUR_MILLIS = 3600000L;
+    private static final int MAX_DIFF_HOURS = 26;
+
+    private static final ThreadLocal<DeviceTimeCorrection> CURRENT = new ThreadLocal<>();
+
+    private final DeviceTimeCorrection previous;
+    private long serverTime;
+    private Date deviceTime;
+    private boolean offsetKnown;
+    private long offsetMillis;
+    private boolean active;
+    private List<Date> pendingDates;
+    private List<SensorGlucoseSeries> pendingSeries;
+
+    private DeviceTimeCorrection(DeviceTimeCorrection previous) {
+        this.previous = previous;
+    }
+
+    // Start correction for the current thread
+    static DeviceTimeCorrection begin() {
+        DeviceTimeCorrection correction = new DeviceTimeCorrection(CURRENT.get());
+        CURRENT.set(correction);
+        return correction;
+    }
+
+    void end() {
+        if (previous == null)
+            CURRENT.remove();
+        else
+            CURRENT.set(previous);
+    }
+
+    static DeviceTimeCorrection current() {
+        return CURRENT.get();
+    }
+
+    // Used by the nested message adapters, only corrects while the parent enabled it
+    static Date correctIfActive(Date date) {
+        DeviceTimeCorrection correction = CURRENT.get();
+        if (correction != null && correction.active)
+            correction.correct(date);
+        return date;
+    }
+
+    boolean setActive(boolean active) {
+        boolean wasActive = this.active;
+        this.active = active;
+        return wasActive;
+    }
+
+    void setServerTime(long serverTime) {
+        this.serverTime = serverTime;
+        this.calculateOffset();
+    }
+
+    // Must be called before the device time itself is corrected
+    void setDeviceTime(Date deviceTime) {
+        this.deviceTime = deviceTime == null ? null : new Date(deviceTime.getTime());
+        this.calculateOffset();
+    }
+
+    Date correct(Date date) {
+        if (date == null)
+            return null;
+        if (offsetKnown) {
+            if (offsetMillis != 0)
+                date.setTime(date.getTime() + offsetMillis);
+        } else {
+            if (pendingDates == null)
+                pendingDates = new ArrayList<>();
+            pendingDates.add(date);
+        }
+        return date;
+    }
+
+    SensorGlucoseSeries correct(SensorGlucoseSeries series) {
+        if (series == null)
+            return null;
+        if (offsetKnown) {
+            if (offsetMillis != 0)
+                series.shiftTimes(offsetMillis);
+        } else {
+            if (pendingSeries == null)
+                pendingSeries = new ArrayList<>();
+            pendingSeries.add(series);
+        }
+        return series;
+    }
+
+    private void calculateOffset() {
+
+        int diffInHour;
+
+        if (offsetKnown || deviceTime == null || serverTime <= 1)
+            return;
+
+        // Correct times if server <> device time differs in hours
+        diffInHour = (int) Math.round((serverTime - deviceTime.getTime()) / (double) HOUR_MILLIS);
+        offsetMillis = (diffInHour != 0 && diffInHour < MAX_DIFF_HOURS) ? diffInHour * HOUR_MILLIS : 0;
+        offsetKnown = true;
+
+        if (pendingDates != null) {
+            for (Date date : pendingDates) {
+                this.correct(date);
+            }
+            pendingDates = null;
+        }
+        if (pendingSeries != null) {
+            for (SensorGlucoseSeries series : pendingSeries) {
+                this.correct(series);
+            }
+            pendingSeries = null;
+        }
+
+    }
+
+}
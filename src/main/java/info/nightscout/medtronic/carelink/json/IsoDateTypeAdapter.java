@@ -0,0 +1,259 @@
+package info.nightscout.medtronic.carelink.json;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.TimeZone;
+
+// Lock-free ISO-8601 date adapter (e.g. 2021-04-20T12:28:00.000-00:00), plain arithmetic instead of Calendar and DateFormat
+// Strings in other formats (e.g. old session files) are parsed by Gson's default date adapter
+public class IsoDateTypeAdapter extends TypeAdapter<Date> {
+
+    // Result of parse for strings not in the format
+    public static final long INVALID = Long.MIN_VALUE;
+    private static final long MINUTE_MILLIS = 60000L;
+    private static final long DAY_MILLIS = 86400000L;
+
+    private final TimeZone outputTimeZone;
+    private final boolean outputMillis;
+    private final TypeAdapter<Date> fallback;
+
+    public IsoDateTypeAdapter(TimeZone outputTimeZone, boolean outputMillis, TypeAdapter<Date> fallback) {
+        this.outputTimeZone = outputTimeZone;
+        this.outputMillis = outputMillis;
+        this.fallback = fallback;
+    }
+
+    // Factory registered before Gson's own date adapter, which is kept as fallback
+    public static TypeAdapterFactory factory(TimeZone outputTimeZone, boolean outputMillis) {
+        return new TypeAdapterFactory() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+                if (type.getRawType() != Date.class)
+                    return null;
+                return (TypeAdapter<T>) new IsoDateTypeAdapter(outputTimeZone, outputMillis,
+                        gson.getDelegateAdapter(this, TypeToken.get(Date.class)));
+            }
+        };
+    }
+
+    @Override
+    public Date read(JsonReader in) throws IOException {
+
+        String value = null;
+        long time;
+
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+
+        value = in.nextString();
+        time = parse(value);
+        if (time == INVALID)
+            return fallback.fromJsonTree(new JsonPrimitive(value));
+
+        return new Date(time);
+
+    }
+
+    @Override
+    public void write(JsonWriter out, Date value) throws IOException {
+
+        String formatted = null;
+
+        if (value == null) {
+            out.nullValue();
+            return;
+        }
+
+        formatted = format(value.getTime(), outputTimeZone, outputMillis);
+        if (formatted == null)
+            fallback.write(out, value);
+        else
+            out.value(formatted);
+
+    }
+
+    // Epoch millis of yyyy-MM-ddTHH:mm[:ss[.fraction]](Z|+-HH[[:]mm]), INVALID for anything else
+    public static long parse(String value) {
+
+        int length = value.length();
+        int pos;
+        int year, month, day, hour, minute, second = 0, millis = 0;
+        int offsetMinutes;
+
+        if (length < 17 || value.charAt(4) != '-' || value.charAt(7) != '-' || value.charAt(10) != 'T' || value.charAt(13) != ':')
+            return INVALID;
+
+        year = digits(value, 0, 4);
+        month = digits(value, 5, 2);
+        day = digits(value, 8, 2);
+        hour = digits(value, 11, 2);
+        minute = digits(value, 14, 2);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month) || hour < 0 || hour > 23 || minute < 0 || minute > 59)
+            return INVALID;
+        pos = 16;
+
+        // Seconds and fraction (only milliseconds are kept)
+        if (pos < length && value.charAt(pos) == ':') {
+            second = digits(value, pos + 1, 2);
+            if (second < 0 || second > 59)
+                return INVALID;
+            pos += 3;
+            if (pos < length && value.charAt(pos) == '.') {
+                int fractionStart = ++pos;
+                while (pos < length && isDigit(value.charAt(pos))) {
+                    if (pos - fractionStart < 3)
+                        millis = millis * 10 + (value.charAt(pos) - '0');
+                    pos++;
+                }
+                if (pos == fractionStart)
+                    return INVALID;
+                for (int i = pos - fractionStart; i < 3; i++) {
+                    millis *= 10;
+                }
+            }
+        }
+
+        // Time zone is mandatory
+        if (pos >= length)
+            return INVALID;
+        if (value.charAt(pos) == 'Z') {
+            offsetMinutes = 0;
+            pos++;
+        } else if (value.charAt(pos) == '+' || value.charAt(pos) == '-') {
+            int sign = value.charAt(pos) == '-' ? -1 : 1;
+            int offsetHours = digits(value, pos + 1, 2);
+            int offsetMins = 0;
+            if (offsetHours < 0 || offsetHours > 23)
+                return INVALID;
+            pos += 3;
+            if (pos < length) {
+                if (value.charAt(pos) == ':')
+                    pos++;
+                offsetMins = digits(value, pos, 2);
+                if (offsetMins < 0 || offsetMins > 59)
+                    return INVALID;
+                pos += 2;
+            }
+            offsetMinutes = sign * (offsetHours * 60 + offsetMins);
+        } else {
+            return INVALID;
+        }
+        if (pos != length)
+            return INVALID;
+
+        return daysFromCivil(year, month, day) * DAY_MILLIS + ((hour * 60L + minute) * 60L + second) * 1000L + millis
+                - offsetMinutes * MINUTE_MILLIS;
+
+    }
+
+    // yyyy-MM-dd'T'HH:mm:ss[.SSS]XXX in the given time zone, null for years out of 0..9999
+    public static String format(long time, TimeZone timeZone, boolean withMillis) {
+
+        int offsetMinutes = timeZone.getOffset(time) / 60000;
+        long localTime = time + offsetMinutes * MINUTE_MILLIS;
+        long days = Math.floorDiv(localTime, DAY_MILLIS);
+        int millisOfDay = (int) Math.floorMod(localTime, DAY_MILLIS);
+        char[] chars = new char[29];
+        int pos;
+
+        // Civil date of the day number (see daysFromCivil)
+        long z = days + 719468;
+        long era = (z >= 0 ? z : z - 146096) / 146097;
+        long doe = z - era * 146097;
+        long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        long mp = (5 * doy + 2) / 153;
+        int day = (int) (doy - (153 * mp + 2) / 5 + 1);
+        int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+        long year = yoe + era * 400 + (month <= 2 ? 1 : 0);
+
+        if (year < 0 || year > 9999)
+            return null;
+
+        put(chars, 0, (int) year, 4);
+        chars[4] = '-';
+        put(chars, 5, month, 2);
+        chars[7] = '-';
+        put(chars, 8, day, 2);
+        chars[10] = 'T';
+        put(chars, 11, millisOfDay / 3600000, 2);
+        chars[13] = ':';
+        put(chars, 14, millisOfDay / 60000 % 60, 2);
+        chars[16] = ':';
+        put(chars, 17, millisOfDay / 1000 % 60, 2);
+        pos = 19;
+        if (withMillis) {
+            chars[pos] = '.';
+            put(chars, pos + 1, millisOfDay % 1000, 3);
+            pos += 4;
+        }
+        if (offsetMinutes == 0) {
+            chars[pos++] = 'Z';
+        } else {
+            chars[pos] = offsetMinutes < 0 ? '-' : '+';
+            put(chars, pos + 1, Math.abs(offsetMinutes) / 60, 2);
+            chars[pos + 3] = ':';
+            put(chars, pos + 4, Math.abs(offsetMinutes) % 60, 2);
+            pos += 6;
+        }
+
+        return new String(chars, 0, pos);
+
+    }
+
+    // Days since 1970-01-01 of a proleptic Gregorian date
+    private static long daysFromCivil(int year, int month, int day) {
+        long y = month <= 2 ? year - 1 : year;
+        long era = (y >= 0 ? y : y - 399) / 400;
+        long yoe = y - era * 400;
+        long doy = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        long doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        return era * 146097 + doe - 719468;
+    }
+
+    private static int daysInMonth(int year, int month) {
+        switch (month) {
+            case 2: return (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0)) ? 29 : 28;
+            case 4: case 6: case 9: case 11: return 30;
+            default: return 31;
+        }
+    }
+
+    // Value of count digits at start, -1 if not all are digits
+    private static int digits(String value, int start, int count) {
+        int result = 0;
+        if (start + count > value.length())
+            return -1;
+        for (int i = start; i < start + count; i++) {
+            char c = value.charAt(i);
+            if (!isDigit(c))
+                return -1;
+            result = result * 10 + (c - '0');
+        }
+        return result;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static void put(char[] chars, int start, int value, int count) {
+        for (int i = start + count - 1; i >= start; i--) {
+            chars[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+
+}
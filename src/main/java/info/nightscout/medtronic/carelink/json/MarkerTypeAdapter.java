@@ -0,0 +1,52 @@
+package info.nightscout.medtronic.carelink.json;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import info.nightscout.medtronic.carelink.message.Marker;
+
+import java.io.IOException;
+import java.util.Date;
+
+public class MarkerTypeAdapter extends MessageTypeAdapter<Marker> {
+
+    private final TypeAdapter<Date> dateAdapter;
+
+    public MarkerTypeAdapter(Gson gson, TypeAdapter<Marker> delegate) {
+        super(delegate);
+        this.dateAdapter = gson.getAdapter(Date.class);
+    }
+
+    @Override
+    protected Marker create() {
+        return new Marker();
+    }
+
+    @Override
+    protected boolean readField(JsonReader in, String name, Marker marker) throws IOException {
+        switch (name) {
+            case "type": marker.type = in.nextString(); return true;
+            case "index": marker.index = in.nextInt(); return true;
+            case "value": marker.value = in.nextInt(); return true;
+            case "kind": marker.kind = in.nextString(); return true;
+            case "version": marker.version = in.nextInt(); return true;
+            case "dateTime": marker.dateTime = DeviceTimeCorrection.correctIfActive(dateAdapter.read(in)); return true;
+            case "relativeOffset": marker.relativeOffset = in.nextInt(); return true;
+            case "calibrationSuccess": marker.calibrationSuccess = readBoolean(in); return true;
+            case "amount": marker.amount = in.nextInt(); return true;
+            case "programmedExtendedAmount": marker.programmedExtendedAmount = readFloat(in); return true;
+            case "activationType": marker.activationType = in.nextString(); return true;
+            case "deliveredExtendedAmount": marker.deliveredExtendedAmount = readFloat(in); return true;
+            case "programmedFastAmount": marker.programmedFastAmount = readFloat(in); return true;
+            case "programmedDuration": marker.programmedDuration = in.nextInt(); return true;
+            case "deliveredFastAmount": marker.deliveredFastAmount = readFloat(in); return true;
+            case "effectiveDuration": marker.effectiveDuration = in.nextInt(); return true;
+            case "completed": marker.completed = readBoolean(in); return true;
+            case "bolusType": marker.bolusType = in.nextString(); return true;
+            case "autoModeOn": marker.autoModeOn = readBoolean(in); return true;
+            case "bolusAmount": marker.bolusAmount = readFloat(in); return true;
+            default: return false;
+        }
+    }
+
+}
@@ -0,0 +1,86 @@
+package info.nightscout.medtronic.carelink.json;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+// Streaming read adapter base for CareLink messages, writes are delegated to Gson's reflective adapter
+public abstract class MessageTypeAdapter<T> extends TypeAdapter<T> {
+
+    protected final TypeAdapter<T> delegate;
+
+    protected MessageTypeAdapter(TypeAdapter<T> delegate) {
+        this.delegate = delegate;
+    }
+
+    // New empty message instance
+    protected abstract T create();
+
+    // Read value of the named field, return false if field is unknown (value will be skipped)
+    protected abstract boolean readField(JsonReader in, String name, T message) throws IOException;
+
+    @Override
+    public T read(JsonReader in) throws IOException {
+
+        T message = null;
+
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+
+        message = this.create();
+
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            // Null values keep the defaults (same as the reflective adapter)
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+            } else if (!this.readField(in, name, message)) {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+
+        return message;
+
+    }
+
+    @Override
+    public void write(JsonWriter out, T value) throws IOException {
+        delegate.write(out, value);
+    }
+
+    // Value readers (JsonReader already accepts numbers as strings and vice versa)
+    protected static boolean readBoolean(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.STRING)
+            return Boolean.parseBoolean(in.nextString());
+        else
+            return in.nextBoolean();
+    }
+
+    protected static float readFloat(JsonReader in) throws IOException {
+        return (float) in.nextDouble();
+    }
+
+    protected static <E> List<E> readList(JsonReader in, TypeAdapter<E> elementAdapter) throws IOException {
+
+        List<E> list = new ArrayList<>();
+
+        in.beginArray();
+        while (in.hasNext()) {
+            list.add(elementAdapter.read(in));
+        }
+        in.endArray();
+
+        return list;
+
+    }
+
+}
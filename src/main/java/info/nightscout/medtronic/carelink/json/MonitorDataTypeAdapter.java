@@ -0,0 +1,28 @@
+package info.nightscout.medtronic.carelink.json;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import info.nightscout.medtronic.carelink.message.MonitorData;
+
+import java.io.IOException;
+
+public class MonitorDataTypeAdapter extends MessageTypeAdapter<MonitorData> {
+
+    public MonitorDataTypeAdapter(TypeAdapter<MonitorData> delegate) {
+        super(delegate);
+    }
+
+    @Override
+    protected MonitorData create() {
+        return new MonitorData();
+    }
+
+    @Override
+    protected boolean readField(JsonReader in, String name, MonitorData monitorData) throws IOException {
+        switch (name) {
+            case "deviceFamily": monitorData.deviceFamily = in.nextString(); return true;
+            default: return false;
+        }
+    }
+
+}
@@ -0,0 +1,37 @@
+package info.nightscout.medtronic.carelink.json;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import info.nightscout.medtronic.carelink.message.ActiveNotification;
+import info.nightscout.medtronic.carelink.message.ClearedNotification;
+import info.nightscout.medtronic.carelink.message.NotificationHistory;
+
+import java.io.IOException;
+
+public class NotificationHistoryTypeAdapter extends MessageTypeAdapter<NotificationHistory> {
+
+    private final TypeAdapter<ActiveNotification> activeNotificationAdapter;
+    private final TypeAdapter<ClearedNotification> clearedNotificationAdapter;
+
+    public NotificationHistoryTypeAdapter(Gson gson, TypeAdapter<NotificationHistory> delegate) {
+        super(delegate);
+        this.activeNotificationAdapter = gson.getAdapter(ActiveNotification.class);
+        this.clearedNotificationAdapter = gson.getAdapter(ClearedNotification.class);
+    }
+
+    @Override
+    protected NotificationHistory create() {
+        return new NotificationHistory();
+    }
+
+    @Override
+    protected boolean readField(JsonReader in, String name, NotificationHistory history) throws IOException {
+        switch (name) {
+            case "activeNotifications": history.activeNotifications = readList(in, activeNotificationAdapter); return true;
+            case "clearedNotifications": history.clearedNotifications = readList(in, clearedNotificationAdapter); return true;
+            default: return false;
+        }
+    }
+
+}
@@ -0,0 +1,52 @@
+package info.nightscout.medtronic.carelink.json;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import info.nightscout.medtronic.carelink.message.Profile;
+
+import java.io.IOException;
+
+public class ProfileTypeAdapter extends MessageTypeAdapter<Profile> {
+
+    public ProfileTypeAdapter(TypeAdapter<Profile> delegate) {
+        super(delegate);
+    }
+
+    @Override
+    protected Profile create() {
+        return new Profile();
+    }
+
+    @Override
+    protected boolean readField(JsonReader in, String name, Profile profile) throws IOException {
+        switch (name) {
+            case "username": profile.username = in.nextString(); return true;
+            case "firstName": profile.firstName = in.nextString(); return true;
+            case "middleName": profile.middleName = in.nextString(); return true;
+            case "lastName": profile.lastName = in.nextString(); return true;
+            case "guardianParent": profile.guardianParent = readBoolean(in); return true;
+            case "parentFirstName": profile.parentFirstName = in.nextString(); return true;
+            case "parentMiddleName": profile.parentMiddleName = in.nextString(); return true;
+            case "parentLastName": profile.parentLastName = in.nextString(); return true;
+            case "address": profile.address = in.nextString(); return true;
+            case "city": profile.city = in.nextString(); return true;
+            case "stateProvince": profile.stateProvince = in.nextString(); return true;
+            case "postalCode": profile.postalCode = in.nextString(); return true;
+            case "country": profile.country = in.nextString(); return true;
+            case "dateOfBirth": profile.dateOfBirth = in.nextString(); return true;
+            case "phone": profile.phone = in.nextString(); return true;
+            case "phoneLegacy": profile.phoneLegacy = in.nextString(); return true;
+            case "email": profile.email = in.nextString(); return true;
+            case "gender": profile.gender = in.nextString(); return true;
+            case "diabetesType": profile.diabetesType = in.nextString(); return true;
+            case "therapyType": profile.therapyType = in.nextString(); return true;
+            case "ageRange": profile.ageRange = in.nextString(); return true;
+            case "insulinType": profile.insulinType = in.nextString(); return true;
+            case "patientNickname": profile.patientNickname = in.nextString(); return true;
+            case "textNotification": profile.textNotification = in.nextString(); return true;
+            case "a1C": profile.a1C = in.nextString(); return true;
+            default: return false;
+        }
+    }
+
+}
@@ -0,0 +1,265 @@
+package info.nightscout.medtronic.carelink.json;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.TypeAdapter;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import info.nightscout.medtronic.carelink.message.*;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.List;
+
+public class RecentDataTypeAdapter extends MessageTypeAdapter<RecentData> {
+
+    protected interface ValueReader<E> {
+        E read(JsonReader in) throws IOException;
+    }
+
+    private final TypeAdapter<Date> dateAdapter;
+    private final TypeAdapter<SensorGlucose> sensorGlucoseAdapter;
+    private final TypeAdapter<Marker> markerAdapter;
+    private final TypeAdapter<Alarm> alarmAdapter;
+    private final TypeAdapter<ActiveInsulin> activeInsulinAdapter;
+    private final TypeAdapter<NotificationHistory> notificationHistoryAdapter;
+    private final TypeAdapter<TherapyAlgorithmState> therapyAlgorithmStateAdapter;
+    private final TypeAdapter<Basal> basalAdapter;
+    private final TypeAdapter<List<Limit>> limitsAdapter;
+    private final TypeAdapter<List<PumpBannerState>> pumpBannerStateAdapter;
+    private final TypeAdapter<JsonElement> jsonElementAdapter;
+    private final boolean compactSensorGlucose;
+    private final boolean correctDeviceTime;
+
+    public RecentDataTypeAdapter(Gson gson, TypeAdapter<RecentData> delegate) {
+        this(gson, delegate, false, false);
+    }
+
+    public RecentDataTypeAdapter(Gson gson, TypeAdapter<RecentData> delegate, boolean compactSensorGlucose, boolean correctDeviceTime) {
+        super(delegate);
+        this.compactSensorGlucose = compactSensorGlucose;
+        this.correctDeviceTime = correctDeviceTime;
+        this.dateAdapter = gson.getAdapter(Date.class);
+        this.sensorGlucoseAdapter = gson.getAdapter(SensorGlucose.class);
+        this.markerAdapter = gson.getAdapter(Marker.class);
+        this.alarmAdapter = gson.getAdapter(Alarm.class);
+        this.activeInsulinAdapter = gson.getAdapter(ActiveInsulin.class);
+        this.notificationHistoryAdapter = gson.getAdapter(NotificationHistory.class);
+        this.therapyAlgorithmStateAdapter = gson.getAdapter(TherapyAlgorithmState.class);
+        this.basalAdapter = gson.getAdapter(Basal.class);
+        this.limitsAdapter = gson.getAdapter(new TypeToken<List<Limit>>(){});
+        this.pumpBannerStateAdapter = gson.getAdapter(new TypeToken<List<PumpBannerState>>(){});
+        this.jsonElementAdapter = gson.getAdapter(JsonElement.class);
+    }
+
+    @Override
+    protected RecentData create() {
+        return new RecentData();
+    }
+
+    @Override
+    public RecentData read(JsonReader in) throws IOException {
+
+        DeviceTimeCorrection correction = null;
+
+        if (!correctDeviceTime)
+            return super.read(in);
+
+        // Device times are corrected while they are read, no second pass over the data
+        correction = DeviceTimeCorrection.begin();
+        try {
+            return super.read(in);
+        } finally {
+            correction.end();
+        }
+
+    }
+
+    // Compact readings are written as the sgs array, the same JSON as the list representation
+    @Override
+    public void write(JsonWriter out, RecentData value) throws IOException {
+
+        JsonObject tree = null;
+        JsonArray sgs = null;
+
+        if (value == null || value.sgs != null || value.sgSeries == null) {
+            super.write(out, value);
+            return;
+        }
+
+        tree = delegate.toJsonTree(value).getAsJsonObject();
+        sgs = new JsonArray(value.sgSeries.size());
+        for (int i = 0; i < value.sgSeries.size(); i++)
+            sgs.add(sensorGlucoseAdapter.toJsonTree(value.sgSeries.get(i)));
+        tree.add("sgs", sgs);
+        jsonElementAdapter.write(out, tree);
+
+    }
+
+    @Override
+    protected boolean readField(JsonReader in, String name, RecentData data) throws IOException {
+        switch (name) {
+            case "lastSensorTS": data.lastSensorTS = in.nextLong(); return true;
+            case "medicalDeviceTimeAsString": data.medicalDeviceTimeAsString = correctDate(dateAdapter.read(in)); return true;
+            case "lastSensorTSAsString": data.lastSensorTSAsString = correctDate(dateAdapter.read(in)); return true;
+            case "kind": data.kind = in.nextString(); return true;
+            case "version": data.version = in.nextInt(); return true;
+            case "pumpModelNumber": data.pumpModelNumber = in.nextString(); return true;
+            case "currentServerTime": data.currentServerTime = in.nextLong(); return true;
+            case "lastConduitTime": data.lastConduitTime = in.nextLong(); return true;
+            case "lastConduitUpdateServerTime": data.lastConduitUpdateServerTime = in.nextLong(); return true;
+            case "lastMedicalDeviceDataUpdateServerTime":
+                data.lastMedicalDeviceDataUpdateServerTime = in.nextLong();
+                if (correctDeviceTime)
+                    DeviceTimeCorrection.current().setServerTime(data.lastMedicalDeviceDataUpdateServerTime);
+                return true;
+            case "firstName": data.firstName = in.nextString(); return true;
+            case "lastName": data.lastName = in.nextString(); return true;
+            case "conduitSerialNumber": data.conduitSerialNumber = in.nextString(); return true;
+            case "conduitBatteryLevel": data.conduitBatteryLevel = in.nextInt(); return true;
+            case "conduitBatteryStatus": data.conduitBatteryStatus = in.nextString(); return true;
+            case "conduitInRange": data.conduitInRange = readBoolean(in); return true;
+            case "conduitMedicalDeviceInRange": data.conduitMedicalDeviceInRange = readBoolean(in); return true;
+            case "conduitSensorInRange": data.conduitSensorInRange = readBoolean(in); return true;
+            case "medicalDeviceFamily": data.medicalDeviceFamily = in.nextString(); return true;
+            case "sensorState": data.sensorState = in.nextString(); return true;
+            case "medicalDeviceSerialNumber": data.medicalDeviceSerialNumber = in.nextString(); return true;
+            case "medicalDeviceTime": data.medicalDeviceTime = in.nextLong(); return true;
+            case "sMedicalDeviceTime":
+                data.sMedicalDeviceTime = dateAdapter.read(in);
+                if (correctDeviceTime)
+                    DeviceTimeCorrection.current().setDeviceTime(data.sMedicalDeviceTime);
+                data.sMedicalDeviceTime = correctDate(data.sMedicalDeviceTime);
+                return true;
+            case "reservoirLevelPercent": data.reservoirLevelPercent = in.nextInt(); return true;
+            case "reservoirAmount": data.reservoirAmount = in.nextInt(); return true;
+            case "reservoirRemainingUnits": data.reservoirRemainingUnits = readFloat(in); return true;
+            case "medicalDeviceBatteryLevelPercent": data.medicalDeviceBatteryLevelPercent = in.nextInt(); return true;
+            case "sensorDurationHours": data.sensorDurationHours = in.nextInt(); return true;
+            case "timeToNextCalibHours": data.timeToNextCalibHours = in.nextInt(); return true;
+            case "calibStatus": data.calibStatus = in.nextString(); return true;
+            case "bgUnits": data.bgUnits = in.nextString(); return true;
+            case "timeFormat": data.timeFormat = in.nextString(); return true;
+            case "lastSensorTime": data.lastSensorTime = in.nextLong(); return true;
+            case "sLastSensorTime": data.sLastSensorTime = correctDate(dateAdapter.read(in)); return true;
+            case "medicalDeviceSuspended": data.medicalDeviceSuspended = readBoolean(in); return true;
+            case "lastSGTrend": data.lastSGTrend = in.nextString(); return true;
+            case "lastSG": data.lastSG = sensorGlucoseAdapter.read(in); return true;
+            case "lastAlarm": data.lastAlarm = alarmAdapter.read(in); return true;
+            case "activeInsulin": data.activeInsulin = activeInsulinAdapter.read(in); return true;
+            case "sgs":
+                if (compactSensorGlucose)
+                    data.sgSeries = correctSeries(readSensorGlucoseSeries(in));
+                else
+                    data.sgs = readCorrected(in, reader -> readList(reader, sensorGlucoseAdapter));
+                return true;
+            case "limits": data.limits = limitsAdapter.read(in); return true;
+            case "markers": data.markers = readCorrected(in, reader -> readList(reader, markerAdapter)); return true;
+            case "notificationHistory": data.notificationHistory = readCorrected(in, notificationHistoryAdapter::read); return true;
+            case "therapyAlgorithmState": data.therapyAlgorithmState = therapyAlgorithmStateAdapter.read(in); return true;
+            case "pumpBannerState": data.pumpBannerState = pumpBannerStateAdapter.read(in); return true;
+            case "basal": data.basal = basalAdapter.read(in); return true;
+            case "systemStatusMessage": data.systemStatusMessage = in.nextString(); return true;
+            case "averageSG": data.averageSG = in.nextInt(); return true;
+            case "belowHypoLimit": data.belowHypoLimit = in.nextInt(); return true;
+            case "aboveHyperLimit": data.aboveHyperLimit = in.nextInt(); return true;
+            case "timeInRange": data.timeInRange = in.nextInt(); return true;
+            case "pumpCommunicationState": data.pumpCommunicationState = readBoolean(in); return true;
+            case "gstCommunicationState": data.gstCommunicationState = readBoolean(in); return true;
+            case "gstBatteryLevel": data.gstBatteryLevel = in.nextInt(); return true;
+            case "lastConduitDateTime": data.lastConduitDateTime = correctDate(dateAdapter.read(in)); return true;
+            case "maxAutoBasalRate": data.maxAutoBasalRate = readFloat(in); return true;
+            case "maxBolusAmount": data.maxBolusAmount = readFloat(in); return true;
+            case "sensorDurationMinutes": data.sensorDurationMinutes = in.nextInt(); return true;
+            case "timeToNextCalibrationMinutes": data.timeToNextCalibrationMinutes = in.nextInt(); return true;
+            case "clientTimeZoneName": data.clientTimeZoneName = in.nextString(); return true;
+            case "sgBelowLimit": data.sgBelowLimit = in.nextInt(); return true;
+            case "averageSGFloat": data.averageSGFloat = readFloat(in); return true;
+            case "calFreeSensor": data.calFreeSensor = readBoolean(in); return true;
+            case "finalCalibration": data.finalCalibration = readBoolean(in); return true;
+            default: return false;
+        }
+    }
+
+    protected Date correctDate(Date date) {
+        return correctDeviceTime ? DeviceTimeCorrection.current().correct(date) : date;
+    }
+
+    protected SensorGlucoseSeries correctSeries(SensorGlucoseSeries series) {
+        return correctDeviceTime ? DeviceTimeCorrection.current().correct(series) : series;
+    }
+
+    // Dates of the nested messages are corrected by their adapters while enabled here (e.g. lastSG is not corrected)
+    protected <E> E readCorrected(JsonReader in, ValueReader<E> reader) throws IOException {
+
+        DeviceTimeCorrection correction = null;
+        boolean wasActive;
+
+        if (!correctDeviceTime)
+            return reader.read(in);
+
+        correction = DeviceTimeCorrection.current();
+        wasActive = correction.setActive(true);
+        try {
+            return reader.read(in);
+        } finally {
+            correction.setActive(wasActive);
+        }
+
+    }
+
+    // Readings go straight into the primitive arrays, no SensorGlucose object is created
+    protected SensorGlucoseSeries readSensorGlucoseSeries(JsonReader in) throws IOException {
+
+        SensorGlucoseSeries series = new SensorGlucoseSeries();
+        Date datetime;
+        Integer sg;
+        boolean timeChange;
+        String sensorState;
+        int relativeOffset;
+
+        in.beginArray();
+        while (in.hasNext()) {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                continue;
+            }
+            datetime = null;
+            sg = null;
+            timeChange = false;
+            sensorState = null;
+            relativeOffset = 0;
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (in.peek() == JsonToken.NULL) {
+                    in.nextNull();
+                    continue;
+                }
+                switch (name) {
+                    case "sg": sg = in.nextInt(); break;
+                    case "datetime": datetime = dateAdapter.read(in); break;
+                    case "timeChange": timeChange = readBoolean(in); break;
+                    case "kind": series.kind = in.nextString(); break;
+                    case "version": series.version = in.nextInt(); break;
+                    case "sensorState": sensorState = in.nextString(); break;
+                    case "relativeOffset": relativeOffset = in.nextInt(); break;
+                    default: in.skipValue();
+                }
+            }
+            in.endObject();
+            series.add(datetime == null ? SensorGlucoseSeries.NO_TIME : datetime.getTime(), sg, sensorState, timeChange, relativeOffset);
+        }
+        in.endArray();
+
+        series.trimToSize();
+
+        return series;
+
+    }
+
+}
@@ -0,0 +1,39 @@
+package info.nightscout.medtronic.carelink.json;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import info.nightscout.medtronic.carelink.message.SensorGlucose;
+
+import java.io.IOException;
+import java.util.Date;
+
+public class SensorGlucoseTypeAdapter extends MessageTypeAdapter<SensorGlucose> {
+
+    private final TypeAdapter<Date> dateAdapter;
+
+    public SensorGlucoseTypeAdapter(Gson gson, TypeAdapter<SensorGlucose> delegate) {
+        super(delegate);
+        this.dateAdapter = gson.getAdapter(Date.class);
+    }
+
+    @Override
+    protected SensorGlucose create() {
+        return new SensorGlucose();
+    }
+
+    @Override
+    protected boolean readField(JsonReader in, String name, SensorGlucose sg) throws IOException {
+        switch (name) {
+            case "sg": sg.sg = in.nextInt(); return true;
+            case "datetime": sg.datetime = DeviceTimeCorrection.correctIfActive(dateAdapter.read(in)); return true;
+            case "timeChange": sg.timeChange = readBoolean(in); return true;
+            case "kind": sg.kind = in.nextString(); return true;
+            case "version": sg.version = in.nextInt(); return true;
+            case "sensorState": sg.sensorState = in.nextString(); return true;
+            case "relativeOffset": sg.relativeOffset = in.nextInt(); return true;
+            default: return false;
+        }
+    }
+
+}
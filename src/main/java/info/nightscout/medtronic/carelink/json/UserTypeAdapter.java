@@ -0,0 +1,45 @@
+package info.nightscout.medtronic.carelink.json;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import info.nightscout.medtronic.carelink.message.User;
+
+import java.io.IOException;
+import java.util.Date;
+
+public class UserTypeAdapter extends MessageTypeAdapter<User> {
+
+    private final TypeAdapter<Date> dateAdapter;
+
+    public UserTypeAdapter(Gson gson, TypeAdapter<User> delegate) {
+        super(delegate);
+        this.dateAdapter = gson.getAdapter(Date.class);
+    }
+
+    @Override
+    protected User create() {
+        return new User();
+    }
+
+    @Override
+    protected boolean readField(JsonReader in, String name, User user) throws IOException {
+        switch (name) {
+            case "loginDateUTC": user.loginDateUTC = dateAdapter.read(in); return true;
+            case "id": user.id = in.nextString(); return true;
+            case "country": user.country = in.nextString(); return true;
+            case "language": user.language = in.nextString(); return true;
+            case "lastName": user.lastName = in.nextString(); return true;
+            case "firstName": user.firstName = in.nextString(); return true;
+            case "accountId": user.accountId = in.nextInt(); return true;
+            case "role": user.role = in.nextString(); return true;
+            case "cpRegistrationStatus": user.cpRegistrationStatus = in.nextString(); return true;
+            case "accountSuspended": user.accountSuspended = in.nextString(); return true;
+            case "needToReconsent": user.needToReconsent = readBoolean(in); return true;
+            case "mfaRequired": user.mfaRequired = readBoolean(in); return true;
+            case "mfaEnabled": user.mfaEnabled = readBoolean(in); return true;
+            default: return false;
+        }
+    }
+
+}
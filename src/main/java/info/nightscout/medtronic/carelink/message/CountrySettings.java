@@ -1,5 +1,6 @@
 package info.nightscout.medtronic.carelink.message;
 
+import java.util.ArrayList;
 import java.util.List;
 
 public class CountrySettings {
@@ -44,4 +45,53 @@ public class CountrySettings {
     public PostalInfo postal;
     public NumberFormat numberFormat;
 
+    public CountrySettings() {
+    }
+
+    // Deep copy, nested settings are copied too
+    public CountrySettings(CountrySettings other) {
+        this.name = other.name;
+        if (other.languages != null) {
+            this.languages = new ArrayList<>(other.languages.size());
+            for (Language language : other.languages) {
+                this.languages.add(language == null ? null : new Language(language));
+            }
+        }
+        this.defaultLanguage = other.defaultLanguage;
+        this.defaultCountryName = other.defaultCountryName;
+        this.defaultDevice = other.defaultDevice;
+        this.dialCode = other.dialCode;
+        this.cpMobileAppAvailable = other.cpMobileAppAvailable;
+        this.uploaderAllowed = other.uploaderAllowed;
+        this.techSupport = other.techSupport;
+        this.techDays = other.techDays;
+        this.firstDayOfWeek = other.firstDayOfWeek;
+        this.techHours = other.techHours;
+        this.legalAge = other.legalAge;
+        this.shortDateFormat = other.shortDateFormat;
+        this.shortTimeFormat = other.shortTimeFormat;
+        this.mediaHost = other.mediaHost;
+        this.blePereodicDataEndpoint = other.blePereodicDataEndpoint;
+        this.region = other.region;
+        this.carbDefaultUnit = other.carbDefaultUnit;
+        this.bgUnits = other.bgUnits;
+        this.timeFormat = other.timeFormat;
+        this.timeUnitsDefault = other.timeUnitsDefault;
+        this.recordSeparator = other.recordSeparator;
+        this.glucoseUnitsDefault = other.glucoseUnitsDefault;
+        this.carbohydrateUnitsDefault = other.carbohydrateUnitsDefault;
+        this.carbExchangeRatioDefault = other.carbExchangeRatioDefault;
+        this.reportDateFormat = other.reportDateFormat == null ? null : new ReportDateFormat(other.reportDateFormat);
+        this.mfa = other.mfa == null ? null : new MfaRules(other.mfa);
+        if (other.supportedReports != null) {
+            this.supportedReports = new ArrayList<>(other.supportedReports.size());
+            for (SupportedReport report : other.supportedReports) {
+                this.supportedReports.add(report == null ? null : new SupportedReport(report));
+            }
+        }
+        this.smsSendingAllowed = other.smsSendingAllowed;
+        this.postal = other.postal == null ? null : new PostalInfo(other.postal);
+        this.numberFormat = other.numberFormat == null ? null : new NumberFormat(other.numberFormat);
+    }
+
 }
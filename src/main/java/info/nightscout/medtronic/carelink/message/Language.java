@@ -5,4 +5,12 @@ public class Language {
     public String name;
     public String code;
 
+    public Language() {
+    }
+
+    public Language(Language other) {
+        this.name = other.name;
+        this.code = other.code;
+    }
+
 }
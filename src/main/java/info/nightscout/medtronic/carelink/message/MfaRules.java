@@ -11,4 +11,16 @@ public class MfaRules {
     public int maxAttempts;
     public int rememberPeriod;
 
+    public MfaRules() {
+    }
+
+    public MfaRules(MfaRules other) {
+        this.status = other.status;
+        this.fromDate = other.fromDate;
+        this.gracePeriod = other.gracePeriod;
+        this.codeValidityDuration = other.codeValidityDuration;
+        this.maxAttempts = other.maxAttempts;
+        this.rememberPeriod = other.rememberPeriod;
+    }
+
 }
@@ -4,6 +4,13 @@ public class MonitorData {
 
     public String deviceFamily;
 
+    public MonitorData() {
+    }
+
+    public MonitorData(MonitorData other) {
+        this.deviceFamily = other.deviceFamily;
+    }
+
     public boolean isBle() {
         return deviceFamily.contains("BLE");
     }
@@ -5,4 +5,12 @@ public class NumberFormat {
     public String decimalSeparator;
     public String groupsSeparator;
 
+    public NumberFormat() {
+    }
+
+    public NumberFormat(NumberFormat other) {
+        this.decimalSeparator = other.decimalSeparator;
+        this.groupsSeparator = other.groupsSeparator;
+    }
+
 }
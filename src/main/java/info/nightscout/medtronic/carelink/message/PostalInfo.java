@@ -5,4 +5,12 @@ public class PostalInfo {
     public String[] postalFormat;
     public String regExpStr;
 
+    public PostalInfo() {
+    }
+
+    public PostalInfo(PostalInfo other) {
+        this.postalFormat = other.postalFormat == null ? null : other.postalFormat.clone();
+        this.regExpStr = other.regExpStr;
+    }
+
 }
@@ -28,4 +28,35 @@ public class Profile {
     public String textNotification;
     public String a1C;
 
+    public Profile() {
+    }
+
+    public Profile(Profile other) {
+        this.username = other.username;
+        this.firstName = other.firstName;
+        this.middleName = other.middleName;
+        this.lastName = other.lastName;
+        this.guardianParent = other.guardianParent;
+        this.parentFirstName = other.parentFirstName;
+        this.parentMiddleName = other.parentMiddleName;
+        this.parentLastName = other.parentLastName;
+        this.address = other.address;
+        this.city = other.city;
+        this.stateProvince = other.stateProvince;
+        this.postalCode = other.postalCode;
+        this.country = other.country;
+        this.dateOfBirth = other.dateOfBirth;
+        this.phone = other.phone;
+        this.phoneLegacy = other.phoneLegacy;
+        this.email = other.email;
+        this.gender = other.gender;
+        this.diabetesType = other.diabetesType;
+        this.therapyType = other.therapyType;
+        this.ageRange = other.ageRange;
+        this.insulinType = other.insulinType;
+        this.patientNickname = other.patientNickname;
+        this.textNotification = other.textNotification;
+        this.a1C = other.a1C;
+    }
+
 }
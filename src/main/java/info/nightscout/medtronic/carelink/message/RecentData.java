@@ -82,6 +82,8 @@ public class RecentData {
     public Alarm lastAlarm;
     public ActiveInsulin activeInsulin;
     public List<SensorGlucose> sgs;
+    // Filled instead of sgs if parsed in compact mode, written as sgs by the CareLink Gson adapters
+    public transient SensorGlucoseSeries sgSeries;
     public List<Limit> limits;
     public List<Marker> markers;
     public NotificationHistory notificationHistory;
@@ -107,4 +109,11 @@ public class RecentData {
     public Boolean calFreeSensor;
     public Boolean finalCalibration;
 
+    // Sensor glucose readings of either representation
+    public List<SensorGlucose> getSensorGlucoses() {
+        if (sgs == null && sgSeries != null)
+            return sgSeries.toList();
+        return sgs;
+    }
+
 }
@@ -0,0 +1,34 @@
+package info.nightscout.medtronic.carelink.message;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Items of a RecentData which were not included in the previous poll
+public class RecentDataDelta {
+
+    // Full response the delta was calculated from (device status, last SG, etc.)
+    public RecentData recentData;
+    public List<SensorGlucose> sgs = new ArrayList<>();
+    public List<Marker> markers = new ArrayList<>();
+    public List<ActiveNotification> activeNotifications = new ArrayList<>();
+    public List<ClearedNotification> clearedNotifications = new ArrayList<>();
+
+    public boolean isEmpty() {
+        return sgs.isEmpty() && markers.isEmpty() && activeNotifications.isEmpty() && clearedNotifications.isEmpty();
+    }
+
+    // Item keys shared by the delta producers (watermark, archive)
+    // Time + value + sensor state identifies a reading, a later value for the same slot is a new reading
+    public static String getSensorGlucoseKey(long time, Integer value, String sensorState) {
+        return time + "|" + value + "|" + sensorState;
+    }
+
+    // Index is not stable as the 24h window moves: type + time + the programmed amounts identify a marker
+    // (delivered amounts are left out, they change while a bolus is running)
+    public static String getMarkerKey(Marker marker) {
+        return marker.type + "|" + marker.dateTime.getTime() + "|" + marker.value + "|" + marker.amount + "|" + marker.bolusAmount
+                + "|" + marker.bolusType + "|" + marker.activationType + "|" + marker.programmedFastAmount
+                + "|" + marker.programmedExtendedAmount + "|" + marker.programmedDuration;
+    }
+
+}
@@ -10,4 +10,17 @@ public class ReportDateFormat {
     public String dateSeparator;
     public String timeSeparator;
 
+    public ReportDateFormat() {
+    }
+
+    public ReportDateFormat(ReportDateFormat other) {
+        this.longTimePattern12 = other.longTimePattern12;
+        this.longTimePattern24 = other.longTimePattern24;
+        this.shortTimePattern12 = other.shortTimePattern12;
+        this.shortTimePattern24 = other.shortTimePattern24;
+        this.shortDatePattern = other.shortDatePattern;
+        this.dateSeparator = other.dateSeparator;
+        this.timeSeparator = other.timeSeparator;
+    }
+
 }
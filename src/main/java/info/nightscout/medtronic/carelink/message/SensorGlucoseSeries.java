@@ -0,0 +1,183 @@
+package info.nightscout.medtronic.carelink.message;
+
+import java.util.*;
+
+// Compact sensor glucose series: primitive arrays instead of a SensorGlucose object per reading
+public class SensorGlucoseSeries {
+
+    public static final long NO_TIME = Long.MIN_VALUE;
+    public static final short NO_VALUE = Short.MIN_VALUE;
+
+    protected static final int DEFAULT_CAPACITY = 288;
+    protected static final byte FLAG_TIME_CHANGE = 1;
+
+    // Sensor states by code, 0 is null (fixed table, read without locking by concurrent parsers)
+    protected static final String[] SENSOR_STATES = {
+            null,
+            RecentData.SENSOR_STATE_NO_ERROR_MESSAGE,
+            RecentData.SENSOR_STATE_NORMAL,
+            RecentData.SENSOR_STATE_NO_DATA_FROM_PUMP,
+            RecentData.SENSOR_STATE_CALIBRATION_REQUIRED,
+            RecentData.SENSOR_STATE_WAIT_TO_CALIBRATE,
+            RecentData.SENSOR_STATE_DO_NOT_CALIBRATE,
+            RecentData.SENSOR_STATE_CALIBRATING,
+            RecentData.SENSOR_STATE_WARM_UP,
+            RecentData.SENSOR_STATE_CHANGE_SENSOR,
+            RecentData.SENSOR_STATE_UNKNOWN
+    };
+    protected static final Map<String, Byte> SENSOR_STATE_CODES;
+    protected static final byte SENSOR_STATE_UNKNOWN_CODE;
+
+    static {
+        Map<String, Byte> codes = new HashMap<>();
+        for (int i = 1; i < SENSOR_STATES.length; i++)
+            codes.put(SENSOR_STATES[i], (byte) i);
+        SENSOR_STATE_CODES = Collections.unmodifiableMap(codes);
+        SENSOR_STATE_UNKNOWN_CODE = SENSOR_STATE_CODES.get(RecentData.SENSOR_STATE_UNKNOWN);
+    }
+
+    // Same for every reading of a response
+    public String kind;
+    public int version;
+
+    protected int size;
+    protected long[] times;
+    protected short[] values;
+    protected byte[] sensorStates;
+    protected byte[] flags;
+    protected int[] relativeOffsets;
+
+    public SensorGlucoseSeries() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public SensorGlucoseSeries(int capacity) {
+        times = new long[capacity];
+        values = new short[capacity];
+        sensorStates = new byte[capacity];
+        flags = new byte[capacity];
+        relativeOffsets = new int[capacity];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void add(long time, Integer value, String sensorState, boolean timeChange, int relativeOffset) {
+
+        if (size == times.length)
+            this.grow();
+
+        times[size] = time;
+        values[size] = value == null ? NO_VALUE : (short) Math.max(Short.MIN_VALUE + 1, Math.min(Short.MAX_VALUE, value));
+        sensorStates[size] = getSensorStateCode(sensorState);
+        flags[size] = timeChange ? FLAG_TIME_CHANGE : 0;
+        relativeOffsets[size] = relativeOffset;
+        size++;
+
+    }
+
+    public long getTime(int index) {
+        return times[checkIndex(index)];
+    }
+
+    public boolean hasValue(int index) {
+        return values[checkIndex(index)] != NO_VALUE;
+    }
+
+    public int getValue(int index) {
+        return values[checkIndex(index)];
+    }
+
+    public String getSensorState(int index) {
+        return getSensorState(sensorStates[checkIndex(index)]);
+    }
+
+    public boolean isTimeChange(int index) {
+        return (flags[checkIndex(index)] & FLAG_TIME_CHANGE) != 0;
+    }
+
+    public int getRelativeOffset(int index) {
+        return relativeOffsets[checkIndex(index)];
+    }
+
+    // Move every reading in time (e.g. device time correction)
+    public void shiftTimes(long offsetMillis) {
+        for (int i = 0; i < size; i++) {
+            if (times[i] != NO_TIME)
+                times[i] += offsetMillis;
+        }
+    }
+
+    // SensorGlucose object of a reading, created on demand
+    public SensorGlucose get(int index) {
+
+        SensorGlucose sg = new SensorGlucose();
+
+        checkIndex(index);
+        sg.sg = values[index] == NO_VALUE ? null : (int) values[index];
+        sg.datetime = times[index] == NO_TIME ? null : new Date(times[index]);
+        sg.timeChange = (flags[index] & FLAG_TIME_CHANGE) != 0;
+        sg.kind = kind;
+        sg.version = version;
+        sg.sensorState = getSensorState(sensorStates[index]);
+        sg.relativeOffset = relativeOffsets[index];
+
+        return sg;
+
+    }
+
+    public List<SensorGlucose> toList() {
+
+        List<SensorGlucose> list = new ArrayList<>(size);
+
+        for (int i = 0; i < size; i++) {
+            list.add(this.get(i));
+        }
+
+        return list;
+
+    }
+
+    public void trimToSize() {
+        if (size < times.length)
+            this.resize(size);
+    }
+
+    protected void grow() {
+        this.resize(Math.max(DEFAULT_CAPACITY, times.length + (times.length >> 1)));
+    }
+
+    protected void resize(int capacity) {
+        times = Arrays.copyOf(times, capacity);
+        values = Arrays.copyOf(values, capacity);
+        sensorStates = Arrays.copyOf(sensorStates, capacity);
+        flags = Arrays.copyOf(flags, capacity);
+        relativeOffsets = Arrays.copyOf(relativeOffsets, capacity);
+    }
+
+    protected int checkIndex(int index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        return index;
+    }
+
+    // States missing from the table are kept as unknown state
+    protected static byte getSensorStateCode(String sensorState) {
+
+        Byte code = null;
+
+        if (sensorState == null)
+            return 0;
+
+        code = SENSOR_STATE_CODES.get(sensorState);
+
+        return code == null ? SENSOR_STATE_UNKNOWN_CODE : code;
+
+    }
+
+    protected static String getSensorState(byte code) {
+        return SENSOR_STATES[code];
+    }
+
+}
@@ -6,4 +6,13 @@ public class SupportedReport {
     public String[] onlyFor;
     public String[] notFor;
 
+    public SupportedReport() {
+    }
+
+    public SupportedReport(SupportedReport other) {
+        this.report = other.report;
+        this.onlyFor = other.onlyFor == null ? null : other.onlyFor.clone();
+        this.notFor = other.notFor == null ? null : other.notFor.clone();
+    }
+
 }
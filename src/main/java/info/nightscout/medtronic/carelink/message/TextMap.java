@@ -1,6 +1,11 @@
 package info.nightscout.medtronic.carelink.message;
 
-import java.util.HashMap;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class TextMap {
 
@@ -8,157 +13,17 @@ public class TextMap {
     public static final String ERROR_TEXT_PREFIX_GUARDIAN = "GM_";
     public static final String ERROR_TEXT_PREFIX_NGP = "N";
 
-    private static HashMap<String, String> errorTextMap;
+    // Texts are in TextMap[_<language>].properties next to this class
+    private static final String BUNDLE_NAME = TextMap.class.getName();
+    private static final int NGP_ERROR_CODE_COUNT = 1000;
+
+    // NGP error code => internal error code of the text
     private static HashMap<String, String> errorCodeMap;
 
-    static {
+    // Lookup tables of the already used locales
+    private static final Map<Locale, Messages> messagesByLocale = new ConcurrentHashMap<>();
 
-        errorTextMap = new HashMap<>();
-        errorTextMap.put("", "");
-        errorTextMap.put("3", "Battery out limit");
-        errorTextMap.put("4", "Delivery stopped. Check BG");
-        errorTextMap.put("5", "Pump battery depleted. Insulin delivery stopped");
-        errorTextMap.put("6", "Auto Off. Insulin delivery stopped");
-        errorTextMap.put("16", "Pump reset. Insulin delivery stopped");
-        errorTextMap.put("43", "Pump motor error. Insulin delivery stopped");
-        errorTextMap.put("50", "Bolus stopped");
-        errorTextMap.put("51", "Delivery limit exceeded. Check BG");
-        errorTextMap.put("55", "Pump battery failed. Replace battery");
-        errorTextMap.put("59", "Button error");
-        errorTextMap.put("61", "Check settings. Insulin delivery stopped");
-        errorTextMap.put("62", "Empty reservoir");
-        errorTextMap.put("66", "No reservoir");
-        errorTextMap.put("74", "Finish loading");
-        errorTextMap.put("81", "Replace pump battery now");
-        errorTextMap.put("82", "Low Reservoir");
-        errorTextMap.put("83", "Check BG");
-        errorTextMap.put("84", "Alarm clock");
-        errorTextMap.put("85", "Max fill reached");
-        errorTextMap.put("86", "Weak battery detected");
-        errorTextMap.put("87", "Missed bolus");
-        errorTextMap.put("88", "Silenced sensor alert. Check alarm history");
-        errorTextMap.put("101", "High SG. CHECK BG");
-        errorTextMap.put("102", "Low SG");
-        errorTextMap.put("103", "Threshold Suspend");
-        errorTextMap.put("104", "Meter BG now");
-        errorTextMap.put("105", "Calibration Reminder");
-        errorTextMap.put("106", "Calibration error");
-        errorTextMap.put("107", "Sensor expired");
-        errorTextMap.put("108", "Change sensor");
-        errorTextMap.put("109", "Sensor error");
-        errorTextMap.put("110", "Recharge transmitter");
-        errorTextMap.put("111", "Transmitter battery low");
-        errorTextMap.put("112", "Weak signal");
-        errorTextMap.put("113", "Lost sensor");
-        errorTextMap.put("114", "Sensor glucose approaching high limit");
-        errorTextMap.put("115", "Sensor glucose approaching low limit");
-        errorTextMap.put("116", "Sensor glucose rising rapidly");
-        errorTextMap.put("117", "Sensor glucose falling rapidly");
-        errorTextMap.put("Axx", "Pump error Anull");
-        errorTextMap.put("Exx", "Pump error Enull");
-        errorTextMap.put("N002", "Pump Error. Delivery Stopped");
-        errorTextMap.put("N006", "Pump Battery Out Limit");
-        errorTextMap.put("N007", "Delivery Stopped. Check BG");
-        errorTextMap.put("N011", "Replace Pump Battery Now");
-        errorTextMap.put("N012", "Auto Suspend Limit Reached. Delivery Stopped");
-        errorTextMap.put("N024", "Critical Pump Error. Stop Pump Use. Use Other Treatment");
-        errorTextMap.put("N025", "Pump Power Error. Record Settings");
-        errorTextMap.put("N029", "Pump Restarted. Delivery Stopped");
-        errorTextMap.put("N037", "Pump Motor Error. Delivery Stopped");
-        errorTextMap.put("N051", "Bolus Stopped");
-        errorTextMap.put("N052", "Delivery Limit Exceeded. Check BG");
-        errorTextMap.put("N057", "Pump Battery Not Compatible");
-        errorTextMap.put("N058", "Insert A New AA Battery");
-        errorTextMap.put("N061", "Pump Button Error. Delivery Stopped");
-        errorTextMap.put("N062", "New Notification Received From Pump");
-        errorTextMap.put("N066", "No Reservoir Detected During Infusion Set Change");
-        errorTextMap.put("N069", "Loading Incomplete During Infusion Set Change");
-        errorTextMap.put("N073", "Replace Pump Battery Now");
-        errorTextMap.put("N077", "Pump Settings Error. Delivery Stopped");
-        errorTextMap.put("N084", "Pump Battery Removed. Replace Battery");
-        errorTextMap.put("N100", "Bolus Entry Timed Out Before Delivery");
-        errorTextMap.put("N103", "BG Check Reminder");
-        errorTextMap.put("N104", "Replace Pump Battery Soon");
-        errorTextMap.put("N105", "Reservoir Low. Change Reservoir Soon");
-        errorTextMap.put("N107", "Missed Meal Bolus Reminder");
-        errorTextMap.put("N109", "Set Change Reminder");
-        errorTextMap.put("N110", "Silenced Sensor Alert. Check Alarm History");
-        errorTextMap.put("N113", "Reservoir Empty. Change Reservoir Now");
-        errorTextMap.put("N117", "Active Insulin Cleared");
-        errorTextMap.put("N130", "Rewind Required. Delivery Stopped");
-        errorTextMap.put("N140", "Delivery Suspended. Connect Infusion Set");
-        errorTextMap.put("N775", "Calibrate Now");
-        errorTextMap.put("N776", "Calibration Error");
-        errorTextMap.put("N777", "Change Sensor");
-        errorTextMap.put("N779", "Recharge Transmitter Now");
-        errorTextMap.put("N780", "Lost Sensor Signal");
-        errorTextMap.put("N784", "SG Rising Rapidly");
-        errorTextMap.put("N794", "Sensor Expired. Change Sensor");
-        errorTextMap.put("N795", "Lost Sensor Signal. Check Transmitter");
-        errorTextMap.put("N796", "No Sensor Signal");
-        errorTextMap.put("N797", "Sensor Connected");
-        errorTextMap.put("N801", "Do Not Calibrate. Wait Up To 3 Hours");
-        errorTextMap.put("N802", "Low Sensor Glucose");
-        errorTextMap.put("N803", "Low Sensor Glucose. Check BG");
-        errorTextMap.put("N805", "Alert Before Low. Check BG");
-        errorTextMap.put("N807", "Basal Delivery Resumed. Check BG");
-        errorTextMap.put("N809", "Suspend On Low. Delivery Stopped. Check BG");
-        errorTextMap.put("N810", "Suspend Before Low. Delivery Stopped. Check BG");
-        errorTextMap.put("N812", "Call Emergency Assistance");
-        errorTextMap.put("N814", "Basal Resumed. SG Still Under Low Limit. Check BG");
-        errorTextMap.put("N815", "Low Limit Changed. Basal Manually Resumed. Check BG");
-        errorTextMap.put("N816", "High Sensor Glucose");
-        errorTextMap.put("N817", "Alert Before High. Check BG");
-        errorTextMap.put("N819", "Auto Mode Exit. Basal Delivery Started. BG Required");
-        errorTextMap.put("N821", "Minimum Delivery Timeout. BG Required");
-        errorTextMap.put("N822", "Maximum Delivery Timeout. BG Required");
-        errorTextMap.put("N823", "High Sensor Glucose For Over 1 Hour");
-        errorTextMap.put("N827", "Urgent Low Sensor Glucose. Check BG");
-        errorTextMap.put("N829", "BG Required");
-        errorTextMap.put("N832", "Calibration Required");
-        errorTextMap.put("N833", "Correction Bolus Recommended");
-        errorTextMap.put("N869", "Calibration Reminder");
-        errorTextMap.put("N870", "Recharge Transmitter Soon");
-        errorTextMap.put("Nnodata1", "Reconnecting To Pump");
-        errorTextMap.put("Nnodata2", "Lost Signal. Check Mobile Application");
-        errorTextMap.put("GM_alert.sg.threshold.low.urgent", "Urgent Low Sensor Glucose");
-        errorTextMap.put("GM_alert.sg.threshold.low", "Low Sensor Glucose");
-        errorTextMap.put("GM_alert.sg.predictive.low", "Low Predicted");
-        errorTextMap.put("GM_alert.sg.rate.falling", "Fall Alert");
-        errorTextMap.put("GM_alert.sg.threshold.high", "High Sensor Glucose");
-        errorTextMap.put("GM_alert.sg.predictive.high", "High Predicted");
-        errorTextMap.put("GM_alert.sg.rate.rising", "Rise Alert");
-        errorTextMap.put("GM_alert.transmitter.battery", "Transmitter Battery Empty");
-        errorTextMap.put("GM_alert.sensor.replace.calibrationError", "Change Sensor");
-        errorTextMap.put("GM_alert.sensor.replace.sensorError", "Change Sensor");
-        errorTextMap.put("GM_alert.sensor.replace.lifetime", "Sensor End of Life");
-        errorTextMap.put("GM_alert.transmitter.signal", "Lost Sensor Communication");
-        errorTextMap.put("GM_alert.sensor.connection", "Sensor Connected");
-        errorTextMap.put("GM_alert.sensor.calibration.rejected", "Calibration Not Accepted");
-        errorTextMap.put("GM_alert.sensor.calibration.calibrate_now", "Calibrate Now");
-        errorTextMap.put("GM_alert.sensor.error", "Sensor Glucose Not Available");
-        errorTextMap.put("GM_alert.calibration.reminder", "Calibration Reminder");
-        errorTextMap.put("GM_alert.transmitter.error", "Transmitter Error");
-        errorTextMap.put("GM_alert.receiver.battery.low", "Mobile Device Battery Low");
-        errorTextMap.put("Nalert.sg.threshold.low.urgent", "Urgent Low Sensor Glucose");
-        errorTextMap.put("Nalert.sg.threshold.low", "Low Sensor Glucose");
-        errorTextMap.put("Nalert.sg.predictive.low", "Low Predicted");
-        errorTextMap.put("Nalert.sg.rate.falling", "Fall Alert");
-        errorTextMap.put("Nalert.sg.threshold.high", "High Sensor Glucose");
-        errorTextMap.put("Nalert.sg.predictive.high", "High Predicted");
-        errorTextMap.put("Nalert.sg.rate.rising", "Rise Alert");
-        errorTextMap.put("Nalert.transmitter.battery", "Transmitter Battery Empty");
-        errorTextMap.put("Nalert.sensor.replace.calibrationError", "Change Sensor");
-        errorTextMap.put("Nalert.sensor.replace.sensorError", "Change Sensor");
-        errorTextMap.put("Nalert.sensor.replace.lifetime", "Sensor End of Life");
-        errorTextMap.put("Nalert.transmitter.signal", "Lost Sensor Communication");
-        errorTextMap.put("Nalert.sensor.connection", "Sensor Connected");
-        errorTextMap.put("Nalert.sensor.calibration.rejected", "Calibration Not Accepted");
-        errorTextMap.put("Nalert.sensor.calibration.calibrate_now", "Calibrate Now");
-        errorTextMap.put("Nalert.sensor.error", "Sensor Glucose Not Available");
-        errorTextMap.put("Nalert.calibration.reminder", "Calibration Reminder");
-        errorTextMap.put("Nalert.transmitter.error", "Transmitter Error");
-        errorTextMap.put("Nalert.receiver.battery.low", "Mobile Device Battery Low");
+    static {
 
         errorCodeMap = new HashMap<>();
         errorCodeMap.put("002", "002");
@@ -301,43 +166,115 @@ public class TextMap {
 
     }
 
+    // Texts of one locale: NGP texts indexed by error code, Guardian texts by message id (without prefix)
+    private static class Messages {
+
+        private final String[] ngpMessages = new String[NGP_ERROR_CODE_COUNT];
+        private final Map<String, String> guardianMessages = new HashMap<>();
+
+        private Messages(ResourceBundle bundle) {
+
+            for (int code = 0; code < NGP_ERROR_CODE_COUNT; code++) {
+                String formattedEC = String.format("%03d", code);
+                String internalEC = errorCodeMap.getOrDefault(formattedEC, formattedEC);
+                String key = ERROR_TEXT_PREFIX_NGP + internalEC;
+                ngpMessages[code] = bundle.containsKey(key) ? bundle.getString(key) : "";
+            }
+
+            for (String key : bundle.keySet()) {
+                if (key.startsWith(ERROR_TEXT_PREFIX_GUARDIAN))
+                    guardianMessages.put(key.substring(ERROR_TEXT_PREFIX_GUARDIAN.length()), bundle.getString(key));
+            }
+
+        }
+
+    }
+
+    // UTF-8 properties (Java 8 reads ISO-8859-1 by default), no fallback to the JVM default locale
+    private static class Utf8Control extends ResourceBundle.Control {
+
+        @Override
+        public List<String> getFormats(String baseName) {
+            return ResourceBundle.Control.FORMAT_PROPERTIES;
+        }
+
+        @Override
+        public Locale getFallbackLocale(String baseName, Locale locale) {
+            return null;
+        }
+
+        @Override
+        public ResourceBundle newBundle(String baseName, Locale locale, String format, ClassLoader loader, boolean reload)
+                throws IOException {
+
+            String resourceName = toResourceName(toBundleName(baseName, locale), "properties");
+
+            try (InputStream stream = loader.getResourceAsStream(resourceName)) {
+                if (stream == null)
+                    return null;
+                return new PropertyResourceBundle(new InputStreamReader(stream, StandardCharsets.UTF_8));
+            }
+
+        }
+
+    }
+
     public static String getAlarmMessage(String deviceFamily, Alarm alarm){
 
-        return getErrorMessage(deviceFamily, alarm.kind, alarm.code);
+        return getErrorMessage(deviceFamily, alarm.kind, alarm.code, Locale.ROOT);
+
+    }
+
+    public static String getAlarmMessage(String deviceFamily, Alarm alarm, Locale locale){
+
+        return getErrorMessage(deviceFamily, alarm.kind, alarm.code, locale);
 
     }
 
     public static String getNotificationMessage(String deviceFamily, ClearedNotification notification){
 
-        return getErrorMessage(deviceFamily, notification.messageId, notification.faultId);
+        return getErrorMessage(deviceFamily, notification.messageId, notification.faultId, Locale.ROOT);
+
+    }
+
+    public static String getNotificationMessage(String deviceFamily, ClearedNotification notification, Locale locale){
+
+        return getErrorMessage(deviceFamily, notification.messageId, notification.faultId, locale);
 
     }
 
     protected static String getErrorMessage(String deviceFamily, String guardianErrorCode, int ngpErrorCode)
     {
-        String errorTextId;
-        String internalEC;
-
-        if(deviceFamily.equals(RecentData.DEVICE_FAMILY_GUARDIAN)){
-            if(guardianErrorCode != null)
-                errorTextId = ERROR_TEXT_PREFIX_GUARDIAN + guardianErrorCode;
-            else
-                errorTextId = null;
-        } else if (deviceFamily.equals(RecentData.DEVICE_FAMILY_NGP)){
-            String formattedEC = String.format("%03d", ngpErrorCode);
-            if(errorCodeMap.containsKey(formattedEC))
-                internalEC = errorCodeMap.get(formattedEC);
-            else
-                internalEC = formattedEC;
-            errorTextId = ERROR_TEXT_PREFIX_NGP + internalEC;
+        return getErrorMessage(deviceFamily, guardianErrorCode, ngpErrorCode, Locale.ROOT);
+    }
+
+    // Array or map lookup only, no string is built
+    protected static String getErrorMessage(String deviceFamily, String guardianErrorCode, int ngpErrorCode, Locale locale)
+    {
+        Messages messages;
+        String message;
+
+        if(RecentData.DEVICE_FAMILY_GUARDIAN.equals(deviceFamily)){
+            if(guardianErrorCode == null)
+                return "";
+            message = getMessages(locale).guardianMessages.get(guardianErrorCode);
+            return message == null ? "" : message;
+        } else if (RecentData.DEVICE_FAMILY_NGP.equals(deviceFamily)){
+            messages = getMessages(locale);
+            // No text exists for codes out of the 3 digit range
+            if(ngpErrorCode < 0 || ngpErrorCode >= NGP_ERROR_CODE_COUNT)
+                return "";
+            return messages.ngpMessages[ngpErrorCode];
         } else {
-            errorTextId = null;
+            return "";
         }
 
-        if(errorTextId != null && errorTextMap.containsKey(errorTextId))
-            return errorTextMap.get(errorTextId);
-        else
-            return "";
+    }
+
+    // Loaded on first use of the locale
+    private static Messages getMessages(Locale locale) {
+        return messagesByLocale.computeIfAbsent(locale,
+                l -> new Messages(ResourceBundle.getBundle(BUNDLE_NAME, l, TextMap.class.getClassLoader(), new Utf8Control())));
     }
 
 }
@@ -25,6 +25,25 @@ public class User {
     public boolean mfaRequired;
     public boolean mfaEnabled;
 
+    public User() {
+    }
+
+    public User(User other) {
+        this.loginDateUTC = other.loginDateUTC == null ? null : new Date(other.loginDateUTC.getTime());
+        this.id = other.id;
+        this.country = other.country;
+        this.language = other.language;
+        this.lastName = other.lastName;
+        this.firstName = other.firstName;
+        this.accountId = other.accountId;
+        this.role = other.role;
+        this.cpRegistrationStatus = other.cpRegistrationStatus;
+        this.accountSuspended = other.accountSuspended;
+        this.needToReconsent = other.needToReconsent;
+        this.mfaRequired = other.mfaRequired;
+        this.mfaEnabled = other.mfaEnabled;
+    }
+
     public boolean isCarePartner() {
         return(this.role.equals(ROLE_CARE_PARTNER_US) || this.role.equals(ROLE_CARE_PARTNER_OUS));
     }
@@ -0,0 +1,260 @@
+package info.nightscout.medtronic.carelink.metrics;
+
+import okhttp3.EventListener;
+import okhttp3.HttpUrl;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// Thread safe metrics of one or more clients (e.g. shared by a poller fleet), filled by the OkHttp event listener and the client
+public class CareLinkMetrics implements CareLinkMetricsMXBean {
+
+    public static final String JMX_DOMAIN = "info.nightscout.medtronic.carelink";
+
+    private static final double MICROS_TO_SECONDS = 0.000001;
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99};
+
+    protected final Map<String, EndpointMetrics> endpoints = new ConcurrentHashMap<>();
+    protected final LogLinearHistogram login = new LogLinearHistogram();
+    protected final LongAdder loginFailures = new LongAdder();
+    // Logins forced by a 401 response
+    protected final LongAdder unauthorizedRefreshes = new LongAdder();
+    protected volatile MBeanServer mBeanServer;
+
+    public EventListener.Factory getEventListenerFactory() {
+        return call -> new MetricsEventListener(this.getEndpoint(call.request().url()));
+    }
+
+    // Query parameters are not part of the endpoint (e.g. requestTime differs per call)
+    public static String getEndpointName(HttpUrl url) {
+        return url.host() + url.encodedPath();
+    }
+
+    public EndpointMetrics getEndpoint(HttpUrl url) {
+        return this.getEndpoint(getEndpointName(url));
+    }
+
+    public EndpointMetrics getEndpoint(String endpoint) {
+
+        EndpointMetrics metrics = endpoints.get(endpoint);
+
+        if (metrics == null) {
+            metrics = endpoints.computeIfAbsent(endpoint, EndpointMetrics::new);
+            if (mBeanServer != null)
+                this.registerEndpoint(mBeanServer, metrics);
+        }
+
+        return metrics;
+
+    }
+
+    public void recordParse(HttpUrl url, long nanos) {
+        this.getEndpoint(url).parse.record(nanos / 1000);
+    }
+
+    public void recordRetry(HttpUrl url) {
+        this.getEndpoint(url).retries.increment();
+    }
+
+    public void recordShortCircuit(HttpUrl url) {
+        this.getEndpoint(url).shortCircuited.increment();
+    }
+
+    public void recordLogin(long nanos, boolean success) {
+        login.record(nanos / 1000);
+        if (!success)
+            loginFailures.increment();
+    }
+
+    public void recordUnauthorizedRefresh() {
+        unauthorizedRefreshes.increment();
+    }
+
+    @Override
+    public long getLoginCount() {
+        return login.getCount();
+    }
+
+    @Override
+    public long getLoginFailureCount() {
+        return loginFailures.sum();
+    }
+
+    @Override
+    public HistogramSummary getLoginMillis() {
+        return login.getSummary(0.001);
+    }
+
+    @Override
+    public long getUnauthorizedRefreshCount() {
+        return unauthorizedRefreshes.sum();
+    }
+
+    @Override
+    public long getRequestCount() {
+        long count = 0;
+        for (EndpointMetrics metrics : endpoints.values())
+            count += metrics.getRequestCount();
+        return count;
+    }
+
+    @Override
+    public long getUnauthorizedCount() {
+        long count = 0;
+        for (EndpointMetrics metrics : endpoints.values())
+            count += metrics.getUnauthorizedCount();
+        return count;
+    }
+
+    @Override
+    public long getRetryCount() {
+        long count = 0;
+        for (EndpointMetrics metrics : endpoints.values())
+            count += metrics.getRetryCount();
+        return count;
+    }
+
+    @Override
+    public long getShortCircuitCount() {
+        long count = 0;
+        for (EndpointMetrics metrics : endpoints.values())
+            count += metrics.getShortCircuitCount();
+        return count;
+    }
+
+    @Override
+    public double getUnauthorizedRate() {
+        long requests = this.getRequestCount();
+        return requests == 0 ? 0 : (double) this.getUnauthorizedCount() / requests;
+    }
+
+    @Override
+    public String[] getEndpoints() {
+        return endpoints.keySet().toArray(new String[0]);
+    }
+
+    // Register this and the endpoints (also the ones created later) in the platform MBean server
+    public void registerMBeans() throws JMException {
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+        server.registerMBean(this, new ObjectName(JMX_DOMAIN + ":type=CareLinkMetrics"));
+        this.mBeanServer = server;
+        for (EndpointMetrics metrics : endpoints.values())
+            this.registerEndpoint(server, metrics);
+
+    }
+
+    protected void registerEndpoint(MBeanServer server, EndpointMetrics metrics) {
+        try {
+            ObjectName name = new ObjectName(JMX_DOMAIN + ":type=Endpoint,name=" + ObjectName.quote(metrics.getEndpoint()));
+            if (!server.isRegistered(name))
+                server.registerMBean(metrics, name);
+        } catch (JMException ex) {
+            // Concurrent registration of the same endpoint
+        }
+    }
+
+    // Prometheus text exposition format (version 0.0.4), histograms are exported as summaries
+    public void writePrometheus(Writer writer) throws IOException {
+
+        writeHelp(writer, "carelink_http_requests_total", "counter", "HTTP responses received.");
+        for (EndpointMetrics metrics : endpoints.values())
+            writeSample(writer, "carelink_http_requests_total", metrics.endpoint, null, metrics.getRequestCount());
+        writeHelp(writer, "carelink_http_failures_total", "counter", "HTTP calls failed without response.");
+        for (EndpointMetrics metrics : endpoints.values())
+            writeSample(writer, "carelink_http_failures_total", metrics.endpoint, null, metrics.getFailureCount());
+        writeHelp(writer, "carelink_http_unauthorized_total", "counter", "HTTP 401 responses.");
+        for (EndpointMetrics metrics : endpoints.values())
+            writeSample(writer, "carelink_http_unauthorized_total", metrics.endpoint, null, metrics.getUnauthorizedCount());
+        writeHelp(writer, "carelink_http_retries_total", "counter", "HTTP calls retried by the retry policy.");
+        for (EndpointMetrics metrics : endpoints.values())
+            writeSample(writer, "carelink_http_retries_total", metrics.endpoint, null, metrics.getRetryCount());
+        writeHelp(writer, "carelink_http_short_circuited_total", "counter", "HTTP calls not sent because the circuit of the host was open.");
+        for (EndpointMetrics metrics : endpoints.values())
+            writeSample(writer, "carelink_http_short_circuited_total", metrics.endpoint, null, metrics.getShortCircuitCount());
+
+        writeSummary(writer, "carelink_http_dns_seconds", "DNS lookup time.", MICROS_TO_SECONDS, m -> m.dns);
+        writeSummary(writer, "carelink_http_connect_seconds", "Connect time including TLS.", MICROS_TO_SECONDS, m -> m.connect);
+        writeSummary(writer, "carelink_http_tls_seconds", "TLS handshake time.", MICROS_TO_SECONDS, m -> m.tls);
+        writeSummary(writer, "carelink_http_time_to_first_byte_seconds", "Request sent until response headers started.", MICROS_TO_SECONDS, m -> m.timeToFirstByte);
+        writeSummary(writer, "carelink_http_call_seconds", "Whole call time.", MICROS_TO_SECONDS, m -> m.call);
+        writeSummary(writer, "carelink_parse_seconds", "Response parse time.", MICROS_TO_SECONDS, m -> m.parse);
+        writeSummary(writer, "carelink_http_response_bytes", "Response body size.", 1, m -> m.responseSize);
+
+        writeHelp(writer, "carelink_login_seconds", "summary", "Login time.");
+        writeHistogram(writer, "carelink_login_seconds", null, login, MICROS_TO_SECONDS);
+        writeHelp(writer, "carelink_login_failures_total", "counter", "Failed logins.");
+        writeSample(writer, "carelink_login_failures_total", null, null, loginFailures.sum());
+        writeHelp(writer, "carelink_unauthorized_refreshes_total", "counter", "Logins forced by a 401 response.");
+        writeSample(writer, "carelink_unauthorized_refreshes_total", null, null, unauthorizedRefreshes.sum());
+
+    }
+
+    public String toPrometheusText() {
+
+        StringWriter writer = new StringWriter();
+
+        try {
+            this.writePrometheus(writer);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+
+        return writer.toString();
+
+    }
+
+    protected interface HistogramSelector {
+        LogLinearHistogram select(EndpointMetrics metrics);
+    }
+
+    protected void writeSummary(Writer writer, String name, String help, double scale, HistogramSelector selector) throws IOException {
+        writeHelp(writer, name, "summary", help);
+        for (EndpointMetrics metrics : endpoints.values())
+            writeHistogram(writer, name, metrics.endpoint, selector.select(metrics), scale);
+    }
+
+    protected static void writeHistogram(Writer writer, String name, String endpoint, LogLinearHistogram histogram, double scale) throws IOException {
+        for (double quantile : QUANTILES)
+            writeSample(writer, name, endpoint, String.valueOf(quantile), histogram.getValueAtQuantile(quantile) * scale);
+        writeSample(writer, name + "_sum", endpoint, null, histogram.getSum() * scale);
+        writeSample(writer, name + "_count", endpoint, null, histogram.getCount());
+    }
+
+    protected static void writeHelp(Writer writer, String name, String type, String help) throws IOException {
+        writer.write("# HELP " + name + " " + help + "\n");
+        writer.write("# TYPE " + name + " " + type + "\n");
+    }
+
+    protected static void writeSample(Writer writer, String name, String endpoint, String quantile, double value) throws IOException {
+
+        writer.write(name);
+        if (endpoint != null || quantile != null) {
+            writer.write('{');
+            if (endpoint != null)
+                writer.write("endpoint=\"" + escapeLabel(endpoint) + "\"");
+            if (quantile != null)
+                writer.write((endpoint != null ? "," : "") + "quantile=\"" + quantile + "\"");
+            writer.write('}');
+        }
+        writer.write(' ');
+        writer.write(value == Math.rint(value) && Math.abs(value) < 1e15 ? String.valueOf((long) value) : String.valueOf(value));
+        writer.write('\n');
+
+    }
+
+    protected static String escapeLabel(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+}
@@ -0,0 +1,27 @@
+package info.nightscout.medtronic.carelink.metrics;
+
+// JMX view of the client totals, times in milliseconds
+public interface CareLinkMetricsMXBean {
+
+    long getLoginCount();
+
+    long getLoginFailureCount();
+
+    HistogramSummary getLoginMillis();
+
+    long getUnauthorizedRefreshCount();
+
+    long getRequestCount();
+
+    long getUnauthorizedCount();
+
+    long getRetryCount();
+
+    long getShortCircuitCount();
+
+    // 401 responses / all responses
+    double getUnauthorizedRate();
+
+    String[] getEndpoints();
+
+}
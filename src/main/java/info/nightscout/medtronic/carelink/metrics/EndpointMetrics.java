@@ -0,0 +1,129 @@
+package info.nightscout.medtronic.carelink.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+// Metrics of one endpoint (host + path), times are recorded in microseconds
+public class EndpointMetrics implements EndpointMetricsMXBean {
+
+    private static final double MICROS_TO_MILLIS = 0.001;
+
+    protected final String endpoint;
+    protected final LogLinearHistogram dns = new LogLinearHistogram();
+    protected final LogLinearHistogram connect = new LogLinearHistogram();
+    protected final LogLinearHistogram tls = new LogLinearHistogram();
+    // Request sent => response headers started
+    protected final LogLinearHistogram timeToFirstByte = new LogLinearHistogram();
+    // Whole call including redirects and body, failed calls included
+    protected final LogLinearHistogram call = new LogLinearHistogram();
+    protected final LogLinearHistogram parse = new LogLinearHistogram();
+    protected final LogLinearHistogram responseSize = new LogLinearHistogram();
+    protected final LongAdder requests = new LongAdder();
+    protected final LongAdder failures = new LongAdder();
+    protected final LongAdder unauthorized = new LongAdder();
+    protected final LongAdder retries = new LongAdder();
+    // Calls not sent because the circuit of the host was open
+    protected final LongAdder shortCircuited = new LongAdder();
+
+    public EndpointMetrics(String endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    public LogLinearHistogram getDns() {
+        return dns;
+    }
+
+    public LogLinearHistogram getConnect() {
+        return connect;
+    }
+
+    public LogLinearHistogram getTls() {
+        return tls;
+    }
+
+    public LogLinearHistogram getTimeToFirstByte() {
+        return timeToFirstByte;
+    }
+
+    public LogLinearHistogram getCall() {
+        return call;
+    }
+
+    public LogLinearHistogram getParse() {
+        return parse;
+    }
+
+    public LogLinearHistogram getResponseSizeHistogram() {
+        return responseSize;
+    }
+
+    @Override
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    @Override
+    public long getRequestCount() {
+        return requests.sum();
+    }
+
+    @Override
+    public long getFailureCount() {
+        return failures.sum();
+    }
+
+    @Override
+    public long getUnauthorizedCount() {
+        return unauthorized.sum();
+    }
+
+    @Override
+    public long getRetryCount() {
+        return retries.sum();
+    }
+
+    @Override
+    public long getShortCircuitCount() {
+        return shortCircuited.sum();
+    }
+
+    @Override
+    public long getResponseBytes() {
+        return responseSize.getSum();
+    }
+
+    @Override
+    public HistogramSummary getDnsMillis() {
+        return dns.getSummary(MICROS_TO_MILLIS);
+    }
+
+    @Override
+    public HistogramSummary getConnectMillis() {
+        return connect.getSummary(MICROS_TO_MILLIS);
+    }
+
+    @Override
+    public HistogramSummary getTlsMillis() {
+        return tls.getSummary(MICROS_TO_MILLIS);
+    }
+
+    @Override
+    public HistogramSummary getTimeToFirstByteMillis() {
+        return timeToFirstByte.getSummary(MICROS_TO_MILLIS);
+    }
+
+    @Override
+    public HistogramSummary getCallMillis() {
+        return call.getSummary(MICROS_TO_MILLIS);
+    }
+
+    @Override
+    public HistogramSummary getParseMillis() {
+        return parse.getSummary(MICROS_TO_MILLIS);
+    }
+
+    @Override
+    public HistogramSummary getResponseSize() {
+        return responseSize.getSummary(1);
+    }
+
+}
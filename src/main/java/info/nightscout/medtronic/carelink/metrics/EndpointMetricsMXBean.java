@@ -0,0 +1,34 @@
+package info.nightscout.medtronic.carelink.metrics;
+
+// JMX view of one endpoint, times in milliseconds
+public interface EndpointMetricsMXBean {
+
+    String getEndpoint();
+
+    long getRequestCount();
+
+    long getFailureCount();
+
+    long getUnauthorizedCount();
+
+    long getRetryCount();
+
+    long getShortCircuitCount();
+
+    long getResponseBytes();
+
+    HistogramSummary getDnsMillis();
+
+    HistogramSummary getConnectMillis();
+
+    HistogramSummary getTlsMillis();
+
+    HistogramSummary getTimeToFirstByteMillis();
+
+    HistogramSummary getCallMillis();
+
+    HistogramSummary getParseMillis();
+
+    HistogramSummary getResponseSize();
+
+}
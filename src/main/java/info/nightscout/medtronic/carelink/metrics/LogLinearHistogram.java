@@ -0,0 +1,112 @@
+package info.nightscout.medtronic.carelink.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Lock-free HDR style histogram: buckets double in width per power of 2, with 16 linear sub-buckets each (~6% precision)
+// Non negative values up to 2^40 (e.g. microseconds up to 12 days), larger values are counted in the last bucket
+public class LogLinearHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_VALUE_BITS = 40;
+    private static final long MAX_VALUE = (1L << MAX_VALUE_BITS) - 1;
+    private static final int BUCKETS = (MAX_VALUE_BITS - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long value) {
+
+        if (value < 0)
+            value = 0;
+
+        counts.incrementAndGet(bucketIndex(Math.min(value, MAX_VALUE)));
+        count.increment();
+        sum.add(value);
+        if (value > max.get())
+            max.accumulateAndGet(value, Math::max);
+
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getSum() {
+        return sum.sum();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public double getMean() {
+        long n = count.sum();
+        return n == 0 ? 0 : (double) sum.sum() / n;
+    }
+
+    // Highest value of the bucket containing the quantile (0..1), 0 if empty
+    public long getValueAtQuantile(double quantile) {
+
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        long rank;
+        long seen = 0;
+
+        // Own snapshot of the buckets, concurrent records only make the result slightly outdated
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0)
+            return 0;
+
+        rank = Math.max(1, (long) Math.ceil(quantile * total));
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank)
+                return Math.min(bucketUpperBound(i), max.get());
+        }
+
+        return max.get();
+
+    }
+
+    public HistogramSummary getSummary(double scale) {
+        return new HistogramSummary(getCount(), getMean() * scale, getValueAtQuantile(0.5) * scale,
+                getValueAtQuantile(0.9) * scale, getValueAtQuantile(0.99) * scale, getMax() * scale);
+    }
+
+    static int bucketIndex(long value) {
+
+        int exponent;
+
+        if (value < SUB_BUCKETS)
+            return (int) value;
+
+        exponent = 63 - Long.numberOfLeadingZeros(value);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + (int) ((value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1));
+
+    }
+
+    static long bucketLowerBound(int index) {
+
+        int exponent;
+
+        if (index < SUB_BUCKETS)
+            return index;
+
+        exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        return (long) (SUB_BUCKETS + index % SUB_BUCKETS) << (exponent - SUB_BUCKET_BITS);
+
+    }
+
+    static long bucketUpperBound(int index) {
+        return index + 1 < BUCKETS ? bucketLowerBound(index + 1) - 1 : Long.MAX_VALUE;
+    }
+
+}
@@ -0,0 +1,98 @@
+package info.nightscout.medtronic.carelink.metrics;
+
+import okhttp3.*;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.List;
+
+// One listener per call, events of a call are delivered sequentially
+class MetricsEventListener extends EventListener {
+
+    private final EndpointMetrics metrics;
+    private long callStart;
+    private long dnsStart;
+    private long connectStart;
+    private long secureConnectStart;
+    private long requestStart;
+
+    MetricsEventListener(EndpointMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    private static long micros(long start) {
+        return (System.nanoTime() - start) / 1000;
+    }
+
+    @Override
+    public void callStart(Call call) {
+        callStart = System.nanoTime();
+    }
+
+    @Override
+    public void dnsStart(Call call, String domainName) {
+        dnsStart = System.nanoTime();
+    }
+
+    @Override
+    public void dnsEnd(Call call, String domainName, List<InetAddress> inetAddressList) {
+        metrics.dns.record(micros(dnsStart));
+    }
+
+    @Override
+    public void connectStart(Call call, InetSocketAddress inetSocketAddress, Proxy proxy) {
+        connectStart = System.nanoTime();
+    }
+
+    @Override
+    public void secureConnectStart(Call call) {
+        secureConnectStart = System.nanoTime();
+    }
+
+    @Override
+    public void secureConnectEnd(Call call, Handshake handshake) {
+        metrics.tls.record(micros(secureConnectStart));
+    }
+
+    @Override
+    public void connectEnd(Call call, InetSocketAddress inetSocketAddress, Proxy proxy, Protocol protocol) {
+        metrics.connect.record(micros(connectStart));
+    }
+
+    @Override
+    public void requestHeadersStart(Call call) {
+        requestStart = System.nanoTime();
+    }
+
+    @Override
+    public void responseHeadersStart(Call call) {
+        metrics.timeToFirstByte.record(micros(requestStart));
+    }
+
+    @Override
+    public void responseHeadersEnd(Call call, Response response) {
+        metrics.requests.increment();
+        if (response.code() == 401)
+            metrics.unauthorized.increment();
+    }
+
+    @Override
+    public void responseBodyEnd(Call call, long byteCount) {
+        metrics.responseSize.record(byteCount);
+    }
+
+    @Override
+    public void callEnd(Call call) {
+        metrics.call.record(micros(callStart));
+    }
+
+    @Override
+    public void callFailed(Call call, IOException ioe) {
+        // Failed calls (e.g. timeouts) count in the call time too, they are often the slowest ones
+        metrics.call.record(micros(callStart));
+        metrics.failures.increment();
+    }
+
+}
@@ -0,0 +1,53 @@
+package info.nightscout.medtronic.carelink.metrics;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+// Minimal scrape endpoint: GET http://host:port/metrics
+public class PrometheusHttpServer implements Closeable {
+
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    protected final HttpServer server;
+
+    // Bound to the loopback address, the metrics are not exposed to other hosts
+    public PrometheusHttpServer(CareLinkMetrics metrics, int port) throws IOException {
+        this(metrics, new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+    }
+
+    // e.g. new InetSocketAddress(port) to accept scrapes on all interfaces
+    public PrometheusHttpServer(CareLinkMetrics metrics, InetSocketAddress address) throws IOException {
+
+        this.server = HttpServer.create(address, 0);
+        this.server.createContext("/metrics", exchange -> {
+            byte[] body = metrics.toPrometheusText().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        this.server.start();
+
+    }
+
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+}
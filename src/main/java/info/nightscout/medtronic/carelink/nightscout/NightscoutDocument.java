@@ -0,0 +1,42 @@
+package info.nightscout.medtronic.carelink.nightscout;
+
+import com.google.gson.JsonObject;
+
+// One Nightscout document (entry, treatment or device status) with the key it is deduplicated by
+public class NightscoutDocument {
+
+    public static final String ENTRIES = "entries";
+    public static final String TREATMENTS = "treatments";
+    public static final String DEVICE_STATUS = "devicestatus";
+
+    private final String collection;
+    private final String key;
+    private final long time;
+    private final JsonObject json;
+
+    public NightscoutDocument(String collection, String key, long time, JsonObject json) {
+        this.collection = collection;
+        this.key = key;
+        this.time = time;
+        this.json = json;
+    }
+
+    // API collection, e.g. entries for /api/v1/entries
+    public String getCollection() {
+        return collection;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    // Epoch millis of the document
+    public long getTime() {
+        return time;
+    }
+
+    public JsonObject getJson() {
+        return json;
+    }
+
+}
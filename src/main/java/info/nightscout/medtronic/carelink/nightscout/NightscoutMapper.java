@@ -0,0 +1,210 @@
+package info.nightscout.medtronic.carelink.nightscout;
+
+import com.google.gson.JsonObject;
+import info.nightscout.medtronic.carelink.json.IsoDateTypeAdapter;
+import info.nightscout.medtronic.carelink.message.*;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TimeZone;
+
+// CareLink data => Nightscout entries (SGs), treatments (markers) and device status (pump, active insulin, uploader)
+public class NightscoutMapper {
+
+    public static final String DEVICE = "CareLink";
+
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+    // All documents of a response, items without time or value are skipped
+    public static List<NightscoutDocument> toDocuments(RecentData recentData) {
+
+        List<NightscoutDocument> documents = new ArrayList<>();
+        List<SensorGlucose> sgs = recentData.getSensorGlucoses();
+        long lastSgTime = recentData.lastSG != null && recentData.lastSG.datetime != null ? recentData.lastSG.datetime.getTime() : 0;
+        NightscoutDocument document = null;
+
+        if (sgs != null) {
+            for (SensorGlucose sg : sgs) {
+                // Trend is only known for the last SG
+                document = toEntry(sg, sg.datetime != null && sg.datetime.getTime() == lastSgTime ? toDirection(recentData.lastSGTrend) : null);
+                if (document != null)
+                    documents.add(document);
+            }
+        }
+        if (recentData.markers != null) {
+            Set<Long> bgReadingTimes = new HashSet<>();
+            for (Marker marker : recentData.markers) {
+                if (Marker.MARKER_TYPE_BG_READING.equals(marker.type) && marker.dateTime != null)
+                    bgReadingTimes.add(marker.dateTime.getTime());
+            }
+            for (Marker marker : recentData.markers) {
+                // Calibration with the BG reading of the same time: the same finger stick, one BG Check
+                if (Marker.MARKER_TYPE_CALIBRATION.equals(marker.type) && marker.dateTime != null && bgReadingTimes.contains(marker.dateTime.getTime()))
+                    continue;
+                document = toTreatment(marker);
+                if (document != null)
+                    documents.add(document);
+            }
+        }
+        document = toDeviceStatus(recentData);
+        if (document != null)
+            documents.add(document);
+
+        return documents;
+
+    }
+
+    public static NightscoutDocument toEntry(SensorGlucose sg, String direction) {
+
+        JsonObject json = null;
+        long time;
+
+        if (sg.datetime == null || sg.sg == null || sg.sg <= 0)
+            return null;
+
+        time = sg.datetime.getTime();
+        json = new JsonObject();
+        json.addProperty("type", "sgv");
+        json.addProperty("sgv", sg.sg);
+        json.addProperty("date", time);
+        json.addProperty("dateString", IsoDateTypeAdapter.format(time, UTC, true));
+        if (direction != null)
+            json.addProperty("direction", direction);
+        json.addProperty("device", DEVICE);
+
+        return new NightscoutDocument(NightscoutDocument.ENTRIES, "sgv|" + time, time, json);
+
+    }
+
+    // Null for marker types without a Nightscout treatment and for markers still in progress (e.g. running extended bolus)
+    public static NightscoutDocument toTreatment(Marker marker) {
+
+        JsonObject json = new JsonObject();
+        String eventType = null;
+        float insulin;
+
+        if (marker.dateTime == null || marker.type == null || Boolean.FALSE.equals(marker.completed))
+            return null;
+
+        switch (marker.type) {
+            case Marker.MARKER_TYPE_INSULIN:
+                insulin = nullToZero(marker.deliveredFastAmount) + nullToZero(marker.deliveredExtendedAmount);
+                if (insulin <= 0)
+                    return null;
+                eventType = "Correction Bolus";
+                json.addProperty("insulin", insulin);
+                if (marker.activationType != null)
+                    json.addProperty("notes", marker.activationType);
+                break;
+            case Marker.MARKER_TYPE_MEAL:
+                if (marker.amount == null || marker.amount <= 0)
+                    return null;
+                eventType = "Carb Correction";
+                json.addProperty("carbs", marker.amount);
+                break;
+            case Marker.MARKER_TYPE_BG_READING:
+            case Marker.MARKER_TYPE_CALIBRATION:
+                if (marker.value == null || marker.value <= 0)
+                    return null;
+                eventType = "BG Check";
+                json.addProperty("glucose", marker.value);
+                json.addProperty("glucoseType", "Finger");
+                json.addProperty("units", "mg/dl");
+                if (Marker.MARKER_TYPE_CALIBRATION.equals(marker.type))
+                    json.addProperty("notes", "Calibration");
+                break;
+            case Marker.MARKER_TYPE_AUTO_BASAL:
+                if (marker.bolusAmount == null)
+                    return null;
+                // Delivery of the 5 minutes cycle as rate
+                eventType = "Temp Basal";
+                json.addProperty("absolute", marker.bolusAmount * 12);
+                json.addProperty("rate", marker.bolusAmount * 12);
+                json.addProperty("duration", 5);
+                break;
+            case Marker.MARKER_TYPE_AUTO_MODE_STATUS:
+                if (marker.autoModeOn == null)
+                    return null;
+                eventType = "Note";
+                json.addProperty("notes", marker.autoModeOn ? "Auto mode on" : "Auto mode off");
+                break;
+            default:
+                return null;
+        }
+
+        json.addProperty("eventType", eventType);
+        json.addProperty("created_at", IsoDateTypeAdapter.format(marker.dateTime.getTime(), UTC, true));
+        json.addProperty("enteredBy", DEVICE);
+
+        // Several markers can have the same time (e.g. two manual boluses), the index tells them apart
+        return new NightscoutDocument(NightscoutDocument.TREATMENTS, marker.type + "|" + marker.dateTime.getTime() + "|" + marker.index,
+                marker.dateTime.getTime(), json);
+
+    }
+
+    // Status of the last device upload, null if the response has no upload time
+    public static NightscoutDocument toDeviceStatus(RecentData recentData) {
+
+        JsonObject json = null;
+        JsonObject pump = null;
+        JsonObject iob = null;
+        JsonObject battery = null;
+        JsonObject uploader = null;
+        long time = recentData.lastMedicalDeviceDataUpdateServerTime;
+
+        if (time <= 0)
+            return null;
+
+        pump = new JsonObject();
+        pump.addProperty("clock", IsoDateTypeAdapter.format(time, UTC, true));
+        pump.addProperty("reservoir", recentData.reservoirRemainingUnits);
+        battery = new JsonObject();
+        battery.addProperty("percent", recentData.medicalDeviceBatteryLevelPercent);
+        pump.add("battery", battery);
+        if (recentData.activeInsulin != null && recentData.activeInsulin.amount != null && recentData.activeInsulin.amount >= 0) {
+            iob = new JsonObject();
+            iob.addProperty("iob", recentData.activeInsulin.amount);
+            if (recentData.activeInsulin.datetime != null)
+                iob.addProperty("timestamp", IsoDateTypeAdapter.format(recentData.activeInsulin.datetime.getTime(), UTC, true));
+            pump.add("iob", iob);
+        }
+
+        uploader = new JsonObject();
+        uploader.addProperty("battery", recentData.conduitBatteryLevel);
+
+        json = new JsonObject();
+        json.addProperty("device", DEVICE);
+        json.addProperty("created_at", IsoDateTypeAdapter.format(time, UTC, true));
+        json.add("pump", pump);
+        json.add("uploader", uploader);
+
+        return new NightscoutDocument(NightscoutDocument.DEVICE_STATUS, "status|" + time, time, json);
+
+    }
+
+    // CareLink trend of the last SG => Nightscout direction
+    public static String toDirection(String trend) {
+
+        if (trend == null)
+            return null;
+
+        switch (trend) {
+            case "NONE": return "Flat";
+            case "UP": return "FortyFiveUp";
+            case "UP_DOUBLE": return "SingleUp";
+            case "UP_TRIPLE": return "DoubleUp";
+            case "DOWN": return "FortyFiveDown";
+            case "DOWN_DOUBLE": return "SingleDown";
+            case "DOWN_TRIPLE": return "DoubleDown";
+            default: return null;
+        }
+
+    }
+
+    private static float nullToZero(Float value) {
+        return value == null ? 0 : value;
+    }
+
+}
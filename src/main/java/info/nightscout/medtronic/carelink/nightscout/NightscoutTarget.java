@@ -0,0 +1,52 @@
+package info.nightscout.medtronic.carelink.nightscout;
+
+import okhttp3.HttpUrl;
+import okio.ByteString;
+
+import java.nio.charset.StandardCharsets;
+
+// Nightscout site, accounts uploading to the same site share its batches
+public class NightscoutTarget {
+
+    private final HttpUrl url;
+    private final String apiSecretHash;
+
+    // apiSecret: plain API secret, sent as SHA-1 hash
+    public NightscoutTarget(String url, String apiSecret) {
+        this.url = HttpUrl.get(url);
+        this.apiSecretHash = ByteString.of(apiSecret.getBytes(StandardCharsets.UTF_8)).sha1().hex();
+    }
+
+    public HttpUrl getUrl() {
+        return url;
+    }
+
+    public String getApiSecretHash() {
+        return apiSecretHash;
+    }
+
+    // /api/v1/<collection> of the site
+    public HttpUrl getApiUrl(String collection) {
+        return url.newBuilder().addPathSegments("api/v1").addPathSegment(collection).build();
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other)
+            return true;
+        if (!(other instanceof NightscoutTarget))
+            return false;
+        return url.equals(((NightscoutTarget) other).url) && apiSecretHash.equals(((NightscoutTarget) other).apiSecretHash);
+    }
+
+    @Override
+    public int hashCode() {
+        return url.hashCode() * 31 + apiSecretHash.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return url.toString();
+    }
+
+}
@@ -0,0 +1,285 @@
+package info.nightscout.medtronic.carelink.nightscout;
+
+import com.google.gson.JsonArray;
+import info.nightscout.medtronic.carelink.json.CareLinkGson;
+import info.nightscout.medtronic.carelink.message.RecentData;
+import okhttp3.*;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Batched upload of CareLink data to Nightscout sites
+// Documents are deduplicated per site, queued in a bounded queue and uploaded by workers in batches:
+// one request per site and collection for all queued documents (of all accounts of the site)
+// A slow site fills the queue and submit blocks (backpressure on the pollers)
+public class NightscoutUploader implements Closeable {
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 10000;
+    public static final int DEFAULT_MAX_BATCH_SIZE = 1000;
+    public static final int DEFAULT_WORKERS = 2;
+    public static final int MAX_ATTEMPTS = 3;
+    public static final long RETRY_DELAY_MILLIS = 1000;
+    // Keys are kept for this period before the newest document of the site
+    public static final long DEDUPE_WINDOW_MILLIS = TimeUnit.HOURS.toMillis(48);
+    public static final long PRUNE_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    protected static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
+
+    // Already queued or uploaded documents of a site
+    protected static class SiteState {
+        protected final Map<String, Long> keys = new ConcurrentHashMap<>();
+        protected final AtomicLong newestTime = new AtomicLong(Long.MIN_VALUE);
+        protected volatile long lastPrune = 0;
+    }
+
+    protected static class Pending {
+        protected final NightscoutTarget target;
+        protected final NightscoutDocument document;
+        protected Pending(NightscoutTarget target, NightscoutDocument document) {
+            this.target = target;
+            this.document = document;
+        }
+    }
+
+    protected final OkHttpClient httpClient;
+    protected final BlockingQueue<Pending> queue;
+    protected final int maxBatchSize;
+    protected final ExecutorService workers;
+    protected final Map<NightscoutTarget, SiteState> sites = new ConcurrentHashMap<>();
+    // Queued or being uploaded, counted before the document is queued and until its upload is done
+    protected final AtomicInteger pending = new AtomicInteger();
+    protected final LongAdder uploaded = new LongAdder();
+    protected final LongAdder failed = new LongAdder();
+    protected final LongAdder rejected = new LongAdder();
+    protected final LongAdder requests = new LongAdder();
+    protected volatile boolean closed = false;
+
+    public NightscoutUploader(OkHttpClient httpClient) {
+        this(httpClient, DEFAULT_QUEUE_CAPACITY, DEFAULT_MAX_BATCH_SIZE, DEFAULT_WORKERS);
+    }
+
+    public NightscoutUploader(OkHttpClient httpClient, int queueCapacity, int maxBatchSize, int workerCount) {
+
+        this.httpClient = httpClient;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.maxBatchSize = maxBatchSize;
+        this.workers = Executors.newFixedThreadPool(workerCount, runnable -> {
+            Thread thread = new Thread(runnable, "nightscout-upload");
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0; i < workerCount; i++)
+            this.workers.execute(this::work);
+
+    }
+
+    // Queue the new documents of the response, returns the number of documents queued
+    // Blocks while the queue is full, documents not queued until the timeout are not marked as seen (offered again next time)
+    public int submit(NightscoutTarget target, RecentData recentData, long timeout, TimeUnit unit) throws InterruptedException {
+        return this.submit(target, NightscoutMapper.toDocuments(recentData), timeout, unit);
+    }
+
+    public int submit(NightscoutTarget target, List<NightscoutDocument> documents, long timeout, TimeUnit unit) throws InterruptedException {
+
+        SiteState site = sites.computeIfAbsent(target, key -> new SiteState());
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        long newestTime = Long.MIN_VALUE;
+        long minTime;
+        int queued = 0;
+
+        if (closed)
+            throw new IllegalStateException("Uploader is closed");
+
+        for (NightscoutDocument document : documents)
+            newestTime = Math.max(newestTime, document.getTime());
+        // Several accounts of the site can submit at the same time
+        minTime = site.newestTime.accumulateAndGet(newestTime, Math::max) - DEDUPE_WINDOW_MILLIS;
+        this.prune(site, minTime);
+
+        for (NightscoutDocument document : documents) {
+            // Older than the dedupe window: its key may be pruned already
+            if (document.getTime() < minTime)
+                continue;
+            // Same key from this or another account of the site
+            if (site.keys.putIfAbsent(document.getKey(), document.getTime()) != null)
+                continue;
+            // After the timeout the remaining documents are only queued if there is room right away
+            pending.incrementAndGet();
+            if (!queue.offer(new Pending(target, document), Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                pending.decrementAndGet();
+                site.keys.remove(document.getKey());
+                rejected.increment();
+                continue;
+            }
+            queued++;
+        }
+
+        return queued;
+
+    }
+
+    // Wait until every queued document is uploaded (or failed), false on timeout
+    public boolean flush(long timeout, TimeUnit unit) throws InterruptedException {
+
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+
+        while (pending.get() > 0) {
+            if (System.nanoTime() > deadline)
+                return false;
+            Thread.sleep(10);
+        }
+
+        return true;
+
+    }
+
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    public long getUploadedCount() {
+        return uploaded.sum();
+    }
+
+    public long getFailedCount() {
+        return failed.sum();
+    }
+
+    // Documents not queued because the queue stayed full
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    public long getRequestCount() {
+        return requests.sum();
+    }
+
+    // Queued documents are still uploaded
+    @Override
+    public void close() {
+
+        closed = true;
+        workers.shutdown();
+        try {
+            workers.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+
+    }
+
+    protected void prune(SiteState site, long minTime) {
+
+        long now = System.currentTimeMillis();
+
+        if (now - site.lastPrune < PRUNE_INTERVAL_MILLIS)
+            return;
+        site.lastPrune = now;
+        site.keys.values().removeIf(time -> time < minTime);
+
+    }
+
+    protected void work() {
+
+        List<Pending> batch = new ArrayList<>(maxBatchSize);
+        Pending first = null;
+
+        while (!closed || !queue.isEmpty()) {
+            try {
+                first = queue.poll(100, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException ex) {
+                return;
+            }
+            if (first == null)
+                continue;
+            try {
+                batch.add(first);
+                queue.drainTo(batch, maxBatchSize - 1);
+                this.upload(batch);
+            } finally {
+                pending.addAndGet(-batch.size());
+                batch.clear();
+            }
+        }
+
+    }
+
+    // One request per site and collection
+    protected void upload(List<Pending> batch) {
+
+        Map<NightscoutTarget, Map<String, List<NightscoutDocument>>> groups = new LinkedHashMap<>();
+
+        for (Pending pending : batch) {
+            groups.computeIfAbsent(pending.target, target -> new LinkedHashMap<>())
+                    .computeIfAbsent(pending.document.getCollection(), collection -> new ArrayList<>())
+                    .add(pending.document);
+        }
+
+        for (Map.Entry<NightscoutTarget, Map<String, List<NightscoutDocument>>> site : groups.entrySet()) {
+            for (Map.Entry<String, List<NightscoutDocument>> collection : site.getValue().entrySet()) {
+                if (this.post(site.getKey(), collection.getKey(), collection.getValue())) {
+                    uploaded.add(collection.getValue().size());
+                } else {
+                    failed.add(collection.getValue().size());
+                    // Not uploaded: offered again with the next response
+                    this.forget(site.getKey(), collection.getValue());
+                }
+            }
+        }
+
+    }
+
+    protected void forget(NightscoutTarget target, List<NightscoutDocument> documents) {
+        SiteState site = sites.get(target);
+        if (site != null) {
+            for (NightscoutDocument document : documents)
+                site.keys.remove(document.getKey());
+        }
+    }
+
+    // Retried with exponential backoff on network errors, 5xx and 429, other errors are final
+    protected boolean post(NightscoutTarget target, String collection, List<NightscoutDocument> documents) {
+
+        JsonArray array = new JsonArray();
+        Request request = null;
+
+        for (NightscoutDocument document : documents)
+            array.add(document.getJson());
+
+        request = new Request.Builder()
+                .url(target.getApiUrl(collection))
+                .addHeader("api-secret", target.getApiSecretHash())
+                .addHeader("Accept", "application/json")
+                .post(RequestBody.create(CareLinkGson.getGson().toJson(array), JSON))
+                .build();
+
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            if (attempt > 0) {
+                try {
+                    Thread.sleep(RETRY_DELAY_MILLIS << (attempt - 1));
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            requests.increment();
+            try (Response response = httpClient.newCall(request).execute()) {
+                if (response.isSuccessful())
+                    return true;
+                if (response.code() < 500 && response.code() != 429)
+                    return false;
+            } catch (IOException ex) {
+                // Retry
+            }
+        }
+
+        return false;
+
+    }
+
+}
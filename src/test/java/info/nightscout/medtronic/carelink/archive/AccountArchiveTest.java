@@ -0,0 +1,182 @@
+package info.nightscout.medtronic.carelink.archive;
+
+import info.nightscout.medtronic.carelink.message.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AccountArchiveTest {
+
+    private static final long SEGMENT_SIZE = 1024 * 1024;
+    private static final long T0 = 1_700_000_000_000L;
+    private static final long FIVE_MINUTES = 5 * 60 * 1000;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void truncatedTailIsRemovedOnRecovery() throws IOException {
+
+        AccountArchive archive = AccountArchive.open(directory, SEGMENT_SIZE);
+        Path segment = AccountArchive.getSegmentPath(directory, 1);
+        long validSize;
+        ByteBuffer record = null;
+
+        archive.append(recentData(sgs(sg(0, 100), sg(1, 110)), markers()));
+        archive.close();
+        validSize = Files.size(segment);
+
+        // Crash in the middle of the next write: only a part of the record reached the disk
+        record = ArchiveSegmentReader.encode(ByteBuffer.allocate(256), ArchiveRecord.TYPE_SENSOR_GLUCOSE,
+                T0 + 2 * FIVE_MINUTES, "S" + (T0 + 2 * FIVE_MINUTES), "{\"sg\":120}", new CRC32());
+        record.flip();
+        record.limit(record.limit() - 5);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.APPEND)) {
+            channel.write(record);
+        }
+
+        archive = AccountArchive.open(directory, SEGMENT_SIZE);
+        assertEquals(validSize, Files.size(segment));
+
+        // Appends continue after the last complete record
+        archive.append(recentData(sgs(sg(0, 100), sg(1, 110), sg(2, 120)), markers()));
+        archive.close();
+        assertEquals(Arrays.asList(100, 110, 120), readSgValues());
+
+    }
+
+    @Test
+    void recordsAfterCheckpointAreRecovered() throws IOException {
+
+        AccountArchive archive = AccountArchive.open(directory, SEGMENT_SIZE);
+
+        archive.append(recentData(sgs(sg(0, 100)), markers()));
+        archive.commit();
+        // Written but not committed: the checkpoint still points before this record
+        archive.append(recentData(sgs(sg(0, 100), sg(1, 110)), markers()));
+        archive.channel.close();
+
+        archive = AccountArchive.open(directory, SEGMENT_SIZE);
+        assertTrue(archive.append(recentData(sgs(sg(0, 100), sg(1, 110)), markers())).isEmpty());
+        archive.close();
+        assertEquals(Arrays.asList(100, 110), readSgValues());
+
+    }
+
+    @Test
+    void dedupAcrossRestart() throws IOException {
+
+        AccountArchive archive = AccountArchive.open(directory, SEGMENT_SIZE);
+        RecentDataDelta delta = null;
+
+        delta = archive.append(recentData(sgs(sg(0, 100), sg(1, 0)), markers(bolus(1, 1.5f))));
+        assertEquals(2, delta.sgs.size());
+        assertEquals(1, delta.markers.size());
+        archive.close();
+
+        archive = AccountArchive.open(directory, SEGMENT_SIZE);
+        // Same response again: nothing new
+        assertTrue(archive.append(recentData(sgs(sg(0, 100), sg(1, 0)), markers(bolus(1, 1.5f)))).isEmpty());
+        // Value for the slot which had sg=0, second bolus at the same time
+        delta = archive.append(recentData(sgs(sg(0, 100), sg(1, 105)), markers(bolus(1, 1.5f), bolus(1, 2.0f))));
+        assertEquals(1, delta.sgs.size());
+        assertEquals(105, (int) delta.sgs.get(0).sg);
+        assertEquals(1, delta.markers.size());
+        assertEquals(2.0f, delta.markers.get(0).programmedFastAmount, 0.001f);
+        archive.close();
+
+        archive = AccountArchive.open(directory, SEGMENT_SIZE);
+        assertTrue(archive.append(recentData(sgs(sg(0, 100), sg(1, 105)), markers(bolus(1, 1.5f), bolus(1, 2.0f)))).isEmpty());
+        archive.close();
+        assertEquals(Arrays.asList(100, 0, 105), readSgValues());
+
+    }
+
+    @Test
+    void oversizedRecordIsRejected() throws IOException {
+
+        AccountArchive archive = AccountArchive.open(directory, SEGMENT_SIZE);
+        Marker oversized = bolus(1, 1.5f);
+        RecentDataDelta delta = null;
+        List<Byte> types = new ArrayList<>();
+
+        oversized.activationType = new String(new char[ArchiveSegmentReader.MAX_RECORD_BODY_SIZE]).replace('\0', 'x');
+        assertThrows(IllegalArgumentException.class, () -> ArchiveSegmentReader.encode(ByteBuffer.allocate(256),
+                ArchiveRecord.TYPE_MARKER, T0, "M" + T0, "\"" + oversized.activationType + "\"", new CRC32()));
+
+        // Only the oversized item is skipped, the records around it can still be read back
+        delta = archive.append(recentData(sgs(sg(0, 100)), markers(oversized, bolus(2, 2.0f))));
+        assertEquals(1, delta.sgs.size());
+        assertEquals(1, delta.markers.size());
+        assertEquals(2.0f, delta.markers.get(0).programmedFastAmount, 0.001f);
+        delta = archive.append(recentData(sgs(sg(0, 100), sg(1, 110)), markers(oversized, bolus(2, 2.0f))));
+        assertEquals(1, delta.sgs.size());
+        assertTrue(delta.markers.isEmpty());
+        archive.close();
+
+        AccountArchive.read(directory, record -> types.add(record.getType()));
+        assertEquals(Arrays.asList(ArchiveRecord.TYPE_SENSOR_GLUCOSE, ArchiveRecord.TYPE_MARKER, ArchiveRecord.TYPE_SENSOR_GLUCOSE), types);
+        assertEquals(Arrays.asList(100, 110), readSgValues());
+
+    }
+
+    private List<Integer> readSgValues() throws IOException {
+
+        List<Integer> values = new ArrayList<>();
+
+        AccountArchive.read(directory, record -> {
+            if (record.getType() == ArchiveRecord.TYPE_SENSOR_GLUCOSE)
+                values.add(record.getMessage(SensorGlucose.class).sg);
+        });
+
+        return values;
+
+    }
+
+    private static RecentData recentData(List<SensorGlucose> sgs, List<Marker> markers) {
+        RecentData recentData = new RecentData();
+        recentData.sgs = sgs;
+        recentData.markers = markers;
+        return recentData;
+    }
+
+    private static List<SensorGlucose> sgs(SensorGlucose... sgs) {
+        return Arrays.asList(sgs);
+    }
+
+    private static List<Marker> markers(Marker... markers) {
+        return Arrays.asList(markers);
+    }
+
+    private static SensorGlucose sg(int slot, int value) {
+        SensorGlucose sg = new SensorGlucose();
+        sg.datetime = new Date(T0 + slot * FIVE_MINUTES);
+        sg.sg = value;
+        sg.sensorState = RecentData.SENSOR_STATE_NO_ERROR_MESSAGE;
+        return sg;
+    }
+
+    private static Marker bolus(int slot, float amount) {
+        Marker marker = new Marker();
+        marker.type = Marker.MARKER_TYPE_INSULIN;
+        marker.dateTime = new Date(T0 + slot * FIVE_MINUTES);
+        marker.activationType = "RECOMMENDED";
+        marker.programmedFastAmount = amount;
+        marker.deliveredFastAmount = amount;
+        return marker;
+    }
+
+}
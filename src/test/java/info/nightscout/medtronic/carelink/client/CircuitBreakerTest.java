@@ -0,0 +1,124 @@
+package info.nightscout.medtronic.carelink.client;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CircuitBreakerTest {
+
+    private static final String HOST = "carelink.minimed.eu";
+    private static final long WINDOW_MILLIS = 1000;
+    private static final long OPEN_MILLIS = 1000;
+
+    // Manual clock: time only moves when the test advances it
+    private final AtomicLong now = new AtomicLong(1_700_000_000_000L);
+    // Window of 10 buckets of 100 ms, 4 outcomes needed, open if half of them failed
+    private final CircuitBreaker breaker = new CircuitBreaker(WINDOW_MILLIS, 4, 0.5, OPEN_MILLIS, 4 * OPEN_MILLIS, 1, now::get);
+
+    @Test
+    void opensWhenFailureRateIsExceeded() {
+
+        this.record(false, false, false);
+        // Not enough outcomes yet
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState(HOST));
+        assertTrue(breaker.allowRequest(HOST));
+
+        this.record(true);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState(HOST));
+        assertFalse(breaker.allowRequest(HOST));
+        // Open period with jitter: between half and all of it
+        assertTrue(breaker.getRetryAfterMillis(HOST) >= OPEN_MILLIS / 2 && breaker.getRetryAfterMillis(HOST) <= OPEN_MILLIS);
+
+        // Other hosts are not affected
+        assertTrue(breaker.allowRequest("mdtlogin.medtronic.com"));
+
+    }
+
+    @Test
+    void successfulProbeClosesCircuit() {
+
+        this.record(false, false, false, false);
+        now.addAndGet(OPEN_MILLIS);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState(HOST));
+        assertEquals(0, breaker.getRetryAfterMillis(HOST));
+
+        // One probe at a time
+        assertTrue(breaker.allowRequest(HOST));
+        assertFalse(breaker.allowRequest(HOST));
+        this.record(true);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState(HOST));
+        assertTrue(breaker.allowRequest(HOST));
+
+        // Window was reset: the failures before opening don't count anymore
+        this.record(false, true, true);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState(HOST));
+
+    }
+
+    @Test
+    void failedProbeDoublesOpenPeriod() {
+
+        this.record(false, false, false, false);
+        now.addAndGet(OPEN_MILLIS);
+        assertTrue(breaker.allowRequest(HOST));
+        this.record(false);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState(HOST));
+        assertTrue(breaker.getRetryAfterMillis(HOST) >= OPEN_MILLIS && breaker.getRetryAfterMillis(HOST) <= 2 * OPEN_MILLIS);
+
+        now.addAndGet(2 * OPEN_MILLIS);
+        assertTrue(breaker.allowRequest(HOST));
+        // Probe without outcome: another one is let through after the next open period (doubled again)
+        now.addAndGet(4 * OPEN_MILLIS - 1);
+        assertFalse(breaker.allowRequest(HOST));
+        now.addAndGet(1);
+        assertTrue(breaker.allowRequest(HOST));
+
+        // Success resets the open period
+        this.record(true);
+        this.record(false, false, false, false);
+        assertTrue(breaker.getRetryAfterMillis(HOST) <= OPEN_MILLIS);
+
+    }
+
+    @Test
+    void outcomesLeaveWindow() {
+
+        this.record(false, false, false);
+        // Bucket of the failures is reused for the new outcomes
+        now.addAndGet(WINDOW_MILLIS);
+        this.record(true, true, true, false);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState(HOST));
+
+        // Still in the window: 3 of 6 failed
+        now.addAndGet(WINDOW_MILLIS - 100);
+        this.record(false, false);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState(HOST));
+
+    }
+
+    @Test
+    void lateOutcomeOfOpenCircuitIsIgnored() {
+
+        this.record(false, false, false, false);
+        // Call started before the circuit opened
+        this.record(true);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState(HOST));
+
+        breaker.reset(HOST);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState(HOST));
+        assertTrue(breaker.allowRequest(HOST));
+
+    }
+
+    private void record(boolean... outcomes) {
+        for (boolean success : outcomes) {
+            if (success)
+                breaker.recordSuccess(HOST);
+            else
+                breaker.recordFailure(HOST);
+        }
+    }
+
+}
@@ -0,0 +1,118 @@
+package info.nightscout.medtronic.carelink.client;
+
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.Okio;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HtmlFormTest {
+
+    @Test
+    void consentForm() throws IOException {
+
+        HtmlForm form = null;
+
+        try (InputStream in = HtmlFormTest.class.getResourceAsStream("/fixtures/login-consent.html");
+             BufferedSource source = Okio.buffer(Okio.source(in))) {
+            form = HtmlForm.parse(source);
+            // Rest of the page is not read
+            assertFalse(source.exhausted());
+        }
+
+        assertEquals("https://mdtlogin.medtronic.com/mmcl/sso/authorize/consent", form.getAction());
+        assertEquals("POST", form.getMethod());
+        // Submit button has no name
+        assertEquals(Arrays.asList("action", "sessionID", "sessionData", "response_type", "response_mode"), new ArrayList<>(form.getFields().keySet()));
+        assertEquals("consent", form.getField("action"));
+        assertEquals("0a1b2c3d4e5f6a7b8c9d0e1f2a3b4c5d", form.getField("sessionID"));
+        assertTrue(form.getField("sessionData").startsWith("eyJ0eXAiOiJKV1QiLCJhbGciOiJIUzI1NiJ9."));
+        assertEquals("code", form.getField("response_type"));
+        assertEquals("query", form.getField("response_mode"));
+
+    }
+
+    @Test
+    void entitiesInValues() throws IOException {
+
+        HtmlForm form = parse("<form action=\"/login?a=1&amp;b=2\">"
+                + "<input name=\"text\" value=\"&lt;b&gt; &quot;x&quot; &#39;y&#x27; &#X41;\">"
+                + "<input name=\"kept\" value=\"a & b &unknown; &#xZZ; &amp\">"
+                + "</form>");
+
+        assertEquals("/login?a=1&b=2", form.getAction());
+        assertEquals("<b> \"x\" 'y' A", form.getField("text"));
+        // Not an entity: left as it is
+        assertEquals("a & b &unknown; &#xZZ; &amp", form.getField("kept"));
+
+    }
+
+    @Test
+    void unquotedAndSingleQuotedAttributes() throws IOException {
+
+        HtmlForm form = parse("<FORM ACTION=/login Method='post'>"
+                + "<input name=user value=abc>"
+                + "<input name='password' value='x\"y z'>"
+                + "<input type=checkbox name=remember checked/>"
+                + "<input name = spaced value = 'v' >"
+                + "<input name=user value=second>"
+                + "</FORM>");
+
+        assertEquals("/login", form.getAction());
+        assertEquals("post", form.getMethod());
+        assertEquals("abc", form.getField("user"));
+        assertEquals("x\"y z", form.getField("password"));
+        // No value attribute
+        assertEquals("", form.getField("remember"));
+        assertEquals("v", form.getField("spaced"));
+        assertEquals(4, form.getFields().size());
+
+    }
+
+    @Test
+    void formInScriptOrCommentIsIgnored() throws IOException {
+
+        HtmlForm form = parse("<!DOCTYPE html><html><head>"
+                + "<!-- <form action=\"/commented\"><input name=\"c\" value=\"1\"> -->"
+                + "<script>if (a < b) document.write(\"<form action='/script'></form>\");</script>"
+                + "<style>p > a { }</style>"
+                + "</head><body>"
+                + "<form action=\"/real\"><!-- <input name=\"hidden\" value=\"1\"> --><input name=\"a\" value=\"1\"></form>"
+                + "</body></html>");
+
+        assertEquals("/real", form.getAction());
+        assertEquals(1, form.getFields().size());
+        assertEquals("1", form.getField("a"));
+
+    }
+
+    @Test
+    void missingFormEndTag() throws IOException {
+
+        HtmlForm form = parse("<html><body><form action=\"/x\" method=\"post\">"
+                + "<input name=\"a\" value=\"1\"><div><input name=\"b\" value=\"2\"></div>"
+                + "</body></html>");
+
+        assertEquals("/x", form.getAction());
+        assertEquals("1", form.getField("a"));
+        assertEquals("2", form.getField("b"));
+
+    }
+
+    @Test
+    void pageWithoutForm() throws IOException {
+        assertNull(parse("<html><body><input name=\"a\" value=\"1\"><p>a < b</p></body></html>"));
+        assertNull(parse(""));
+    }
+
+    private static HtmlForm parse(String html) throws IOException {
+        return HtmlForm.parse(new Buffer().writeUtf8(html));
+    }
+
+}
@@ -0,0 +1,174 @@
+package info.nightscout.medtronic.carelink.client;
+
+import info.nightscout.medtronic.carelink.message.*;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RecentDataWatermarkTest {
+
+    private static final long T0 = 1_700_000_000_000L;
+    private static final long FIVE_MINUTES = 5 * 60 * 1000;
+    // Slots of a 24h response
+    private static final int WINDOW_SLOTS = 288;
+
+    private final RecentDataWatermark watermark = new RecentDataWatermark();
+
+    @Test
+    void overlappingWindows() {
+
+        RecentDataDelta delta = null;
+
+        delta = watermark.update(recentData(slots(0, WINDOW_SLOTS), markers(bolus(10, 1.5f))));
+        assertEquals(WINDOW_SLOTS, delta.sgs.size());
+        assertEquals(1, delta.markers.size());
+        assertEquals(T0 + (WINDOW_SLOTS - 1) * FIVE_MINUTES, watermark.getLastSgTime());
+
+        // Same response again
+        assertTrue(watermark.update(recentData(slots(0, WINDOW_SLOTS), markers(bolus(10, 1.5f)))).isEmpty());
+
+        // Window moved by an hour: only the 12 new readings
+        delta = watermark.update(recentData(slots(12, WINDOW_SLOTS + 12), markers(bolus(10, 1.5f), bolus(WINDOW_SLOTS + 5, 2.0f))));
+        assertEquals(12, delta.sgs.size());
+        assertEquals(T0 + WINDOW_SLOTS * FIVE_MINUTES, delta.sgs.get(0).datetime.getTime());
+        assertEquals(1, delta.markers.size());
+        assertEquals(T0 + (WINDOW_SLOTS + 11) * FIVE_MINUTES, watermark.getLastSgTime());
+        assertEquals(T0 + (WINDOW_SLOTS + 5) * FIVE_MINUTES, watermark.getLastMarkerTime());
+
+        // Keys of the readings which left the window are pruned
+        assertEquals(WINDOW_SLOTS, watermark.seenSgKeys.size());
+        assertEquals(2, watermark.seenMarkerKeys.size());
+
+    }
+
+    @Test
+    void laterValueOfSlotIsNew() {
+
+        RecentDataDelta delta = null;
+
+        watermark.update(recentData(sgs(sg(0, 100, RecentData.SENSOR_STATE_NO_ERROR_MESSAGE), sg(1, 0, RecentData.SENSOR_STATE_WAIT_TO_CALIBRATE)), markers()));
+        delta = watermark.update(recentData(sgs(sg(0, 100, RecentData.SENSOR_STATE_NO_ERROR_MESSAGE), sg(1, 110, RecentData.SENSOR_STATE_NO_ERROR_MESSAGE),
+                sg(2, 120, RecentData.SENSOR_STATE_NO_ERROR_MESSAGE)), markers()));
+
+        assertEquals(2, delta.sgs.size());
+        assertEquals(110, (int) delta.sgs.get(0).sg);
+        assertEquals(120, (int) delta.sgs.get(1).sg);
+
+    }
+
+    @Test
+    void compactSeriesAndListShareKeys() {
+
+        RecentData compact = recentData(null, markers());
+        RecentDataDelta delta = null;
+
+        compact.sgSeries = new SensorGlucoseSeries();
+        compact.sgSeries.add(T0, 100, RecentData.SENSOR_STATE_NO_ERROR_MESSAGE, false, 0);
+        compact.sgSeries.add(T0 + FIVE_MINUTES, null, RecentData.SENSOR_STATE_NO_DATA_FROM_PUMP, false, 0);
+        assertEquals(2, watermark.update(compact).sgs.size());
+
+        delta = watermark.update(recentData(sgs(sg(0, 100, RecentData.SENSOR_STATE_NO_ERROR_MESSAGE), sg(1, null, RecentData.SENSOR_STATE_NO_DATA_FROM_PUMP),
+                sg(2, 120, RecentData.SENSOR_STATE_NO_ERROR_MESSAGE)), markers()));
+        assertEquals(1, delta.sgs.size());
+        assertEquals(120, (int) delta.sgs.get(0).sg);
+
+    }
+
+    @Test
+    void markersOfSameTime() {
+
+        Marker meal = marker(1, Marker.MARKER_TYPE_MEAL);
+        RecentDataDelta delta = null;
+
+        meal.amount = 45;
+        delta = watermark.update(recentData(sgs(), markers(meal, bolus(1, 1.5f), bolus(1, 2.0f))));
+        assertEquals(3, delta.markers.size());
+
+        // Another bolus of the same amount at the same time can't be told apart from the first one
+        delta = watermark.update(recentData(sgs(), markers(meal, bolus(1, 1.5f), bolus(1, 2.0f), bolus(1, 1.5f), bolus(1, 3.0f))));
+        assertEquals(1, delta.markers.size());
+        assertEquals(3.0f, delta.markers.get(0).programmedFastAmount, 0.001f);
+
+    }
+
+    @Test
+    void notificationsOfPreviousResponse() {
+
+        RecentData recentData = recentData(sgs(), markers());
+        RecentDataDelta delta = null;
+
+        recentData.notificationHistory = notifications("a", "b");
+        assertEquals(2, watermark.update(recentData).activeNotifications.size());
+
+        recentData.notificationHistory = notifications("b", "c");
+        delta = watermark.update(recentData);
+        assertEquals(1, delta.activeNotifications.size());
+        assertEquals("c", delta.activeNotifications.get(0).GUID);
+
+        watermark.reset();
+        assertEquals(2, watermark.update(recentData).activeNotifications.size());
+
+    }
+
+    private static RecentData recentData(List<SensorGlucose> sgs, List<Marker> markers) {
+        RecentData recentData = new RecentData();
+        recentData.sgs = sgs;
+        recentData.markers = markers;
+        return recentData;
+    }
+
+    private static List<SensorGlucose> slots(int from, int to) {
+        List<SensorGlucose> sgs = new ArrayList<>();
+        for (int slot = from; slot < to; slot++)
+            sgs.add(sg(slot, 100 + slot % 50, RecentData.SENSOR_STATE_NO_ERROR_MESSAGE));
+        return sgs;
+    }
+
+    private static List<SensorGlucose> sgs(SensorGlucose... sgs) {
+        return Arrays.asList(sgs);
+    }
+
+    private static List<Marker> markers(Marker... markers) {
+        return Arrays.asList(markers);
+    }
+
+    private static SensorGlucose sg(int slot, Integer value, String sensorState) {
+        SensorGlucose sg = new SensorGlucose();
+        sg.datetime = new Date(T0 + slot * FIVE_MINUTES);
+        sg.sg = value;
+        sg.sensorState = sensorState;
+        return sg;
+    }
+
+    private static Marker marker(int slot, String type) {
+        Marker marker = new Marker();
+        marker.type = type;
+        marker.dateTime = new Date(T0 + slot * FIVE_MINUTES);
+        return marker;
+    }
+
+    private static Marker bolus(int slot, float amount) {
+        Marker marker = marker(slot, Marker.MARKER_TYPE_INSULIN);
+        marker.activationType = "RECOMMENDED";
+        marker.programmedFastAmount = amount;
+        marker.deliveredFastAmount = amount;
+        return marker;
+    }
+
+    private static NotificationHistory notifications(String... guids) {
+        NotificationHistory history = new NotificationHistory();
+        history.activeNotifications = new ArrayList<>();
+        for (String guid : guids) {
+            ActiveNotification notification = new ActiveNotification();
+            notification.GUID = guid;
+            history.activeNotifications.add(notification);
+        }
+        return history;
+    }
+
+}
@@ -0,0 +1,140 @@
+package info.nightscout.medtronic.carelink.client;
+
+import com.sun.net.httpserver.HttpServer;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RetryPolicyTest {
+
+    private static final String SAFE_PATH = "/display/message";
+
+    // Every call of the stub server fails with 503
+    private final AtomicInteger calls = new AtomicInteger();
+
+    private HttpServer server;
+    private RetryPolicy policy;
+    private CareLinkClient client;
+
+    @BeforeEach
+    void startServer() throws IOException {
+
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", exchange -> {
+            calls.incrementAndGet();
+            exchange.getRequestBody().close();
+            exchange.sendResponseHeaders(503, -1);
+            exchange.close();
+        });
+        server.start();
+
+        policy = new RetryPolicy();
+        policy.setBaseDelayMillis(1);
+        policy.setSafeToRetry(request -> request.url().encodedPath().equals(SAFE_PATH));
+        client = new CareLinkClient("user", "password", "nl");
+        client.setRetryPolicy(policy);
+        client.setCircuitBreaker(null);
+
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    void onlyIdempotentRequestsAreRetried() throws IOException {
+
+        assertEquals(RetryPolicy.DEFAULT_MAX_ATTEMPTS, this.attempts(this.request("GET", "/patient/connect/data")));
+        assertEquals(RetryPolicy.DEFAULT_MAX_ATTEMPTS, this.attempts(this.request("PUT", "/patient/connect/data")));
+        assertEquals(1, this.attempts(this.request("POST", "/patient/connect/data")));
+        // POST marked as safe to repeat
+        assertEquals(RetryPolicy.DEFAULT_MAX_ATTEMPTS, this.attempts(this.request("POST", SAFE_PATH)));
+
+    }
+
+    @Test
+    void onlyIdempotentRequestsAreRetriedAsync() throws Exception {
+
+        try (Response response = client.executeWithRetryAsync(this.request("POST", "/patient/connect/data")).get(10, TimeUnit.SECONDS)) {
+            assertEquals(503, response.code());
+        }
+        assertEquals(1, calls.getAndSet(0));
+        try (Response response = client.executeWithRetryAsync(this.request("POST", SAFE_PATH)).get(10, TimeUnit.SECONDS)) {
+            assertEquals(503, response.code());
+        }
+        assertEquals(RetryPolicy.DEFAULT_MAX_ATTEMPTS, calls.getAndSet(0));
+
+    }
+
+    @Test
+    void noRetryPolicyHasSingleAttempt() throws IOException {
+        client.setRetryPolicy(RetryPolicy.noRetry());
+        assertEquals(1, this.attempts(this.request("GET", "/patient/connect/data")));
+        assertEquals(RetryPolicy.Action.FAIL, RetryPolicy.noRetry().getAction(503));
+        // No login within the call, the rejected token makes the next call log in
+        assertEquals(RetryPolicy.Action.FAIL, RetryPolicy.noRetry().getAction(401));
+    }
+
+    @Test
+    void actions() {
+        assertEquals(RetryPolicy.Action.FAIL, policy.getAction(200));
+        assertEquals(RetryPolicy.Action.FAIL, policy.getAction(304));
+        assertEquals(RetryPolicy.Action.FAIL, policy.getAction(404));
+        assertEquals(RetryPolicy.Action.RENEW_LOGIN, policy.getAction(401));
+        assertEquals(RetryPolicy.Action.RETRY, policy.getAction(429));
+        assertEquals(RetryPolicy.Action.RETRY, policy.getAction(503));
+        policy.setAction(503, null);
+        assertEquals(RetryPolicy.Action.FAIL, policy.getAction(503));
+        // A network error can't be answered with a new login
+        policy.setNetworkErrorAction(RetryPolicy.Action.RENEW_LOGIN);
+        assertEquals(RetryPolicy.Action.RETRY, policy.getNetworkErrorAction());
+    }
+
+    @Test
+    void delays() {
+
+        policy.setBaseDelayMillis(100);
+        policy.setMaxDelayMillis(1000);
+
+        for (int i = 0; i < 100; i++) {
+            assertTrue(policy.getDelayMillis(1, null) <= 100);
+            assertTrue(policy.getDelayMillis(3, null) <= 400);
+            assertTrue(policy.getDelayMillis(40, null) <= 1000);
+        }
+        // Retry-After of the server, capped
+        assertEquals(0, policy.getDelayMillis(1, "0"));
+        assertEquals(1000, policy.getDelayMillis(1, "120"));
+        assertTrue(policy.getDelayMillis(1, "Wed, 21 Oct 2015 07:28:00 GMT") <= 100);
+        policy.setRespectRetryAfter(false);
+        assertTrue(policy.getDelayMillis(1, "120") <= 100);
+
+    }
+
+    private int attempts(Request request) throws IOException {
+        try (Response response = client.executeWithRetry(request)) {
+            assertEquals(503, response.code());
+        }
+        return calls.getAndSet(0);
+    }
+
+    private Request request(String method, String path) {
+        return new Request.Builder()
+                .url("http://localhost:" + server.getAddress().getPort() + path)
+                .method(method, "GET".equals(method) ? null : RequestBody.create("{}", MediaType.get("application/json")))
+                .build();
+    }
+
+}
@@ -0,0 +1,132 @@
+package info.nightscout.medtronic.carelink.json;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import org.junit.jupiter.api.Test;
+
+import java.time.OffsetDateTime;
+import java.util.Date;
+import java.util.TimeZone;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IsoDateTypeAdapterTest {
+
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+    private static final TimeZone[] TIME_ZONES = {
+            UTC, TimeZone.getTimeZone("Europe/Budapest"), TimeZone.getTimeZone("Asia/Kathmandu"), TimeZone.getTimeZone("GMT-03:30")
+    };
+
+    @Test
+    void roundTrip() {
+
+        long[] times = {
+                0, -1, 1, 1618914480000L, 1618914480123L,
+                millis("2020-02-29T23:59:59.999Z"), millis("2000-02-29T00:00:00Z"), millis("1955-11-05T06:00:00-08:00"),
+                millis("1900-03-01T00:00:00Z"), millis("0000-01-02T00:00:00Z"), millis("9999-12-30T23:59:59.999Z")
+        };
+
+        for (TimeZone timeZone : TIME_ZONES) {
+            for (long time : times) {
+                String formatted = IsoDateTypeAdapter.format(time, timeZone, true);
+                assertEquals(time, IsoDateTypeAdapter.parse(formatted), formatted);
+                assertEquals(time, millis(formatted), formatted);
+                // Without millis the time is truncated to the second
+                formatted = IsoDateTypeAdapter.format(time, timeZone, false);
+                assertEquals(Math.floorDiv(time, 1000) * 1000, IsoDateTypeAdapter.parse(formatted), formatted);
+            }
+        }
+
+    }
+
+    @Test
+    void format() {
+        assertEquals("1969-12-31T23:59:59.999Z", IsoDateTypeAdapter.format(-1, UTC, true));
+        assertEquals("0000-01-01T00:00:00.000Z", IsoDateTypeAdapter.format(millis("0000-01-01T00:00:00Z"), UTC, true));
+        assertEquals("9999-12-31T23:59:59.999Z", IsoDateTypeAdapter.format(millis("9999-12-31T23:59:59.999Z"), UTC, true));
+        assertEquals("2021-04-20T14:28:00+02:00", IsoDateTypeAdapter.format(1618921680000L, TimeZone.getTimeZone("Europe/Budapest"), false));
+        assertEquals("2021-04-20T08:58:00.000-03:30", IsoDateTypeAdapter.format(1618921680000L, TimeZone.getTimeZone("GMT-03:30"), true));
+        // Out of the 4 digit years (also after the offset of the time zone)
+        assertNull(IsoDateTypeAdapter.format(millis("9999-12-31T23:59:59Z"), TimeZone.getTimeZone("Europe/Budapest"), true));
+        assertNull(IsoDateTypeAdapter.format(millis("+10000-01-01T00:00:00Z"), UTC, true));
+        assertNull(IsoDateTypeAdapter.format(millis("-0001-12-31T23:59:59Z"), UTC, true));
+    }
+
+    @Test
+    void leapDays() {
+        assertEquals(millis("2020-02-29T12:00:00Z"), IsoDateTypeAdapter.parse("2020-02-29T12:00:00Z"));
+        assertEquals(millis("2000-02-29T12:00:00Z"), IsoDateTypeAdapter.parse("2000-02-29T12:00:00Z"));
+        assertEquals(millis("1968-02-29T12:00:00Z"), IsoDateTypeAdapter.parse("1968-02-29T12:00:00Z"));
+        assertEquals(IsoDateTypeAdapter.INVALID, IsoDateTypeAdapter.parse("2021-02-29T12:00:00Z"));
+        assertEquals(IsoDateTypeAdapter.INVALID, IsoDateTypeAdapter.parse("1900-02-29T12:00:00Z"));
+        assertEquals(IsoDateTypeAdapter.INVALID, IsoDateTypeAdapter.parse("2020-04-31T12:00:00Z"));
+    }
+
+    @Test
+    void offsets() {
+
+        long expected = millis("2021-04-20T12:28:00Z");
+
+        assertEquals(expected, IsoDateTypeAdapter.parse("2021-04-20T12:28:00Z"));
+        assertEquals(expected, IsoDateTypeAdapter.parse("2021-04-20T12:28:00.000-00:00"));
+        assertEquals(expected, IsoDateTypeAdapter.parse("2021-04-20T14:28:00+02"));
+        assertEquals(expected, IsoDateTypeAdapter.parse("2021-04-20T06:58:00-0530"));
+        assertEquals(expected, IsoDateTypeAdapter.parse("2021-04-20T18:13:00+05:45"));
+        assertEquals(expected, IsoDateTypeAdapter.parse("2021-04-20T12:28Z"));
+        assertEquals(expected, IsoDateTypeAdapter.parse("2021-04-20T14:28+02:00"));
+
+        assertEquals(IsoDateTypeAdapter.INVALID, IsoDateTypeAdapter.parse("2021-04-20T12:28:00"));
+        assertEquals(IsoDateTypeAdapter.INVALID, IsoDateTypeAdapter.parse("2021-04-20T12:28:00+2"));
+        assertEquals(IsoDateTypeAdapter.INVALID, IsoDateTypeAdapter.parse("2021-04-20T12:28:00+24:00"));
+        assertEquals(IsoDateTypeAdapter.INVALID, IsoDateTypeAdapter.parse("2021-04-20T12:28:00+02:60"));
+        assertEquals(IsoDateTypeAdapter.INVALID, IsoDateTypeAdapter.parse("2021-04-20T12:28:00+02:3"));
+        assertEquals(IsoDateTypeAdapter.INVALID, IsoDateTypeAdapter.parse("2021-04-20T12:28:00Z "));
+
+    }
+
+    @Test
+    void fractions() {
+
+        long second = millis("2021-04-20T12:28:00Z");
+
+        assertEquals(second + 100, IsoDateTypeAdapter.parse("2021-04-20T12:28:00.1Z"));
+        assertEquals(second + 120, IsoDateTypeAdapter.parse("2021-04-20T12:28:00.12+00:00"));
+        assertEquals(second + 123, IsoDateTypeAdapter.parse("2021-04-20T12:28:00.123Z"));
+        // Only milliseconds are kept
+        assertEquals(second + 123, IsoDateTypeAdapter.parse("2021-04-20T12:28:00.1239Z"));
+        assertEquals(second + 999, IsoDateTypeAdapter.parse("2021-04-20T12:28:00.999999999-00:00"));
+        assertEquals(IsoDateTypeAdapter.INVALID, IsoDateTypeAdapter.parse("2021-04-20T12:28:00.Z"));
+
+    }
+
+    @Test
+    void beforeEpoch() {
+        assertEquals(-1, IsoDateTypeAdapter.parse("1969-12-31T23:59:59.999Z"));
+        assertEquals(-1, IsoDateTypeAdapter.parse("1970-01-01T01:59:59.999+02:00"));
+        assertEquals(millis("1955-11-05T06:00:00.5-08:00"), IsoDateTypeAdapter.parse("1955-11-05T06:00:00.5-08:00"));
+        assertEquals(millis("0001-01-01T00:00:00Z"), IsoDateTypeAdapter.parse("0001-01-01T00:00:00Z"));
+    }
+
+    @Test
+    void otherFormatsUseFallback() {
+
+        // Format of Gson's default date adapter, e.g. session files written by older versions
+        String old = "\"Apr 20, 2021 12:28:00 PM\"";
+        Gson gson = new GsonBuilder().registerTypeAdapterFactory(IsoDateTypeAdapter.factory(UTC, true)).create();
+        Date expected = new Gson().fromJson(old, Date.class);
+
+        assertEquals(IsoDateTypeAdapter.INVALID, IsoDateTypeAdapter.parse("Apr 20, 2021 12:28:00 PM"));
+        assertNotNull(expected);
+        assertEquals(expected, gson.fromJson(old, Date.class));
+        // Written again in ISO format
+        assertEquals(expected, gson.fromJson(gson.toJson(expected), Date.class));
+        assertTrue(gson.toJson(expected).endsWith("Z\""));
+        assertNull(gson.fromJson("null", Date.class));
+
+    }
+
+    private static long millis(String value) {
+        return OffsetDateTime.parse(value).toInstant().toEpochMilli();
+    }
+
+}
@@ -0,0 +1,189 @@
+package info.nightscout.medtronic.carelink.nightscout;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpServer;
+import info.nightscout.medtronic.carelink.message.*;
+import okhttp3.OkHttpClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NightscoutUploaderTest {
+
+    private static final long T0 = 1_700_000_000_000L;
+    private static final long FIVE_MINUTES = 5 * 60 * 1000;
+
+    // Requests received by the stub site: path and number of documents
+    private final List<String> requests = Collections.synchronizedList(new ArrayList<>());
+    // First request is held until released, the worker is busy meanwhile
+    private final CountDownLatch firstReceived = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    private HttpServer server;
+    private NightscoutTarget target;
+    private NightscoutUploader uploader;
+
+    @BeforeEach
+    void startSite() throws IOException {
+
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", exchange -> {
+            JsonArray documents = JsonParser.parseReader(new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8)).getAsJsonArray();
+            byte[] body = "[]".getBytes(StandardCharsets.UTF_8);
+            requests.add(exchange.getRequestURI().getPath() + " " + documents.size());
+            firstReceived.countDown();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        target = new NightscoutTarget("http://localhost:" + server.getAddress().getPort() + "/", "secret");
+
+    }
+
+    @AfterEach
+    void stopSite() {
+        release.countDown();
+        if (uploader != null)
+            uploader.close();
+        server.stop(0);
+    }
+
+    @Test
+    void accountsOfSiteShareBatches() throws Exception {
+
+        // Second account of the same site
+        NightscoutTarget sameSite = new NightscoutTarget(target.getUrl().toString(), "secret");
+
+        uploader = new NightscoutUploader(new OkHttpClient(), 100, 100, 1);
+        assertEquals(1, uploader.submit(target, recentData(sgs(sg(0, 100)), markers()), 1, TimeUnit.SECONDS));
+        assertTrue(firstReceived.await(5, TimeUnit.SECONDS));
+
+        // Queued while the worker waits for the first request
+        assertEquals(3, uploader.submit(target, recentData(sgs(sg(0, 100), sg(1, 110)), markers(bolus(1, 0, 1.5f), bolus(1, 1, 2.0f))), 1, TimeUnit.SECONDS));
+        assertEquals(1, uploader.submit(sameSite, recentData(sgs(sg(1, 110), sg(2, 120)), markers(bolus(1, 1, 2.0f))), 1, TimeUnit.SECONDS));
+        assertEquals(4, uploader.getQueueSize());
+        release.countDown();
+
+        assertTrue(uploader.flush(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("/api/v1/entries 1", "/api/v1/entries 2", "/api/v1/treatments 2"), requests);
+        assertEquals(5, uploader.getUploadedCount());
+        assertEquals(0, uploader.getFailedCount());
+
+        // Uploaded already, from either account
+        assertEquals(0, uploader.submit(sameSite, recentData(sgs(sg(0, 100), sg(1, 110), sg(2, 120)), markers(bolus(1, 0, 1.5f))), 1, TimeUnit.SECONDS));
+
+    }
+
+    @Test
+    void fullQueueRejectsDocuments() throws Exception {
+
+        uploader = new NightscoutUploader(new OkHttpClient(), 2, 100, 1);
+        assertEquals(1, uploader.submit(target, recentData(sgs(sg(0, 100)), markers()), 1, TimeUnit.SECONDS));
+        assertTrue(firstReceived.await(5, TimeUnit.SECONDS));
+
+        // Room for 2 of the 4 new documents, the duplicate is not counted
+        assertEquals(2, uploader.submit(target, recentData(sgs(sg(0, 100), sg(1, 110), sg(2, 120), sg(3, 130), sg(4, 140)), markers()), 50, TimeUnit.MILLISECONDS));
+        assertEquals(2, uploader.getRejectedCount());
+        assertFalse(uploader.flush(50, TimeUnit.MILLISECONDS));
+        release.countDown();
+        assertTrue(uploader.flush(5, TimeUnit.SECONDS));
+        assertEquals(3, uploader.getUploadedCount());
+
+        // Rejected documents are offered again
+        assertEquals(2, uploader.submit(target, recentData(sgs(sg(0, 100), sg(1, 110), sg(2, 120), sg(3, 130), sg(4, 140)), markers()), 1, TimeUnit.SECONDS));
+        assertTrue(uploader.flush(5, TimeUnit.SECONDS));
+        assertEquals(5, uploader.getUploadedCount());
+
+    }
+
+    @Test
+    void markerInProgressIsNotUploaded() {
+
+        Marker running = bolus(1, 0, 0.5f);
+        Marker completed = bolus(1, 0, 3.0f);
+
+        running.completed = false;
+        assertNull(NightscoutMapper.toTreatment(running));
+        // Markers of the same time are told apart by their index
+        assertNotEquals(NightscoutMapper.toTreatment(bolus(1, 1, 3.0f)).getKey(), NightscoutMapper.toTreatment(completed).getKey());
+        assertEquals(3.0f, NightscoutMapper.toTreatment(completed).getJson().get("insulin").getAsFloat(), 0.001f);
+
+    }
+
+    @Test
+    void calibrationOfBgReadingIsOneBgCheck() {
+
+        Marker bgReading = marker(1, 5, Marker.MARKER_TYPE_BG_READING);
+        Marker calibration = marker(1, 6, Marker.MARKER_TYPE_CALIBRATION);
+        Marker laterCalibration = marker(2, 7, Marker.MARKER_TYPE_CALIBRATION);
+        List<NightscoutDocument> documents = null;
+
+        bgReading.value = 120;
+        calibration.value = 120;
+        laterCalibration.value = 130;
+        documents = NightscoutMapper.toDocuments(recentData(sgs(), markers(bgReading, calibration, laterCalibration)));
+
+        assertEquals(2, documents.size());
+        assertEquals(NightscoutMapper.toTreatment(bgReading).getKey(), documents.get(0).getKey());
+        assertEquals(NightscoutMapper.toTreatment(laterCalibration).getKey(), documents.get(1).getKey());
+
+    }
+
+    private static RecentData recentData(List<SensorGlucose> sgs, List<Marker> markers) {
+        RecentData recentData = new RecentData();
+        recentData.sgs = sgs;
+        recentData.markers = markers;
+        return recentData;
+    }
+
+    private static List<SensorGlucose> sgs(SensorGlucose... sgs) {
+        return Arrays.asList(sgs);
+    }
+
+    private static List<Marker> markers(Marker... markers) {
+        return Arrays.asList(markers);
+    }
+
+    private static SensorGlucose sg(int slot, int value) {
+        SensorGlucose sg = new SensorGlucose();
+        sg.datetime = new Date(T0 + slot * FIVE_MINUTES);
+        sg.sg = value;
+        return sg;
+    }
+
+    private static Marker marker(int slot, int index, String type) {
+        Marker marker = new Marker();
+        marker.type = type;
+        marker.index = index;
+        marker.dateTime = new Date(T0 + slot * FIVE_MINUTES);
+        return marker;
+    }
+
+    private static Marker bolus(int slot, int index, float amount) {
+        Marker marker = marker(slot, index, Marker.MARKER_TYPE_INSULIN);
+        marker.deliveredFastAmount = amount;
+        marker.completed = true;
+        return marker;
+    }
+
+}